@@ -6,6 +6,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -16,7 +18,11 @@ import org.mineacademy.fo.plugin.SimplePlugin;
 import org.mineacademy.fo.remain.CompChatColor;
 
 import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 
 /**
  * Utility class for managing in-game chat.
@@ -34,6 +40,42 @@ public final class ChatUtil {
 	 */
 	public final static int VISIBLE_CHAT_LINES = 20;
 
+	/**
+	 * Indicates the letter is removed by {@link #replaceDiacritic(String)}
+	 */
+	private static final int DIACRITIC_REMOVE = -1;
+
+	/**
+	 * Indicates the letter must be replaced together with the whole message in {@link #replaceDiacritic(String)}
+	 */
+	private static final int DIACRITIC_COMPLEX = -2;
+
+	/**
+	 * Letter - What {@link #replaceDiacritic(String)} replaces it with, covering Latin, Greek and Cyrillic letters
+	 */
+	private static final int[] DIACRITIC_FOLD = createDiacriticFold();
+
+	/**
+	 * How many centered messages we remember in {@link #center(String, char, int)}, set to 0 to disable.
+	 * Only messages up to 256 letters are remembered.
+	 */
+	public static int CENTER_CACHE_SIZE = 500;
+
+	/**
+	 * Message, space and padding - Centered message, see {@link #CENTER_CACHE_SIZE}
+	 */
+	private static final Map<CenterKey, String> centerCache = new ConcurrentHashMap<>();
+
+	/**
+	 * Padding made of spaces by how many spaces it has, covering paddings of {@link #CENTER_PX}
+	 */
+	private static final String[] SPACE_PADDINGS = new String[CENTER_PX / DefaultFontInfo.getLength(' ') + 2];
+
+	static {
+		for (int count = 0; count < SPACE_PADDINGS.length; count++)
+			SPACE_PADDINGS[count] = repeat0(' ', count);
+	}
+
 	/**
 	 * Centers a message automatically for padding {@link #CENTER_PX}
 	 *
@@ -81,12 +123,39 @@ public final class ChatUtil {
 		if (message == null || message.equals(""))
 			return "";
 
+		final boolean cacheable = CENTER_CACHE_SIZE > 0 && message.length() <= 256;
+		final CenterKey key = cacheable ? new CenterKey(message, space, centerPx) : null;
+
+		if (cacheable) {
+			final String cached = centerCache.get(key);
+
+			if (cached != null)
+				return cached;
+		}
+
+		final String centered = center0(message, space, centerPx);
+
+		if (cacheable) {
+			if (centerCache.size() >= CENTER_CACHE_SIZE)
+				centerCache.clear();
+
+			centerCache.put(key, centered);
+		}
+
+		return centered;
+	}
+
+	/*
+	 * Compute the centered message
+	 */
+	private static String center0(final String message, final char space, final int centerPx) {
 		int messagePxSize = 0;
 
 		boolean previousCode = false;
 		boolean isBold = false;
 
-		for (final char c : message.toCharArray())
+		for (int i = 0; i < message.length(); i++) {
+			final char c = message.charAt(i);
 
 			if (c == '&' || c == ChatColor.COLOR_CHAR) {
 				previousCode = true;
@@ -106,28 +175,30 @@ public final class ChatUtil {
 				isBold = false;
 
 			} else {
-				final DefaultFontInfo defaultFont = DefaultFontInfo.getDefaultFontInfo(c);
-
-				messagePxSize += isBold ? defaultFont.getBoldLength() : defaultFont.getLength();
+				messagePxSize += isBold ? DefaultFontInfo.getBoldLength(c) : DefaultFontInfo.getLength(c);
 				messagePxSize++;
 			}
-
-		final StringBuilder builder = new StringBuilder();
+		}
 
 		final int halvedMessageSize = messagePxSize / 2;
 		final int toCompensate = centerPx - halvedMessageSize;
-		final DefaultFontInfo font = DefaultFontInfo.getDefaultFontInfo(space);
-		final double spaceLength = isBold ? font.getBoldLength() : font.getLength();
+		final int spaceLength = isBold ? DefaultFontInfo.getBoldLength(space) : DefaultFontInfo.getLength(space);
 
-		double compensated = 0;
+		// How many spaces we need to fill the compensated width, rounded up
+		final int spaceCount = toCompensate > 0 ? (toCompensate + spaceLength - 1) / spaceLength : 0;
+		final String padding = space == ' ' && spaceCount < SPACE_PADDINGS.length ? SPACE_PADDINGS[spaceCount] : repeat0(space, spaceCount);
 
-		while (compensated < toCompensate) {
-			builder.append(space);
+		return new StringBuilder(padding.length() * 2 + message.length() + 2).append(padding).append(' ').append(message).append(' ').append(padding).toString();
+	}
 
-			compensated += spaceLength;
-		}
+	/*
+	 * Return a string of the letter repeated the given amount of times
+	 */
+	private static String repeat0(final char letter, final int count) {
+		final char[] letters = new char[count];
+		Arrays.fill(letters, letter);
 
-		return builder.toString() + " " + message + " " + builder.toString();
+		return new String(letters);
 	}
 
 	/**
@@ -467,25 +538,21 @@ public final class ChatUtil {
 	 * @return
 	 */
 	public static double getSimilarityPercentage(String first, String second) {
-		if (first.isEmpty() && second.isEmpty())
-			return 1D;
-
-		first = removeSimilarity(first);
-		second = removeSimilarity(second);
-
-		String longer = first, shorter = second;
-
-		if (first.length() < second.length()) { // longer should always have greater length
-			longer = second;
-			shorter = first;
-		}
-
-		final int longerLength = longer.length();
-
-		if (longerLength == 0)
-			return 0; /* both strings are zero length */
+		return SimilarityProfile.of(first).getSimilarityPercentage(SimilarityProfile.of(second));
+	}
 
-		return (longerLength - editDistance(longer, shorter)) / (double) longerLength;
+	/**
+	 * Return true if {@link #getSimilarityPercentage(String, String)} is at least the given
+	 * threshold, stopping the comparison early once we know the messages are too different.
+	 *
+	 * @param first
+	 * @param second
+	 * @param threshold a double within 0.00 and 1.00
+	 *
+	 * @return
+	 */
+	public static boolean isSimilar(String first, String second, double threshold) {
+		return SimilarityProfile.of(first).isSimilar(SimilarityProfile.of(second), threshold);
 	}
 
 	/*
@@ -521,9 +588,68 @@ public final class ChatUtil {
 	 * @return
 	 */
 	public static String replaceDiacritic(final String message) {
+		final int length = message.length();
+		int index = 0;
+
+		// Plain ASCII has nothing to replace
+		while (index < length && message.charAt(index) < 128)
+			index++;
+
+		if (index == length)
+			return message;
+
+		final char[] letters = new char[length];
+		int lettersLength = index;
+
+		message.getChars(0, index, letters, 0);
+
+		for (; index < length; index++) {
+			final char letter = message.charAt(index);
+			final int folded = letter < DIACRITIC_FOLD.length ? DIACRITIC_FOLD[letter] : DIACRITIC_COMPLEX;
+
+			if (folded == DIACRITIC_COMPLEX)
+				return replaceDiacriticNormalized(message);
+
+			if (folded != DIACRITIC_REMOVE)
+				letters[lettersLength++] = (char) folded;
+		}
+
+		return new String(letters, 0, lettersLength);
+	}
+
+	/*
+	 * Decompose the message and remove combining diacritical marks
+	 */
+	private static String replaceDiacriticNormalized(final String message) {
 		return Normalizer.normalize(message, Normalizer.Form.NFD).replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
 	}
 
+	/*
+	 * Precompute what each letter up to the Cyrillic block decomposes into. Letters that do not decompose
+	 * into a single base letter followed by removed marks, and other combining marks which could be
+	 * reordered with the removed ones, can only be replaced together with the whole message.
+	 */
+	private static int[] createDiacriticFold() {
+		final int[] fold = new int[0x0500];
+
+		for (char letter = 0; letter < fold.length; letter++) {
+			final String replaced = replaceDiacriticNormalized(String.valueOf(letter));
+			final int type = Character.getType(letter);
+			final boolean mark = type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.COMBINING_SPACING_MARK;
+
+			if (replaced.isEmpty())
+				fold[letter] = DIACRITIC_REMOVE;
+
+			else if (replaced.length() == 1 && !mark)
+				fold[letter] = replaced.charAt(0);
+
+			else
+				fold[letter] = DIACRITIC_COMPLEX;
+		}
+
+		return fold;
+	}
+
 	/**
 	 * Return true if the given message contains [JSON] or any interactive part like  {@literal <toast> or <actionbar>}
 	 * @param msg
@@ -621,29 +747,114 @@ public final class ChatUtil {
 	// Helpers
 	// --------------------------------------------------------------------------------
 
-	// Example implementation of the Levenshtein Edit Distance
-	// See http://rosettacode.org/wiki/Levenshtein_distance#Java
-	private static int editDistance(String first, String second) {
-		first = first.toLowerCase();
-		second = second.toLowerCase();
-
-		final int[] costs = new int[second.length() + 1];
-		for (int i = 0; i <= first.length(); i++) {
-			int lastValue = i;
-			for (int j = 0; j <= second.length(); j++)
-				if (i == 0)
-					costs[j] = j;
-				else if (j > 0) {
-					int newValue = costs[j - 1];
-					if (first.charAt(i - 1) != second.charAt(j - 1))
-						newValue = Math.min(Math.min(newValue, lastValue), costs[j]) + 1;
-					costs[j - 1] = lastValue;
-					lastValue = newValue;
-				}
-			if (i > 0)
-				costs[second.length()] = lastValue;
+	/*
+	 * Return the Levenshtein edit distance between the longer and the shorter message,
+	 * or any number above the given limit if it exceeds it.
+	 *
+	 * We use the bit-parallel algorithm by Myers and Hyyrö when the shorter message fits
+	 * into 64 bits, otherwise we only compute the diagonal band the limit allows.
+	 */
+	private static int editDistance(SimilarityProfile longer, SimilarityProfile shorter, int limit) {
+		final String text = longer.getMessage();
+		final int textLength = text.length();
+		final int patternLength = shorter.getMessage().length();
+
+		if (patternLength == 0)
+			return textLength;
+
+		if (textLength - patternLength > limit)
+			return limit + 1;
+
+		if (patternLength <= 64)
+			return editDistanceBitParallel(text, shorter.getMasks(), patternLength, limit);
+
+		return editDistanceBanded(text, shorter.getMessage(), limit);
+	}
+
+	/*
+	 * Myers' bit-vector algorithm in the formulation by Hyyrö, each bit of the vertical
+	 * delta vectors represents one letter of the pattern
+	 */
+	private static int editDistanceBitParallel(String text, PatternMasks masks, int patternLength, int limit) {
+		final long lastBit = 1L << (patternLength - 1);
+		final int textLength = text.length();
+
+		long positiveVertical = -1L;
+		long negativeVertical = 0L;
+		int score = patternLength;
+
+		for (int i = 0; i < textLength; i++) {
+			final long equal = masks.get(text.charAt(i));
+			final long vertical = equal | negativeVertical;
+			final long horizontal = (((equal & positiveVertical) + positiveVertical) ^ positiveVertical) | equal;
+
+			long positiveHorizontal = negativeVertical | ~(horizontal | positiveVertical);
+			long negativeHorizontal = positiveVertical & horizontal;
+
+			if ((positiveHorizontal & lastBit) != 0)
+				score++;
+
+			else if ((negativeHorizontal & lastBit) != 0)
+				score--;
+
+			// Each remaining letter can lower the distance by one at most
+			if (score - (textLength - i - 1) > limit)
+				return limit + 1;
+
+			positiveHorizontal = (positiveHorizontal << 1) | 1L;
+			negativeHorizontal = negativeHorizontal << 1;
+
+			positiveVertical = negativeHorizontal | ~(vertical | positiveHorizontal);
+			negativeVertical = positiveHorizontal & vertical;
 		}
-		return costs[second.length()];
+
+		return score;
+	}
+
+	/*
+	 * Ukkonen's banded dynamic programming only computing cells at most the limit
+	 * away from the diagonal, stopping once a whole row exceeds the limit
+	 */
+	private static int editDistanceBanded(String longer, String shorter, int limit) {
+		final int longerLength = longer.length();
+		final int shorterLength = shorter.length();
+		final int band = Math.min(limit, longerLength);
+		final int exceeded = band + 1;
+
+		int[] previous = new int[shorterLength + 2];
+		int[] current = new int[shorterLength + 2];
+
+		for (int j = 0; j <= shorterLength + 1; j++)
+			previous[j] = j <= band ? j : exceeded;
+
+		for (int i = 1; i <= longerLength; i++) {
+			final int from = Math.max(1, i - band);
+			final int to = Math.min(shorterLength, i + band);
+			final char letter = longer.charAt(i - 1);
+
+			current[from - 1] = from == 1 && i <= band ? i : exceeded;
+			int rowMinimum = current[from - 1];
+
+			for (int j = from; j <= to; j++) {
+				final int substitution = previous[j - 1] + (letter == shorter.charAt(j - 1) ? 0 : 1);
+				final int value = Math.min(exceeded, Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1));
+
+				current[j] = value;
+				rowMinimum = Math.min(rowMinimum, value);
+			}
+
+			current[to + 1] = exceeded;
+
+			if (rowMinimum > band)
+				return limit + 1;
+
+			final int[] swap = previous;
+
+			previous = current;
+			current = swap;
+		}
+
+		return previous[shorterLength] > band ? limit + 1 : previous[shorterLength];
 	}
 
 	private static int[] splitCaps(final String message, final List<String> ignored) {
@@ -690,6 +901,190 @@ public final class ChatUtil {
 				editedMsg[i] = 0;
 		return editedMsg;
 	}
+
+	// --------------------------------------------------------------------------------
+	// Classes
+	// --------------------------------------------------------------------------------
+
+	/*
+	 * The key of a centered message in the cache
+	 */
+	@EqualsAndHashCode
+	@RequiredArgsConstructor
+	private static final class CenterKey {
+		private final String message;
+		private final char space;
+		private final int centerPx;
+	}
+
+	/**
+	 * Represents a message prepared once for comparing how similar it is to other messages,
+	 * see {@link ChatUtil#getSimilarityPercentage(String, String)}. Keep it around when
+	 * comparing the same message multiple times, such as a player's recent messages.
+	 */
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	public static final class SimilarityProfile {
+
+		/**
+		 * Was the original message empty?
+		 */
+		private final boolean empty;
+
+		/**
+		 * The message without colors, lowercased and without diacritic if enabled
+		 */
+		@Getter
+		private final String message;
+
+		/**
+		 * Bit masks of where each letter is in the message, computed when first needed
+		 */
+		private volatile PatternMasks masks;
+
+		/**
+		 * Return the similarity (a double within 0.00 and 1.00) to the other message
+		 *
+		 * @param other
+		 * @return
+		 */
+		public double getSimilarityPercentage(@NonNull SimilarityProfile other) {
+			return this.getSimilarityPercentage(other, Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Return true if the similarity to the other message is at least the given threshold,
+		 * stopping early once we know the messages are too different
+		 *
+		 * @param other
+		 * @param threshold a double within 0.00 and 1.00
+		 * @return
+		 */
+		public boolean isSimilar(@NonNull SimilarityProfile other, double threshold) {
+			final int longerLength = Math.max(this.message.length(), other.message.length());
+
+			// Allow one edit more than the threshold to avoid rounding errors, we compare precisely below
+			final int limit = threshold <= 0 ? Integer.MAX_VALUE : (int) (longerLength * (1 - threshold)) + 1;
+
+			return this.getSimilarityPercentage(other, limit) >= threshold;
+		}
+
+		/*
+		 * Return the similarity percentage, or any value below what the limit of edits would allow
+		 */
+		private double getSimilarityPercentage(SimilarityProfile other, int limit) {
+			if (this.empty && other.empty)
+				return 1D;
+
+			SimilarityProfile longer = this, shorter = other;
+
+			if (this.message.length() < other.message.length()) { // longer should always have greater length
+				longer = other;
+				shorter = this;
+			}
+
+			final int longerLength = longer.message.length();
+
+			if (longerLength == 0)
+				return 0; /* both strings are zero length */
+
+			return (longerLength - Math.min(longerLength, editDistance(longer, shorter, limit))) / (double) longerLength;
+		}
+
+		/*
+		 * Return the letter masks, computing them if needed
+		 */
+		private PatternMasks getMasks() {
+			PatternMasks masks = this.masks;
+
+			if (masks == null)
+				this.masks = masks = new PatternMasks(this.message);
+
+			return masks;
+		}
+
+		@Override
+		public String toString() {
+			return "SimilarityProfile{" + this.message + "}";
+		}
+
+		/**
+		 * Prepare the given message for comparing
+		 *
+		 * @param message
+		 * @return
+		 */
+		public static SimilarityProfile of(@NonNull String message) {
+			return new SimilarityProfile(message.isEmpty(), removeSimilarity(message));
+		}
+	}
+
+	/*
+	 * For each letter, a bit mask of positions of that letter in a message of up to 64 letters
+	 */
+	private static final class PatternMasks {
+
+		/**
+		 * Masks for ASCII letters by their code
+		 */
+		private final long[] ascii = new long[128];
+
+		/**
+		 * Other letters in the message, sorted
+		 */
+		private final char[] otherLetters;
+
+		/**
+		 * Masks for {@link #otherLetters}
+		 */
+		private final long[] otherMasks;
+
+		PatternMasks(String message) {
+			final int length = Math.min(64, message.length());
+			final char[] others = new char[length];
+			int otherCount = 0;
+
+			for (int i = 0; i < length; i++) {
+				final char letter = message.charAt(i);
+
+				if (letter < 128)
+					this.ascii[letter] |= 1L << i;
+
+				else
+					others[otherCount++] = letter;
+			}
+
+			final char[] sorted = Arrays.copyOf(others, otherCount);
+			Arrays.sort(sorted);
+
+			int distinct = 0;
+
+			for (int i = 0; i < sorted.length; i++)
+				if (i == 0 || sorted[i] != sorted[i - 1])
+					sorted[distinct++] = sorted[i];
+
+			this.otherLetters = Arrays.copyOf(sorted, distinct);
+			this.otherMasks = new long[distinct];
+
+			for (int i = 0; i < length; i++) {
+				final char letter = message.charAt(i);
+
+				if (letter >= 128)
+					this.otherMasks[Arrays.binarySearch(this.otherLetters, letter)] |= 1L << i;
+			}
+		}
+
+		/*
+		 * Return the mask for the given letter
+		 */
+		long get(char letter) {
+			if (letter < 128)
+				return this.ascii[letter];
+
+			final int index = Arrays.binarySearch(this.otherLetters, letter);
+
+			return index < 0 ? 0L : this.otherMasks[index];
+		}
+	}
 }
 
 /**
@@ -798,6 +1193,39 @@ enum DefaultFontInfo {
 	SPACE(' ', 4),
 	DEFAULT('a', 4);
 
+	/**
+	 * Font info by character, all letters we know are ASCII
+	 */
+	private static final DefaultFontInfo[] BY_CHARACTER = new DefaultFontInfo[128];
+
+	/**
+	 * Letter widths by character
+	 */
+	private static final int[] LENGTHS = new int[128];
+
+	/**
+	 * Bold letter widths by character
+	 */
+	private static final int[] BOLD_LENGTHS = new int[128];
+
+	static {
+		for (char c = 0; c < BY_CHARACTER.length; c++) {
+			DefaultFontInfo found = DEFAULT;
+
+			// The first matching constant wins, as DEFAULT shares its letter with "a"
+			for (final DefaultFontInfo info : values())
+				if (info.character == c) {
+					found = info;
+
+					break;
+				}
+
+			BY_CHARACTER[c] = found;
+			LENGTHS[c] = found.getLength();
+			BOLD_LENGTHS[c] = found.getBoldLength();
+		}
+	}
+
 	private final char character;
 	private final int length;
 
@@ -821,10 +1249,26 @@ enum DefaultFontInfo {
 	}
 
 	public static DefaultFontInfo getDefaultFontInfo(final char c) {
-		for (final DefaultFontInfo dFI : DefaultFontInfo.values())
-			if (dFI.getCharacter() == c)
-				return dFI;
+		return c < BY_CHARACTER.length ? BY_CHARACTER[c] : DefaultFontInfo.DEFAULT;
+	}
+
+	/**
+	 * Return the width of the given letter
+	 *
+	 * @param c
+	 * @return
+	 */
+	public static int getLength(final char c) {
+		return c < LENGTHS.length ? LENGTHS[c] : DEFAULT.length;
+	}
 
-		return DefaultFontInfo.DEFAULT;
+	/**
+	 * Return the width of the given bold letter
+	 *
+	 * @param c
+	 * @return
+	 */
+	public static int getBoldLength(final char c) {
+		return c < BOLD_LENGTHS.length ? BOLD_LENGTHS[c] : DEFAULT.getBoldLength();
 	}
 }
@@ -22,6 +22,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -66,9 +71,11 @@ import org.mineacademy.fo.settings.SimpleLocalization;
 import org.mineacademy.fo.settings.SimpleSettings;
 
 import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import net.md_5.bungee.api.chat.TextComponent;
 
 /**
@@ -98,11 +105,6 @@ public final class Common {
 	 */
 	private static final Pattern RGB_X_COLOR_REGEX = Pattern.compile("(" + COLOR_CHAR + "x)(" + COLOR_CHAR + "[0-9a-fA-F]){6}");
 
-	/**
-	 * High performance regular expression matcher for colors, used in {@link #stripColors(String)}
-	 */
-	private static final Pattern ALL_IN_ONE = Pattern.compile("((&|" + COLOR_CHAR + ")[0-9a-fk-or])|(" + COLOR_CHAR + "x(" + COLOR_CHAR + "[0-9a-fA-F]){6})|((?<!\\\\)(\\{|&|)#((?:[0-9a-fA-F]{3}){2})(\\}|))");
-
 	/**
 	 * Used to send messages to player without repetition, e.g. if they attempt to break a block
 	 * in a restricted region, we will not spam their chat with "You cannot break this block here" 120x times,
@@ -116,6 +118,56 @@ public final class Common {
 	 */
 	private static final Map<String, Long> TIMED_LOG_CACHE = new HashMap<>();
 
+	/**
+	 * How many colorized messages we remember in {@link #colorize(String)} to skip translating
+	 * them again, set to 0 to disable. Only messages up to 256 letters that do not contain
+	 * {prefix}, {server}, {plugin_name} or {plugin_version} are remembered.
+	 */
+	public static int COLORIZE_CACHE_SIZE = 1_000;
+
+	/**
+	 * Message - Colorized message, see {@link #COLORIZE_CACHE_SIZE}
+	 */
+	private static final Map<String, String> COLORIZE_CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * Placeholders replaced in {@link #colorize(String)}, in the order they are replaced
+	 */
+	private static final String[] COLORIZE_PLACEHOLDERS = { "{prefix}", "{server}", "{plugin_name}", "{plugin_version}" };
+
+	/**
+	 * How many compiled regular expressions we remember in {@link #compilePattern(String)}
+	 * and {@link #compilePattern(String, int)}, set to 0 to disable
+	 */
+	public static int PATTERN_CACHE_SIZE = 1_000;
+
+	/**
+	 * Regex and flags - Compiled pattern, see {@link #PATTERN_CACHE_SIZE}
+	 */
+	private static final Map<PatternKey, Pattern> PATTERN_CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * How many times a pattern was found in or had to be added to {@link #PATTERN_CACHE}
+	 */
+	private static final AtomicLong patternCacheHits = new AtomicLong(), patternCacheMisses = new AtomicLong();
+
+	/**
+	 * Flags stored with the cached pattern to indicate colors or accents were stripped from the regex,
+	 * kept outside of the range used by {@link Pattern} flags
+	 */
+	private static final int PATTERN_STRIP_COLORS = 1 << 30, PATTERN_STRIP_ACCENTS = 1 << 29;
+
+	/**
+	 * How many times a regular expression may time out before {@link #regExMatch(Matcher)}
+	 * stops evaluating it until the plugin is reloaded, set to 0 to never skip expressions
+	 */
+	public static int REGEX_QUARANTINE_TIMEOUTS = 3;
+
+	/**
+	 * Regex - How long it took to evaluate, see {@link #getRegexStatistics()}
+	 */
+	private static final Map<String, RegexStatistics> REGEX_STATISTICS = new ConcurrentHashMap<>();
+
 	// ------------------------------------------------------------------------------------------------------------
 	// Tell prefix
 	// ------------------------------------------------------------------------------------------------------------
@@ -590,38 +642,155 @@ public final class Common {
 		if (message == null || message.isEmpty())
 			return "";
 
-		String result = CompChatColor.translateColorCodes(message)
-				.replace("{prefix}", message.startsWith(tellPrefix) ? "" : tellPrefix)
-				.replace("{server}", SimpleLocalization.SERVER_PREFIX)
-				.replace("{plugin_name}", SimplePlugin.getNamed())
-				.replace("{plugin_version}", SimplePlugin.getVersion());
+		final boolean cacheable = COLORIZE_CACHE_SIZE > 0 && message.length() <= 256;
+
+		if (cacheable) {
+			final String cached = COLORIZE_CACHE.get(message);
+
+			if (cached != null)
+				return cached;
+		}
+
+		final StringBuilder builder = new StringBuilder(message.length() + 16);
+		final boolean replacedPlaceholders = replaceColorizePlaceholders0(message, message, builder, true, 0);
+
+		String result = builder.toString();
 
 		// Replace hex colors on 1.16+ or find the closest color for legacy versions
-		final Matcher match = HEX_COLOR_REGEX.matcher(result);
+		if (result.indexOf('#') != -1) {
+			builder.setLength(0);
 
-		while (match.find()) {
-			final String matched = match.group();
-			final String colorCode = match.group(2);
-			String replacement = "";
+			final boolean escaped = translateHexColors0(result, builder);
 
-			try {
-				replacement = CompChatColor.of("#" + colorCode).toString();
+			result = builder.toString();
 
-			} catch (final IllegalArgumentException ex) {
-			}
+			if (escaped)
+				if (result.contains("\\\\#"))
+					result = result.replace("\\\\#", "\\#");
 
-			result = result.replaceAll(Pattern.quote(matched), replacement);
+				else if (result.contains("\\#"))
+					result = result.replace("\\#", "#");
 		}
 
-		if (result.contains("\\\\#"))
-			result = result.replace("\\\\#", "\\#");
+		if (cacheable && !replacedPlaceholders) {
+			if (COLORIZE_CACHE.size() >= COLORIZE_CACHE_SIZE)
+				COLORIZE_CACHE.clear();
 
-		else if (result.contains("\\#"))
-			result = result.replace("\\#", "#");
+			COLORIZE_CACHE.put(message, result);
+		}
 
 		return result;
 	}
 
+	/*
+	 * Translate & color codes when requested and replace placeholders starting from the given one
+	 * into the builder in a single pass. Placeholder values are copied as they are except that
+	 * later placeholders in them are replaced too. Returns true if we replaced any placeholder.
+	 */
+	private static boolean replaceColorizePlaceholders0(final String original, final String message, final StringBuilder builder, final boolean translateCodes, final int firstPlaceholder) {
+		final int length = message.length();
+		boolean replacedAny = false;
+
+		for (int index = 0; index < length; index++) {
+			final char letter = message.charAt(index);
+
+			if (letter == '&' && translateCodes && index + 1 < length && "0123456789AaBbCcDdEeFfKkLlMmNnOoRrXx".indexOf(message.charAt(index + 1)) > -1) {
+				builder.append(COLOR_CHAR).append(Character.toLowerCase(message.charAt(index + 1)));
+				index++;
+
+				continue;
+			}
+
+			if (letter == '{') {
+				boolean replaced = false;
+
+				for (int placeholder = firstPlaceholder; placeholder < COLORIZE_PLACEHOLDERS.length; placeholder++)
+					if (message.startsWith(COLORIZE_PLACEHOLDERS[placeholder], index)) {
+						final String value = placeholder == 0 ? (original.startsWith(tellPrefix) ? "" : tellPrefix)
+								: placeholder == 1 ? SimpleLocalization.SERVER_PREFIX
+										: placeholder == 2 ? SimplePlugin.getNamed() : SimplePlugin.getVersion();
+
+						replaceColorizePlaceholders0(original, value, builder, false, placeholder + 1);
+						index += COLORIZE_PLACEHOLDERS[placeholder].length() - 1;
+
+						replaced = true;
+						break;
+					}
+
+				if (replaced) {
+					replacedAny = true;
+
+					continue;
+				}
+			}
+
+			builder.append(letter);
+		}
+
+		return replacedAny;
+	}
+
+	/*
+	 * Translate {#HEX}, &#HEX, <#HEX> and #HEX colors not preceded by \ into the builder
+	 * in a single pass. Returns true if the message contains an escaped \# color.
+	 */
+	private static boolean translateHexColors0(final String message, final StringBuilder builder) {
+		final int length = message.length();
+		boolean escaped = false;
+
+		for (int index = 0; index < length; index++) {
+			final char letter = message.charAt(index);
+
+			if (letter == '{' || letter == '&' || letter == '<' || letter == '#') {
+				final int hexEnd = findHexColorEnd0(message, index);
+
+				if (hexEnd != -1) {
+					final int hash = message.indexOf('#', index);
+
+					try {
+						builder.append(CompChatColor.of(message.substring(hash, hash + 7)).toString());
+
+					} catch (final IllegalArgumentException ex) {
+					}
+
+					index = hexEnd - 1;
+					continue;
+				}
+			}
+
+			if (letter == '\\' && index + 1 < length && message.charAt(index + 1) == '#')
+				escaped = true;
+
+			builder.append(letter);
+		}
+
+		return escaped;
+	}
+
+	/*
+	 * Return the index after the {#HEX}, &#HEX, <#HEX> or #HEX color starting at the given index
+	 * not preceded by \, or -1 if there is none
+	 */
+	private static int findHexColorEnd0(final String message, final int index) {
+		final char letter = message.charAt(index);
+		final int hash = letter == '#' ? index : index + 1;
+		final int length = message.length();
+
+		if ((index > 0 && message.charAt(index - 1) == '\\') || hash + 7 > length || message.charAt(hash) != '#')
+			return -1;
+
+		for (int digit = hash + 1; digit < hash + 7; digit++)
+			if (!isHexDigit0(message.charAt(digit)))
+				return -1;
+
+		final int end = hash + 7;
+
+		if (letter == '<')
+			return end < length && message.charAt(end) == '>' ? end + 1 : -1;
+
+		return end < length && message.charAt(end) == '}' ? end + 1 : end;
+	}
+
 	/**
 	 * Replaces the {@link ChatColor#COLOR_CHAR} colors with & letters
 	 *
@@ -655,28 +824,91 @@ public final class Common {
 		if (message == null || message.isEmpty())
 			return message;
 
-		// Replace & color codes
-		final Matcher matcher = ALL_IN_ONE.matcher(message);
-
-		while (matcher.find())
-			message = matcher.replaceAll("");
-
-		// Replace hex colors, both raw and parsed
-		/*if (Remain.hasHexColors()) {
-			matcher = HEX_COLOR_REGEX.matcher(message);
-		
-			while (matcher.find())
-				message = matcher.replaceAll("");
-		
-			matcher = RGB_X_COLOR_REGEX.matcher(message);
-		
-			while (matcher.find())
-				message = matcher.replaceAll("");
-		
-			message = message.replace(ChatColor.COLOR_CHAR + "x", "");
-		}*/
+		final int length = message.length();
+		int index = 0;
 
-		return message;
+		// Every color contains one of these, return messages without them as they are
+		while (index < length) {
+			final char letter = message.charAt(index);
+
+			if (letter == '&' || letter == COLOR_CHAR || letter == '#')
+				break;
+
+			index++;
+		}
+
+		if (index == length)
+			return message;
+
+		// The { in front of {#HEX} is the only color part before these letters
+		if (index > 0 && message.charAt(index - 1) == '{')
+			index--;
+
+		final StringBuilder builder = new StringBuilder(length);
+		boolean stripped = false;
+
+		builder.append(message, 0, index);
+
+		while (index < length) {
+			final int colorEnd = findColorEnd0(message, index);
+
+			if (colorEnd != -1) {
+				index = colorEnd;
+				stripped = true;
+
+				continue;
+			}
+
+			builder.append(message.charAt(index++));
+		}
+
+		return stripped ? builder.toString() : message;
+	}
+
+	/*
+	 * Return the index after the & or {@link ChatColor#COLOR_CHAR} color or decoration, the x format hex
+	 * color or the {#HEX}, &#HEX or #HEX color not preceded by \ starting at the given index, or -1
+	 */
+	private static int findColorEnd0(final String message, final int index) {
+		final int length = message.length();
+		final char letter = message.charAt(index);
+
+		if ((letter == '&' || letter == COLOR_CHAR) && index + 1 < length && "0123456789abcdefklmnor".indexOf(message.charAt(index + 1)) != -1)
+			return index + 2;
+
+		if (letter == COLOR_CHAR && index + 14 <= length && message.charAt(index + 1) == 'x') {
+			boolean rgb = true;
+
+			for (int digit = 0; digit < 6 && rgb; digit++)
+				rgb = message.charAt(index + 2 + digit * 2) == COLOR_CHAR && isHexDigit0(message.charAt(index + 3 + digit * 2));
+
+			if (rgb)
+				return index + 14;
+		}
+
+		if ((letter == '{' || letter == '&' || letter == '#') && (index == 0 || message.charAt(index - 1) != '\\')) {
+			final int hash = letter == '#' ? index : index + 1;
+
+			if (hash + 7 > length || message.charAt(hash) != '#')
+				return -1;
+
+			for (int digit = hash + 1; digit < hash + 7; digit++)
+				if (!isHexDigit0(message.charAt(digit)))
+					return -1;
+
+			final int end = hash + 7;
+
+			return end < length && message.charAt(end) == '}' ? end + 1 : end;
+		}
+
+		return -1;
+	}
+
+	/*
+	 * Return true if the letter is 0-9, a-f or A-F
+	 */
+	private static boolean isHexDigit0(final char letter) {
+		return letter >= '0' && letter <= '9' || letter >= 'a' && letter <= 'f' || letter >= 'A' && letter <= 'F';
 	}
 
 	/**
@@ -1507,12 +1739,13 @@ public final class Common {
 	 * @return
 	 */
 	public static boolean regExMatch(final Pattern regex, final String message) {
-		return regExMatch(compileMatcher(regex, message));
+		return regExMatch(compileTimedMatcher(regex, message));
 	}
 
 	/**
 	 * Returns true if the given matcher matches. We also evaluate
-	 * how long the evaluation took and stop it in case it takes too long,
+	 * how long the evaluation took and stop it in case it takes too long
+	 * if the matcher was created by {@link #compileTimedMatcher(Pattern, String)},
 	 * see {@link SimplePlugin#getRegexTimeout()}
 	 *
 	 * @param matcher
@@ -1521,6 +1754,14 @@ public final class Common {
 	public static boolean regExMatch(final Matcher matcher) {
 		Valid.checkNotNull(matcher, "Cannot call regExMatch on null matcher");
 
+		final RegexStatistics statistics = getRegexStatistics0(matcher.pattern());
+
+		// This expression kept timing out, do not freeze the server with it again
+		if (statistics.isQuarantined())
+			return false;
+
+		final long startNanos = System.nanoTime();
+
 		try {
 			return matcher.find();
 
@@ -1528,34 +1769,51 @@ public final class Common {
 			handleRegexTimeoutException(ex, matcher.pattern());
 
 			return false;
+
+		} finally {
+			statistics.record(System.nanoTime() - startNanos);
 		}
 	}
 
 	/**
 	 * Compiles a matches for the given pattern and message. Colors are stripped.
 	 * <p>
-	 * We also evaluate how long the evaluation took and stop it in case it takes too long,
-	 * see {@link SimplePlugin#getRegexTimeout()}
+	 * The matcher is not timed so it can be used to find and replace repeatedly,
+	 * use {@link #compileTimedMatcher(Pattern, String)} for a single match attempt.
 	 *
 	 * @param pattern
 	 * @param message
 	 * @return
 	 */
 	public static Matcher compileMatcher(@NonNull final Pattern pattern, final String message) {
+		return pattern.matcher(stripRegexMessage(message));
+	}
 
-		try {
-			final SimplePlugin instance = SimplePlugin.getInstance();
-
-			String strippedMessage = instance.regexStripColors() ? stripColors(message) : message;
-			strippedMessage = instance.regexStripAccents() ? ChatUtil.replaceDiacritic(strippedMessage) : strippedMessage;
+	/**
+	 * Compiles a matcher for the given pattern and message for a single match attempt. Colors are stripped.
+	 * <p>
+	 * The clock starts when the matcher first reads the message and it throws {@link RegexTimeoutException}
+	 * once evaluating takes longer than {@link SimpleSettings#REGEX_TIMEOUT}, so create
+	 * a new matcher for each attempt instead of reusing it.
+	 *
+	 * @param pattern
+	 * @param message
+	 * @return
+	 */
+	public static Matcher compileTimedMatcher(@NonNull final Pattern pattern, final String message) {
+		return pattern.matcher(TimedCharSequence.withSettingsLimit(stripRegexMessage(message)));
+	}
 
-			return pattern.matcher(TimedCharSequence.withSettingsLimit(strippedMessage));
+	/*
+	 * Strip colors and accents from the message before matching if enabled
+	 */
+	private static String stripRegexMessage(final String message) {
+		final SimplePlugin instance = SimplePlugin.getInstance();
 
-		} catch (final RegexTimeoutException ex) {
-			handleRegexTimeoutException(ex, pattern);
+		String strippedMessage = instance.regexStripColors() ? stripColors(message) : message;
+		strippedMessage = instance.regexStripAccents() ? ChatUtil.replaceDiacritic(strippedMessage) : strippedMessage;
 
-			return null;
-		}
+		return strippedMessage;
 	}
 
 	/**
@@ -1572,24 +1830,28 @@ public final class Common {
 	/**
 	 * Compiles a pattern from the given regex, stripping colors and making
 	 * it case insensitive
+	 * <p>
+	 * Compiled patterns are cached up to {@link #PATTERN_CACHE_SIZE} until the plugin is reloaded.
 	 *
 	 * @param regex
 	 * @return
 	 */
 	public static Pattern compilePattern(String regex) {
 		final SimplePlugin instance = SimplePlugin.getInstance();
-		Pattern pattern = null;
+		final int flags = (instance.regexCaseInsensitive() ? Pattern.CASE_INSENSITIVE : 0) | (instance.regexUnicode() ? Pattern.UNICODE_CASE : 0);
+		final int options = flags | (instance.regexStripColors() ? PATTERN_STRIP_COLORS : 0) | (instance.regexStripAccents() ? PATTERN_STRIP_ACCENTS : 0);
 
-		regex = instance.regexStripColors() ? stripColors(regex) : regex;
-		regex = instance.regexStripAccents() ? ChatUtil.replaceDiacritic(regex) : regex;
+		final PatternKey key = new PatternKey(regex, options);
+		Pattern pattern = getCachedPattern0(key);
 
-		try {
+		if (pattern != null)
+			return pattern;
 
-			if (instance.regexCaseInsensitive())
-				pattern = Pattern.compile(regex, instance.regexUnicode() ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : Pattern.CASE_INSENSITIVE);
+		regex = (options & PATTERN_STRIP_COLORS) != 0 ? stripColors(regex) : regex;
+		regex = (options & PATTERN_STRIP_ACCENTS) != 0 ? ChatUtil.replaceDiacritic(regex) : regex;
 
-			else
-				pattern = instance.regexUnicode() ? Pattern.compile(regex, Pattern.UNICODE_CASE) : Pattern.compile(regex);
+		try {
+			pattern = Pattern.compile(regex, flags);
 
 		} catch (final PatternSyntaxException ex) {
 			throwError(ex,
@@ -1605,9 +1867,113 @@ public final class Common {
 			return null;
 		}
 
+		cachePattern0(key, pattern);
+
 		return pattern;
 	}
 
+	/**
+	 * Compiles a pattern from the given regex with the given {@link Pattern} flags as it is,
+	 * remembering it so that compiling the same regex again is free.
+	 *
+	 * @param regex
+	 * @param flags
+	 * @return
+	 * @throws PatternSyntaxException if the regex is malformed
+	 */
+	public static Pattern compilePattern(@NonNull final String regex, final int flags) {
+		final PatternKey key = new PatternKey(regex, flags);
+		Pattern pattern = getCachedPattern0(key);
+
+		if (pattern == null) {
+			pattern = Pattern.compile(regex, flags);
+
+			cachePattern0(key, pattern);
+		}
+
+		return pattern;
+	}
+
+	/**
+	 * Clears compiled patterns remembered by {@link #compilePattern(String)} together with
+	 * {@link #getRegexStatistics()}, releasing quarantined expressions. This is called
+	 * automatically when the plugin is reloaded since regex settings may change
+	 */
+	public static void clearPatternCache() {
+		PATTERN_CACHE.clear();
+		REGEX_STATISTICS.clear();
+	}
+
+	/**
+	 * Return how long regular expressions took to evaluate in {@link #regExMatch(Matcher)}
+	 * and how many times they timed out, by their regex
+	 *
+	 * @return
+	 */
+	public static Map<String, RegexStatistics> getRegexStatistics() {
+		return Collections.unmodifiableMap(REGEX_STATISTICS);
+	}
+
+	/**
+	 * Return how many times a compiled pattern was reused from the cache
+	 *
+	 * @return
+	 */
+	public static long getPatternCacheHits() {
+		return patternCacheHits.get();
+	}
+
+	/**
+	 * Return how many times a pattern had to be compiled because it was not cached
+	 *
+	 * @return
+	 */
+	public static long getPatternCacheMisses() {
+		return patternCacheMisses.get();
+	}
+
+	/*
+	 * Return the cached pattern for the key or null, counting hits and misses
+	 */
+	private static Pattern getCachedPattern0(final PatternKey key) {
+		final Pattern pattern = PATTERN_CACHE_SIZE > 0 ? PATTERN_CACHE.get(key) : null;
+
+		(pattern != null ? patternCacheHits : patternCacheMisses).incrementAndGet();
+
+		return pattern;
+	}
+
+	/*
+	 * Remember the compiled pattern, clearing the cache if it is full
+	 */
+	private static void cachePattern0(final PatternKey key, final Pattern pattern) {
+		if (PATTERN_CACHE_SIZE <= 0)
+			return;
+
+		if (PATTERN_CACHE.size() >= PATTERN_CACHE_SIZE)
+			PATTERN_CACHE.clear();
+
+		PATTERN_CACHE.put(key, pattern);
+	}
+
+	/*
+	 * Return the statistics for the given pattern, creating them if needed
+	 */
+	private static RegexStatistics getRegexStatistics0(final Pattern pattern) {
+		RegexStatistics statistics = REGEX_STATISTICS.get(pattern.pattern());
+
+		if (statistics == null) {
+
+			// Keep quarantined expressions when making room for new ones
+			if (PATTERN_CACHE_SIZE > 0 && REGEX_STATISTICS.size() >= PATTERN_CACHE_SIZE)
+				REGEX_STATISTICS.values().removeIf(oldStatistics -> !oldStatistics.isQuarantined());
+
+			statistics = REGEX_STATISTICS.computeIfAbsent(pattern.pattern(), regex -> new RegexStatistics());
+		}
+
+		return statistics;
+	}
+
 	/**
 	 * A special call handling regex timeout exception, do not use
 	 *
@@ -1615,6 +1981,15 @@ public final class Common {
 	 * @param pattern
 	 */
 	public static void handleRegexTimeoutException(RegexTimeoutException ex, Pattern pattern) {
+		final int timeouts = pattern != null ? getRegexStatistics0(pattern).timeouts.incrementAndGet() : 1;
+
+		if (pattern != null && REGEX_QUARANTINE_TIMEOUTS > 0 && timeouts == REGEX_QUARANTINE_TIMEOUTS)
+			log("&cWarning: &fRegular expression '" + pattern.pattern() + "' timed out " + timeouts + " times and will be ignored until the plugin is reloaded.");
+
+		// Only print the full error the first time to prevent console spam
+		if (timeouts > 1)
+			return;
+
 		final boolean caseInsensitive = SimplePlugin.getInstance().regexCaseInsensitive();
 
 		Common.error(ex,
@@ -3015,36 +3390,55 @@ public final class Common {
 	 */
 	public final static class TimedCharSequence implements CharSequence {
 
+		/**
+		 * How many letters are read between checking the clock
+		 */
+		private static final int CHECK_INTERVAL = 1024;
+
 		/**
 		 * The timed message
 		 */
 		private final CharSequence message;
 
 		/**
-		 * The timeout limit in millis
+		 * The timeout limit in millis, 0 or less to never time out
+		 */
+		private final long timeoutMillis;
+
+		/**
+		 * The sequence we were created from, holding the shared clock, or this instance
+		 */
+		private final TimedCharSequence root;
+
+		/**
+		 * The time in nanoseconds when evaluating times out, set when the first letter is read
+		 * so that matchers created ahead of time are not penalized. It is never reset, each
+		 * sequence is only meant for a single match attempt.
 		 */
-		private final long futureTimestampLimit;
+		private long deadlineNanos;
+
+		/**
+		 * How many letters were read since we last checked the clock
+		 */
+		private int reads;
 
 		/*
 		 * Create a new timed message for the given message with a timeout in millis
 		 */
-		private TimedCharSequence(@NonNull final CharSequence message, long futureTimestampLimit) {
+		private TimedCharSequence(@NonNull final CharSequence message, long timeoutMillis, TimedCharSequence root) {
 			this.message = message;
-			this.futureTimestampLimit = futureTimestampLimit;
+			this.timeoutMillis = timeoutMillis;
+			this.root = root == null ? this : root;
 		}
 
 		/**
 		 * Gets a character at the given index, or throws an error if
-		 * this is called too late after the constructor.
+		 * the evaluation is taking longer than the timeout.
 		 */
 		@Override
 		public char charAt(final int index) {
-
-			// Temporarily disabled due to a rare condition upstream when we take this message
-			// and run it in a runnable, then this is still being evaluated past limit and it fails
-			//
-			//if (System.currentTimeMillis() > futureTimestampLimit)
-			//	throw new RegexTimeoutException(message, futureTimestampLimit);
+			if (this.root.reads++ == 0 || this.root.reads >= CHECK_INTERVAL)
+				this.root.checkTimeout();
 
 			try {
 				return this.message.charAt(index);
@@ -3055,6 +3449,24 @@ public final class Common {
 			}
 		}
 
+		/*
+		 * Start the clock or throw an error if we are past the deadline
+		 */
+		private void checkTimeout() {
+			this.reads = 1;
+
+			if (this.timeoutMillis <= 0)
+				return;
+
+			final long now = System.nanoTime();
+
+			if (this.deadlineNanos == 0)
+				this.deadlineNanos = now + TimeUnit.MILLISECONDS.toNanos(this.timeoutMillis);
+
+			else if (now - this.deadlineNanos > 0)
+				throw new RegexTimeoutException(this.message, this.timeoutMillis);
+		}
+
 		@Override
 		public int length() {
 			return this.message.length();
@@ -3062,7 +3474,7 @@ public final class Common {
 
 		@Override
 		public CharSequence subSequence(final int start, final int end) {
-			return new TimedCharSequence(this.message.subSequence(start, end), this.futureTimestampLimit);
+			return new TimedCharSequence(this.message.subSequence(start, end), this.timeoutMillis, this.root);
 		}
 
 		@Override
@@ -3077,7 +3489,107 @@ public final class Common {
 		 * @return
 		 */
 		public static TimedCharSequence withSettingsLimit(CharSequence message) {
-			return new TimedCharSequence(message, System.currentTimeMillis() + SimpleSettings.REGEX_TIMEOUT);
+			return new TimedCharSequence(message, SimpleSettings.REGEX_TIMEOUT, null);
 		}
 	}
+
+	/**
+	 * Represents how long a regular expression took to evaluate in {@link Common#regExMatch(Matcher)}
+	 */
+	public static final class RegexStatistics {
+
+		/**
+		 * How many times the expression was evaluated
+		 */
+		private final LongAdder evaluations = new LongAdder();
+
+		/**
+		 * The total evaluation time in nanoseconds
+		 */
+		private final LongAdder totalNanos = new LongAdder();
+
+		/**
+		 * How many times the expression timed out
+		 */
+		private final AtomicInteger timeouts = new AtomicInteger();
+
+		/**
+		 * The longest evaluation time in nanoseconds
+		 */
+		@Getter
+		private volatile long maxNanos;
+
+		/*
+		 * Record a single evaluation
+		 */
+		private void record(final long nanos) {
+			this.evaluations.increment();
+			this.totalNanos.add(nanos);
+
+			if (nanos > this.maxNanos)
+				this.maxNanos = nanos;
+		}
+
+		/**
+		 * Return how many times the expression was evaluated
+		 *
+		 * @return
+		 */
+		public long getEvaluations() {
+			return this.evaluations.sum();
+		}
+
+		/**
+		 * Return the average evaluation time in nanoseconds
+		 *
+		 * @return
+		 */
+		public long getAverageNanos() {
+			final long evaluations = this.evaluations.sum();
+
+			return evaluations == 0 ? 0 : this.totalNanos.sum() / evaluations;
+		}
+
+		/**
+		 * Return how many times the expression timed out
+		 *
+		 * @return
+		 */
+		public int getTimeouts() {
+			return this.timeouts.get();
+		}
+
+		/**
+		 * Return true if the expression timed out too many times and is no longer
+		 * evaluated, see {@link Common#REGEX_QUARANTINE_TIMEOUTS}
+		 *
+		 * @return
+		 */
+		public boolean isQuarantined() {
+			return REGEX_QUARANTINE_TIMEOUTS > 0 && this.timeouts.get() >= REGEX_QUARANTINE_TIMEOUTS;
+		}
+
+		@Override
+		public String toString() {
+			return "RegexStatistics{evaluations=" + this.getEvaluations() + ", average=" + this.getAverageNanos() / 1_000 + "us, max=" + this.maxNanos / 1_000 + "us, timeouts=" + this.getTimeouts() + "}";
+		}
+	}
+
+	/*
+	 * The key of a compiled pattern in the cache
+	 */
+	@EqualsAndHashCode
+	@RequiredArgsConstructor
+	private static final class PatternKey {
+
+		/**
+		 * The regex as given to us
+		 */
+		private final String regex;
+
+		/**
+		 * Pattern flags and how we modified the regex before compiling it
+		 */
+		private final int options;
+	}
 }
\ No newline at end of file
@@ -1,32 +1,105 @@
 package org.mineacademy.fo;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.mineacademy.fo.collection.expiringmap.ExpiringMap;
+import org.mineacademy.fo.exception.FoException;
 
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 
 /**
  * Utility class for resolving geographical information about players.
+ *
+ * Addresses are looked up in the {@link Database} set using {@link #setDatabase(Database)}
+ * first, which runs offline, and then using ip-api.com.
  */
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class GeoAPI {
 
+	/**
+	 * The response returned by {@link #getCountryOrPending(InetSocketAddress)} while we are still looking it up
+	 */
+	public static final GeoResponse PENDING = new GeoResponse("...", "...", "...", "...");
+
+	/**
+	 * The response for unknown addresses or when the lookup failed
+	 */
+	private static final GeoResponse EMPTY = new GeoResponse("", "", "", "");
+
+	/**
+	 * The response for local addresses
+	 */
+	private static final GeoResponse LOCAL = new GeoResponse("local", "-", "local", "-");
+
 	/**
 	 * The cached responses per IP addresses, records removed after 1 hour to prevent them stacking up in memory.
+	 * Failed lookups are cached for 5 minutes so we do not keep asking when the service is down.
+	 */
+	private static final ExpiringMap<String, GeoResponse> cache = ExpiringMap.builder().variableExpiration().expiration(1, TimeUnit.HOURS).build();
+
+	/**
+	 * IP addresses we are currently looking up asynchronously
 	 */
-	private static final ExpiringMap<String, GeoResponse> cache = ExpiringMap.builder().expiration(1, TimeUnit.HOURS).build();
+	private static final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The offline database we ask before making HTTP requests, or null
+	 */
+	private static volatile Database database;
+
+	/**
+	 * Did anyone ask for geographic data yet? Only then we prefetch it for joining players.
+	 */
+	@Getter
+	private static volatile boolean used = false;
+
+	/**
+	 * Set the offline database we look up addresses in before asking ip-api.com,
+	 * or null to only use ip-api.com
+	 *
+	 * @param database
+	 */
+	public static void setDatabase(Database database) {
+		GeoAPI.database = database;
+
+		cache.clear();
+	}
+
+	/**
+	 * Return the offline database or null if not set
+	 *
+	 * @return
+	 */
+	public static Database getDatabase() {
+		return database;
+	}
 
 	/**
 	 * Returns a {@link GeoResponse} with geographic data for the given IP address
@@ -37,19 +110,123 @@ public final class GeoAPI {
 	 * @return
 	 */
 	public static GeoResponse getCountry(InetSocketAddress ip) {
-		GeoResponse response = new GeoResponse("", "", "", "");
+		used = true;
 
-		if (ip == null)
+		final GeoResponse response = getCountryOffline(ip);
+
+		return response != null ? response : fetch(ip);
+	}
+
+	/**
+	 * Returns a {@link GeoResponse} for the given IP address if we have it cached or
+	 * in the offline database, otherwise starts looking it up asynchronously and
+	 * returns {@link #PENDING}. This never blocks.
+	 *
+	 * @param ip
+	 * @return
+	 */
+	public static GeoResponse getCountryOrPending(InetSocketAddress ip) {
+		used = true;
+
+		final GeoResponse response = getCountryOffline(ip);
+
+		if (response != null)
 			return response;
 
+		prefetch(ip);
+
+		return PENDING;
+	}
+
+	/**
+	 * Looks up the {@link GeoResponse} for the given IP address asynchronously
+	 *
+	 * @param ip
+	 * @return
+	 */
+	public static CompletableFuture<GeoResponse> getCountryAsync(InetSocketAddress ip) {
+		used = true;
+
+		final GeoResponse response = getCountryOffline(ip);
+
+		if (response != null)
+			return CompletableFuture.completedFuture(response);
+
+		final CompletableFuture<GeoResponse> future = new CompletableFuture<>();
+
+		Common.runAsync(() -> future.complete(fetch(ip)));
+
+		return future;
+	}
+
+	/**
+	 * Starts looking up the given IP address asynchronously unless we already have
+	 * it cached or are looking it up already. We call this when players join.
+	 *
+	 * @param ip
+	 */
+	public static void prefetch(InetSocketAddress ip) {
+		if (getCountryOffline(ip) != null)
+			return;
+
+		final String key = toKey(ip);
+
+		if (pending.add(key))
+			Common.runAsync(() -> {
+				try {
+					fetch(ip);
+
+				} finally {
+					pending.remove(key);
+				}
+			});
+	}
+
+	/*
+	 * Return the response from the cache or the offline database, or null if we need to fetch it
+	 */
+	private static GeoResponse getCountryOffline(InetSocketAddress ip) {
+		if (ip == null)
+			return EMPTY;
+
 		if (ip.getHostString().equals("127.0.0.1") || ip.getHostString().equals("0.0.0.0"))
-			return new GeoResponse("local", "-", "local", "-");
+			return LOCAL;
+
+		final String key = toKey(ip);
+		GeoResponse response = cache.get(key);
+
+		if (response != null)
+			return response;
+
+		final Database database = GeoAPI.database;
+
+		if (database != null && ip.getAddress() != null) {
+			response = database.lookup(ip.getAddress());
 
-		if (cache.containsKey(ip.toString()) || cache.containsValue(response))
-			return cache.get(ip.toString());
+			if (response != null) {
+				cache.put(key, response);
+
+				return response;
+			}
+		}
+
+		return null;
+	}
+
+	/*
+	 * Look up the response from ip-api.com, blocking
+	 */
+	private static GeoResponse fetch(InetSocketAddress ip) {
+		final String key = toKey(ip);
+		GeoResponse response = cache.get(key);
+
+		if (response != null)
+			return response;
+
+		response = EMPTY;
 
 		try {
-			final URL url = new URL("http://ip-api.com/json/" + ip.getHostName());
+			final URL url = new URL("http://ip-api.com/json/" + key);
 			final URLConnection con = url.openConnection();
 			con.setConnectTimeout(3000);
 			con.setReadTimeout(3000);
@@ -62,7 +239,9 @@ public final class GeoAPI {
 					page += input;
 
 				response = new GeoResponse(getJson(page, "country"), getJson(page, "countryCode"), getJson(page, "regionName"), getJson(page, "isp"));
-				cache.put(ip.toString(), response);
+				cache.put(key, response);
+
+				return response;
 			}
 
 		} catch (final NoRouteToHostException ex) {
@@ -73,9 +252,19 @@ public final class GeoAPI {
 			ex.printStackTrace();
 		}
 
+		// Remember the failure for a while
+		cache.put(key, response, 5, TimeUnit.MINUTES);
+
 		return response;
 	}
 
+	/*
+	 * Return the IP address without port, so players reconnecting hit the cache
+	 */
+	private static String toKey(InetSocketAddress ip) {
+		return ip.getAddress() != null ? ip.getAddress().getHostAddress() : ip.getHostString();
+	}
+
 	private static String getJson(String page, String element) {
 		return page.contains("\"" + element + "\":\"") ? page.split("\"" + element + "\":\"")[1].split("\",")[0] : "";
 	}
@@ -88,4 +277,334 @@ public final class GeoAPI {
 	public static final class GeoResponse {
 		private final String countryName, countryCode, regionName, isp;
 	}
+
+	/**
+	 * Represents an offline database we look up addresses in before asking ip-api.com
+	 */
+	public interface Database {
+
+		/**
+		 * Return the response for the given address or null if it is not in the database
+		 *
+		 * @param address
+		 * @return
+		 */
+		GeoResponse lookup(InetAddress address);
+	}
+
+	/**
+	 * An offline database of sorted IPv4 ranges searched using binary search.
+	 *
+	 * Load it from a CSV file where each line is:
+	 * network,country_code,country_name[,region_name[,isp]]
+	 *
+	 * The network is either a CIDR range such as 1.2.3.0/24, a range such as
+	 * 1.2.3.0-1.2.3.255 or a single address. Empty lines and lines starting with # are ignored.
+	 *
+	 * Ranges may be nested, such as a /24 inside a /16, in which case the more specific
+	 * range wins. Ranges are split into disjoint parts when loading so lookups stay a
+	 * single binary search.
+	 */
+	public static final class RangeDatabase implements Database {
+
+		/**
+		 * The first address of each range, sorted
+		 */
+		private final long[] starts;
+
+		/**
+		 * The last address of each range
+		 */
+		private final long[] ends;
+
+		/**
+		 * The response for each range
+		 */
+		private final GeoResponse[] responses;
+
+		/**
+		 * How many ranges partially overlapped another one without being nested in it
+		 */
+		@Getter
+		private final int partialOverlaps;
+
+		private RangeDatabase(List<Range> ranges) {
+
+			// Wider ranges first when they start at the same address so that nested ones come after them
+			ranges.sort((first, second) -> first.start != second.start ? Long.compare(first.start, second.start) : Long.compare(second.end, first.end));
+
+			final int[] partialOverlaps = new int[1];
+			ranges = toDisjoint(ranges, partialOverlaps);
+
+			this.partialOverlaps = partialOverlaps[0];
+			this.starts = new long[ranges.size()];
+			this.ends = new long[ranges.size()];
+			this.responses = new GeoResponse[ranges.size()];
+
+			for (int i = 0; i < ranges.size(); i++) {
+				final Range range = ranges.get(i);
+
+				this.starts[i] = range.start;
+				this.ends[i] = range.end;
+				this.responses[i] = range.response;
+			}
+		}
+
+		@Override
+		public GeoResponse lookup(InetAddress address) {
+			final byte[] bytes = address.getAddress();
+
+			if (bytes.length != 4)
+				return null;
+
+			return this.lookup(((bytes[0] & 0xFFL) << 24) | ((bytes[1] & 0xFFL) << 16) | ((bytes[2] & 0xFFL) << 8) | (bytes[3] & 0xFFL));
+		}
+
+		/**
+		 * Return the response for the given IPv4 address such as 1.2.3.4, or null if
+		 * it is not valid or not in the database
+		 *
+		 * @param address
+		 * @return
+		 */
+		public GeoResponse lookup(String address) {
+			final long ip = parseAddress(address);
+
+			return ip == -1 ? null : this.lookup(ip);
+		}
+
+		/*
+		 * Find the last range starting before the address and check if it ends after it
+		 */
+		private GeoResponse lookup(long ip) {
+			int index = Arrays.binarySearch(this.starts, ip);
+
+			if (index < 0)
+				index = -index - 2;
+
+			return index >= 0 && ip <= this.ends[index] ? this.responses[index] : null;
+		}
+
+		/**
+		 * Return how many ranges are loaded
+		 *
+		 * @return
+		 */
+		public int size() {
+			return this.starts.length;
+		}
+
+		/**
+		 * Load the database from the given CSV file
+		 *
+		 * @param file
+		 * @return
+		 */
+		public static RangeDatabase fromCsv(@NonNull File file) {
+			try (InputStream stream = new FileInputStream(file)) {
+				return fromCsv(stream);
+
+			} catch (final IOException ex) {
+				throw new FoException(ex, "Failed to load geo database from " + file);
+			}
+		}
+
+		/**
+		 * Load the database from the given CSV stream, the stream is not closed
+		 *
+		 * @param stream
+		 * @return
+		 */
+		public static RangeDatabase fromCsv(@NonNull InputStream stream) {
+			final List<Range> ranges = new ArrayList<>();
+			final Map<String, GeoResponse> responses = new HashMap<>();
+			int invalidLines = 0;
+
+			try {
+				final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+				String line;
+
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+
+					if (line.isEmpty() || line.startsWith("#"))
+						continue;
+
+					final String[] columns = line.split(",", 5);
+					final long[] range = columns.length >= 3 ? parseRange(columns[0].trim()) : null;
+
+					if (range == null) {
+						invalidLines++;
+
+						continue;
+					}
+
+					final String countryCode = columns[1].trim();
+					final String countryName = columns[2].trim();
+					final String regionName = columns.length > 3 ? columns[3].trim() : "";
+					final String isp = columns.length > 4 ? columns[4].trim() : "";
+
+					// Share responses since many ranges belong to the same country
+					final GeoResponse response = responses.computeIfAbsent(countryCode + "," + countryName + "," + regionName + "," + isp,
+							key -> new GeoResponse(countryName, countryCode, regionName, isp));
+
+					ranges.add(new Range(range[0], range[1], response));
+				}
+
+			} catch (final IOException ex) {
+				throw new FoException(ex, "Failed to read geo database");
+			}
+
+			if (invalidLines > 0)
+				Common.warning("Skipped " + invalidLines + " invalid or non-IPv4 lines in geo database");
+
+			final RangeDatabase database = new RangeDatabase(ranges);
+
+			if (database.partialOverlaps > 0)
+				Common.warning(database.partialOverlaps + " ranges in geo database partially overlap others, the range starting later wins where they overlap");
+
+			return database;
+		}
+
+		/*
+		 * Split ranges sorted by start and then by widest first into disjoint ranges where the range
+		 * opened last wins, merging neighbours with the same response, and count partial overlaps
+		 */
+		private static List<Range> toDisjoint(List<Range> ranges, int[] partialOverlaps) {
+			final List<Range> disjoint = new ArrayList<>(ranges.size());
+			final Deque<Range> open = new ArrayDeque<>();
+
+			// The first address not yet covered by disjoint ranges
+			long cursor = 0;
+
+			for (final Range range : ranges) {
+
+				// Finish ranges ending before this one
+				while (!open.isEmpty() && open.peek().end < range.start) {
+					final Range closed = open.pop();
+
+					if (cursor <= closed.end) {
+						addDisjoint(disjoint, cursor, closed.end, closed.response);
+
+						cursor = closed.end + 1;
+					}
+				}
+
+				if (!open.isEmpty()) {
+					final Range outer = open.peek();
+
+					if (cursor < range.start)
+						addDisjoint(disjoint, cursor, range.start - 1, outer.response);
+
+					if (range.end > outer.end)
+						partialOverlaps[0]++;
+				}
+
+				open.push(range);
+				cursor = range.start;
+			}
+
+			while (!open.isEmpty()) {
+				final Range closed = open.pop();
+
+				if (cursor <= closed.end) {
+					addDisjoint(disjoint, cursor, closed.end, closed.response);
+
+					cursor = closed.end + 1;
+				}
+			}
+
+			return disjoint;
+		}
+
+		/*
+		 * Add the range or extend the last one if it ends right before it with the same response
+		 */
+		private static void addDisjoint(List<Range> disjoint, long start, long end, GeoResponse response) {
+			final int last = disjoint.size() - 1;
+
+			if (last >= 0 && disjoint.get(last).response == response && disjoint.get(last).end + 1 == start)
+				disjoint.set(last, new Range(disjoint.get(last).start, end, response));
+			else
+				disjoint.add(new Range(start, end, response));
+		}
+
+		/*
+		 * Parse 1.2.3.0/24, 1.2.3.0-1.2.3.255 or 1.2.3.4 into the first and last address, or null if invalid
+		 */
+		private static long[] parseRange(String network) {
+			final int slash = network.indexOf('/');
+
+			if (slash != -1) {
+				final long ip = parseAddress(network.substring(0, slash));
+				final int bits;
+
+				try {
+					bits = Integer.parseInt(network.substring(slash + 1));
+
+				} catch (final NumberFormatException ex) {
+					return null;
+				}
+
+				if (ip == -1 || bits < 0 || bits > 32)
+					return null;
+
+				final long mask = bits == 0 ? 0 : (0xFFFFFFFFL << (32 - bits)) & 0xFFFFFFFFL;
+
+				return new long[] { ip & mask, (ip & mask) | (~mask & 0xFFFFFFFFL) };
+			}
+
+			final int dash = network.indexOf('-');
+
+			if (dash != -1) {
+				final long start = parseAddress(network.substring(0, dash).trim());
+				final long end = parseAddress(network.substring(dash + 1).trim());
+
+				return start == -1 || end == -1 || end < start ? null : new long[] { start, end };
+			}
+
+			final long ip = parseAddress(network);
+
+			return ip == -1 ? null : new long[] { ip, ip };
+		}
+
+		/*
+		 * Parse the IPv4 address without any DNS lookups, returning -1 if invalid
+		 */
+		private static long parseAddress(String address) {
+			final String[] parts = address.split("\\.");
+
+			if (parts.length != 4)
+				return -1;
+
+			long ip = 0;
+
+			for (final String part : parts) {
+				final int octet;
+
+				try {
+					octet = Integer.parseInt(part);
+
+				} catch (final NumberFormatException ex) {
+					return -1;
+				}
+
+				if (octet < 0 || octet > 255)
+					return -1;
+
+				ip = (ip << 8) | octet;
+			}
+
+			return ip;
+		}
+
+		/*
+		 * A single range while loading
+		 */
+		@RequiredArgsConstructor
+		private static final class Range {
+			private final long start, end;
+			private final GeoResponse response;
+		}
+	}
 }
@@ -3,13 +3,17 @@ package org.mineacademy.fo;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Map;
 import java.util.NavigableMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.util.Vector;
 
 import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
 
 /**
  * Utility class for mathematical operations.
@@ -17,6 +21,16 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class MathUtil {
 
+	/**
+	 * How many compiled expressions we cache in {@link #compile(String, String...)}, the cache is cleared when full
+	 */
+	public static int EXPRESSION_CACHE_SIZE = 1_000;
+
+	/**
+	 * Expression source and variable names - Compiled expression
+	 */
+	private static final Map<String, Expression> expressionCache = new ConcurrentHashMap<>();
+
 	/**
 	 * Formatter that transforms whole numbers into whole decimals with 1 decimal point
 	 */
@@ -392,112 +406,277 @@ public final class MathUtil {
 	 * @return
 	 */
 	public static double calculate(final String expression) {
-		class Parser {
-			int pos = -1, c;
+		return compile(expression).evaluate();
+	}
 
-			void eatChar() {
-				this.c = ++this.pos < expression.length() ? expression.charAt(this.pos) : -1;
-			}
+	/**
+	 * Compile the given expression such as "damage * (1 + level / 10)" so that it
+	 * can be evaluated repeatedly without parsing it again. Compiled expressions
+	 * are cached by their source and variable names.
+	 *
+	 * @param expression
+	 * @param variableNames the names of variables, their values are given in the same order to {@link Expression#evaluate(double...)}
+	 * @return
+	 */
+	public static Expression compile(final String expression, final String... variableNames) {
+		final String key = variableNames.length == 0 ? expression : expression + '\0' + String.join("\0", variableNames);
+		Expression compiled = expressionCache.get(key);
 
-			void eatSpace() {
-				while (Character.isWhitespace(this.c))
-					this.eatChar();
-			}
+		if (compiled == null) {
+			compiled = new Expression(expression, variableNames.clone(), new ExpressionParser(expression, variableNames).parse());
+
+			if (expressionCache.size() >= EXPRESSION_CACHE_SIZE)
+				expressionCache.clear();
+
+			expressionCache.put(key, compiled);
+		}
+
+		return compiled;
+	}
+
+	/**
+	 * A compiled mathematical expression, see {@link MathUtil#compile(String, String...)}
+	 * <p>
+	 * It is immutable and safe to evaluate from multiple threads at once.
+	 */
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	public static final class Expression {
+
+		/**
+		 * The expression we were compiled from
+		 */
+		@Getter
+		private final String source;
+
+		/**
+		 * The variable names, in the order their values are given
+		 */
+		private final String[] variableNames;
+
+		/**
+		 * The root of the expression tree
+		 */
+		private final ExpressionNode root;
+
+		/**
+		 * Evaluate the expression with the given values of variables,
+		 * in the same order as the variable names were given when compiling
+		 *
+		 * @param values
+		 * @return
+		 */
+		public double evaluate(final double... values) {
+			if (values.length != this.variableNames.length)
+				throw new CalculatorException("Expression '" + this.source + "' expects " + this.variableNames.length + " variable values, got " + values.length);
+
+			return this.root.evaluate(values);
+		}
+
+		/**
+		 * Return true if the expression does not use any variables and was folded into a single number
+		 *
+		 * @return
+		 */
+		public boolean isConstant() {
+			return this.root instanceof ConstantNode;
+		}
+
+		/**
+		 * Return the variable names, in the order their values are given
+		 *
+		 * @return
+		 */
+		public String[] getVariableNames() {
+			return this.variableNames.clone();
+		}
+
+		@Override
+		public String toString() {
+			return "Expression{" + this.source + "}";
+		}
+	}
+
+	/*
+	 * A part of the compiled expression
+	 */
+	private interface ExpressionNode {
+		double evaluate(double[] values);
+	}
+
+	/*
+	 * A number known when compiling
+	 */
+	@RequiredArgsConstructor
+	private static final class ConstantNode implements ExpressionNode {
+		private final double value;
 
-			double parse() {
+		@Override
+		public double evaluate(final double[] values) {
+			return this.value;
+		}
+	}
+
+	/*
+	 * Parses expressions into a tree, folding parts that only use numbers
+	 */
+	@RequiredArgsConstructor
+	private static final class ExpressionParser {
+		private final String expression;
+		private final String[] variableNames;
+		private int pos = -1, c;
+
+		void eatChar() {
+			this.c = ++this.pos < this.expression.length() ? this.expression.charAt(this.pos) : -1;
+		}
+
+		void eatSpace() {
+			while (Character.isWhitespace(this.c))
 				this.eatChar();
+		}
 
-				final double v = this.parseExpression();
+		ExpressionNode parse() {
+			this.eatChar();
 
-				if (this.c != -1)
-					throw new CalculatorException("Unexpected: " + (char) this.c);
+			final ExpressionNode v = this.parseExpression();
 
-				return v;
-			}
+			if (this.c != -1)
+				throw new CalculatorException("Unexpected: " + (char) this.c);
 
-			// Grammar:
-			// expression = term | expression `+` term | expression `-` term
-			// term = factor | term `*` factor | term `/` factor | term brackets
-			// factor = brackets | number | factor `^` factor
-			// brackets = `(` expression `)`
+			return v;
+		}
 
-			double parseExpression() {
-				double v = this.parseTerm();
+		// Grammar:
+		// expression = term | expression `+` term | expression `-` term
+		// term = factor | term `*` factor | term `/` factor | term brackets
+		// factor = brackets | number | variable | factor `^` factor
+		// brackets = `(` expression `)`
 
-				for (;;) {
-					this.eatSpace();
+		ExpressionNode parseExpression() {
+			ExpressionNode v = this.parseTerm();
 
-					if (this.c == '+') { // addition
-						this.eatChar();
-						v += this.parseTerm();
-					} else if (this.c == '-') { // subtraction
-						this.eatChar();
-						v -= this.parseTerm();
-					} else
-						return v;
+			for (;;) {
+				this.eatSpace();
+
+				if (this.c == '+') { // addition
+					this.eatChar();
+					v = this.combine(v, this.parseTerm(), '+');
+				} else if (this.c == '-') { // subtraction
+					this.eatChar();
+					v = this.combine(v, this.parseTerm(), '-');
+				} else
+					return v;
 
-				}
 			}
+		}
 
-			double parseTerm() {
-				double v = this.parseFactor();
+		ExpressionNode parseTerm() {
+			ExpressionNode v = this.parseFactor();
 
-				for (;;) {
-					this.eatSpace();
+			for (;;) {
+				this.eatSpace();
 
-					if (this.c == '/') { // division
+				if (this.c == '/') { // division
+					this.eatChar();
+					v = this.combine(v, this.parseFactor(), '/');
+				} else if (this.c == '*' || this.c == '(') { // multiplication
+					if (this.c == '*')
 						this.eatChar();
-						v /= this.parseFactor();
-					} else if (this.c == '*' || this.c == '(') { // multiplication
-						if (this.c == '*')
-							this.eatChar();
-						v *= this.parseFactor();
-					} else
-						return v;
-				}
+					v = this.combine(v, this.parseFactor(), '*');
+				} else
+					return v;
 			}
+		}
+
+		ExpressionNode parseFactor() {
+			ExpressionNode v;
+			boolean negate = false;
 
-			double parseFactor() {
-				double v;
-				boolean negate = false;
+			this.eatSpace();
 
+			if (this.c == '+' || this.c == '-') { // unary plus & minus
+				negate = this.c == '-';
+				this.eatChar();
 				this.eatSpace();
+			}
 
-				if (this.c == '+' || this.c == '-') { // unary plus & minus
-					negate = this.c == '-';
+			if (this.c == '(') { // brackets
+				this.eatChar();
+				v = this.parseExpression();
+				if (this.c == ')')
 					this.eatChar();
-					this.eatSpace();
-				}
+			} else if (this.variableNames.length > 0 && (Character.isLetter(this.c) || this.c == '_')) // variables
+				v = this.parseVariable();
 
-				if (this.c == '(') { // brackets
+			else { // numbers
+				final StringBuilder sb = new StringBuilder();
+
+				while (this.c >= '0' && this.c <= '9' || this.c == '.') {
+					sb.append((char) this.c);
 					this.eatChar();
-					v = this.parseExpression();
-					if (this.c == ')')
-						this.eatChar();
-				} else { // numbers
-					final StringBuilder sb = new StringBuilder();
+				}
 
-					while (this.c >= '0' && this.c <= '9' || this.c == '.') {
-						sb.append((char) this.c);
-						this.eatChar();
-					}
+				if (sb.length() == 0)
+					throw new CalculatorException("Unexpected: " + (char) this.c);
 
-					if (sb.length() == 0)
-						throw new CalculatorException("Unexpected: " + (char) this.c);
+				v = new ConstantNode(Double.parseDouble(sb.toString()));
+			}
+			this.eatSpace();
+			if (this.c == '^') { // exponentiation
+				this.eatChar();
+				v = this.combine(v, this.parseFactor(), '^');
+			}
+			if (negate)
+				v = this.negate(v); // unary minus is applied after exponentiation; e.g. -3^2=-9
+			return v;
+		}
 
-					v = Double.parseDouble(sb.toString());
-				}
-				this.eatSpace();
-				if (this.c == '^') { // exponentiation
-					this.eatChar();
-					v = Math.pow(v, this.parseFactor());
+		ExpressionNode parseVariable() {
+			final int start = this.pos;
+
+			while (Character.isLetterOrDigit(this.c) || this.c == '_')
+				this.eatChar();
+
+			final String name = this.expression.substring(start, this.pos);
+
+			for (int index = 0; index < this.variableNames.length; index++)
+				if (this.variableNames[index].equals(name)) {
+					final int variableIndex = index;
+
+					return values -> values[variableIndex];
 				}
-				if (negate)
-					v = -v; // unary minus is applied after exponentiation; e.g. -3^2=-9
-				return v;
+
+			throw new CalculatorException("Unknown variable: " + name);
+		}
+
+		/*
+		 * Join the two nodes with the operator, folding them into a number if both are known
+		 */
+		ExpressionNode combine(final ExpressionNode left, final ExpressionNode right, final char operator) {
+			final ExpressionNode combined;
+
+			switch (operator) {
+				case '+':
+					combined = values -> left.evaluate(values) + right.evaluate(values);
+					break;
+				case '-':
+					combined = values -> left.evaluate(values) - right.evaluate(values);
+					break;
+				case '*':
+					combined = values -> left.evaluate(values) * right.evaluate(values);
+					break;
+				case '/':
+					combined = values -> left.evaluate(values) / right.evaluate(values);
+					break;
+				default:
+					combined = values -> Math.pow(left.evaluate(values), right.evaluate(values));
 			}
+
+			return left instanceof ConstantNode && right instanceof ConstantNode ? new ConstantNode(combined.evaluate(null)) : combined;
+		}
+
+		ExpressionNode negate(final ExpressionNode node) {
+			return node instanceof ConstantNode ? new ConstantNode(-node.evaluate(null)) : values -> -node.evaluate(values);
 		}
-		return new Parser().parse();
 	}
 
 	/**
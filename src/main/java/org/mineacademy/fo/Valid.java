@@ -651,7 +651,8 @@ public final class Valid {
 	/**
 	 * Return true if any element in the given list matches your given element.
 	 *
-	 * A regular expression is compiled from that list element.
+	 * A regular expression is compiled from that list element, see {@link Common#compilePattern(String)}
+	 * for how compiled expressions are cached.
 	 *
 	 * @param element
 	 * @param list
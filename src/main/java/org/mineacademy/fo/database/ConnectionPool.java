@@ -0,0 +1,697 @@
+package org.mineacademy.fo.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.mineacademy.fo.Common;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+/**
+ * A small JDBC connection pool used by {@link SimpleDatabase} when HikariCP
+ * is not available or disabled.
+ * <p>
+ * Connections are validated when borrowed, closed after being idle for too long
+ * (keeping at least the minimum size open), and reported with the stack trace
+ * of the borrowing code when they are held longer than the leak detection threshold, if enabled.
+ * Threads waiting for a connection are served in the order they arrived.
+ * <p>
+ * Every connection obtained from {@link #borrow()} must be given back using {@link #release(Connection)}.
+ */
+public final class ConnectionPool {
+
+	/**
+	 * Connections used within this time are considered alive and not validated again when borrowed
+	 */
+	private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+	/**
+	 * The JDBC url
+	 */
+	private final String url;
+
+	/**
+	 * The user name, or null if connecting without credentials
+	 */
+	private final String user;
+
+	/**
+	 * The password, or null if connecting without credentials
+	 */
+	private final String password;
+
+	/**
+	 * The settings this pool was created with
+	 */
+	@Getter
+	private final Settings settings;
+
+	/**
+	 * The fair lock guarding the fields below, waiting threads are served first come first served
+	 */
+	private final ReentrantLock lock = new ReentrantLock(true);
+
+	/**
+	 * Signalled when a connection is returned or a slot frees up
+	 */
+	private final Condition available = this.lock.newCondition();
+
+	/**
+	 * Idle connections, the most recently used first
+	 */
+	private final Deque<PooledConnection> idle = new ArrayDeque<>();
+
+	/**
+	 * Connections currently borrowed
+	 */
+	private final Map<Connection, PooledConnection> borrowed = new IdentityHashMap<>();
+
+	/**
+	 * Idle plus borrowed connections, including those being opened right now
+	 */
+	private int totalConnections;
+
+	/**
+	 * Was this pool closed?
+	 */
+	private boolean closed;
+
+	/**
+	 * Evicts idle connections, refills the minimum size and reports leaks
+	 */
+	private final ScheduledExecutorService housekeeper;
+
+	/**
+	 * Create a new pool and open the minimum amount of connections right away
+	 *
+	 * @param url
+	 * @param user
+	 * @param password
+	 * @param settings
+	 * @throws SQLException if the initial connections could not be opened
+	 */
+	public ConnectionPool(@NonNull String url, String user, String password, @NonNull Settings settings) throws SQLException {
+		if (settings.getMinimumSize() < 0 || settings.getMaximumSize() < 1 || settings.getMinimumSize() > settings.getMaximumSize())
+			throw new IllegalArgumentException("Connection pool size must be 0 <= minimum (" + settings.getMinimumSize() + ") <= maximum (" + settings.getMaximumSize() + ") and maximum >= 1");
+
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.settings = settings.copy();
+
+		try {
+			this.fillToMinimum();
+
+		} catch (final SQLException ex) {
+			this.close();
+
+			throw ex;
+		}
+
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(task -> {
+			final Thread thread = new Thread(task, "Foundation Connection Pool Housekeeper");
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		final long period = this.getHousekeepingPeriod();
+		this.housekeeper.scheduleWithFixedDelay(this::runHousekeeping, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrow a connection, waiting up to {@link Settings#getBorrowTimeout()} for one to become available.
+	 * Return it using {@link #release(Connection)} when done, typically in a finally block.
+	 *
+	 * @return
+	 * @throws SQLException if the pool is closed, the wait timed out or a new connection could not be opened
+	 */
+	public Connection borrow() throws SQLException {
+		return this.borrow(this.settings.getBorrowTimeout());
+	}
+
+	/**
+	 * Borrow a connection, see {@link #borrow()}, waiting up to the given time for one to become available
+	 *
+	 * @param timeoutMillis
+	 * @return
+	 * @throws SQLException if the pool is closed, the wait timed out or a new connection could not be opened
+	 */
+	public Connection borrow(long timeoutMillis) throws SQLException {
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		while (true) {
+			PooledConnection pooled = null;
+
+			this.lock.lock();
+
+			try {
+				while (true) {
+					if (this.closed)
+						throw new SQLException("Connection pool is closed");
+
+					pooled = this.idle.pollFirst();
+
+					if (pooled != null)
+						break;
+
+					if (this.totalConnections < this.settings.getMaximumSize()) {
+						this.totalConnections++;
+
+						break;
+					}
+
+					final long remaining = deadline - System.nanoTime();
+
+					if (remaining <= 0)
+						throw new SQLTimeoutException("Timed out after " + timeoutMillis + "ms waiting for a database connection, all " + this.totalConnections + " are in use");
+
+					try {
+						this.available.awaitNanos(remaining);
+
+					} catch (final InterruptedException ex) {
+						Thread.currentThread().interrupt();
+
+						throw new SQLException("Interrupted while waiting for a database connection", ex);
+					}
+				}
+
+			} finally {
+				this.lock.unlock();
+			}
+
+			// Open or validate outside of the lock so that others are not blocked by network calls
+			if (pooled == null)
+				try {
+					pooled = new PooledConnection(this.openConnection());
+
+				} catch (SQLException | RuntimeException ex) {
+					this.discard(null);
+
+					throw ex;
+				}
+
+			else if (!this.isValid(pooled)) {
+				this.discard(pooled);
+
+				continue;
+			}
+
+			pooled.markBorrowed(this.settings.getLeakDetectionThreshold() > 0);
+
+			this.lock.lock();
+
+			try {
+				this.borrowed.put(pooled.connection, pooled);
+
+			} finally {
+				this.lock.unlock();
+			}
+
+			return pooled.connection;
+		}
+	}
+
+	/**
+	 * Return a connection obtained from {@link #borrow()} back to the pool.
+	 * Any pending transaction is rolled back. Connections not from this pool are ignored.
+	 *
+	 * @param connection
+	 */
+	public void release(Connection connection) {
+		if (connection == null)
+			return;
+
+		final PooledConnection pooled;
+
+		this.lock.lock();
+
+		try {
+			pooled = this.borrowed.remove(connection);
+
+		} finally {
+			this.lock.unlock();
+		}
+
+		if (pooled == null)
+			return;
+
+		if (pooled.leakReported)
+			Common.warning("Previously reported database connection leak was returned to the pool after " + (System.currentTimeMillis() - pooled.borrowedAt) + "ms");
+
+		try {
+			if (connection.isClosed()) {
+				this.discard(pooled);
+
+				return;
+			}
+
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+
+		} catch (final SQLException ex) {
+			this.discard(pooled);
+
+			return;
+		}
+
+		pooled.markReturned();
+
+		this.lock.lock();
+
+		try {
+			if (!this.closed) {
+				this.idle.addFirst(pooled);
+				this.available.signal();
+
+				return;
+			}
+
+		} finally {
+			this.lock.unlock();
+		}
+
+		// The pool was closed while this connection was borrowed
+		this.discard(pooled);
+	}
+
+	/**
+	 * Close all idle connections and stop handing out new ones.
+	 * Connections borrowed at this time are closed when they are released.
+	 */
+	public void close() {
+		final List<PooledConnection> toClose;
+
+		this.lock.lock();
+
+		try {
+			this.closed = true;
+
+			toClose = new ArrayList<>(this.idle);
+			this.totalConnections -= this.idle.size();
+			this.idle.clear();
+
+			this.available.signalAll();
+
+		} finally {
+			this.lock.unlock();
+		}
+
+		if (this.housekeeper != null)
+			this.housekeeper.shutdownNow();
+
+		for (final PooledConnection pooled : toClose)
+			closeQuietly(pooled.connection);
+	}
+
+	/**
+	 * Return if this pool was closed
+	 *
+	 * @return
+	 */
+	public boolean isClosed() {
+		this.lock.lock();
+
+		try {
+			return this.closed;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the amount of open connections, both idle and borrowed
+	 *
+	 * @return
+	 */
+	public int getTotalConnections() {
+		this.lock.lock();
+
+		try {
+			return this.totalConnections;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the amount of connections waiting in the pool
+	 *
+	 * @return
+	 */
+	public int getIdleConnections() {
+		this.lock.lock();
+
+		try {
+			return this.idle.size();
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Return the amount of connections currently borrowed
+	 *
+	 * @return
+	 */
+	public int getBorrowedConnections() {
+		this.lock.lock();
+
+		try {
+			return this.borrowed.size();
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Open a new connection that is not managed by this pool, the caller is responsible for closing it
+	 *
+	 * @return
+	 * @throws SQLException
+	 */
+	public Connection openConnection() throws SQLException {
+		return this.user != null && this.password != null ? DriverManager.getConnection(this.url, this.user, this.password) : DriverManager.getConnection(this.url);
+	}
+
+	/**
+	 * Return the prepared statement cache of a borrowed connection
+	 *
+	 * @param connection
+	 * @return
+	 */
+	StatementCache getStatementCache(Connection connection) {
+		final PooledConnection pooled;
+
+		this.lock.lock();
+
+		try {
+			pooled = this.borrowed.get(connection);
+
+		} finally {
+			this.lock.unlock();
+		}
+
+		if (pooled == null)
+			throw new IllegalArgumentException("Connection " + connection + " is not borrowed from this pool");
+
+		return pooled.statements;
+	}
+
+	/*
+	 * Return true if the connection is alive, validating it only when not used recently
+	 */
+	private boolean isValid(PooledConnection pooled) {
+		if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_BYPASS_MILLIS)
+			return true;
+
+		try {
+			return pooled.connection.isValid(this.settings.getValidationTimeout());
+
+		} catch (final AbstractMethodError err) {
+			// Old drivers, fall back to checking if closed
+
+		} catch (final SQLException ex) {
+			return false;
+		}
+
+		try {
+			return !pooled.connection.isClosed();
+
+		} catch (final SQLException ex) {
+			return false;
+		}
+	}
+
+	/*
+	 * Close the connection (if any) and free its slot
+	 */
+	private void discard(PooledConnection pooled) {
+		if (pooled != null)
+			closeQuietly(pooled.connection);
+
+		this.lock.lock();
+
+		try {
+			this.totalConnections--;
+			this.available.signal();
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/*
+	 * Open connections until the minimum size is reached
+	 */
+	private void fillToMinimum() throws SQLException {
+		while (true) {
+			this.lock.lock();
+
+			try {
+				if (this.closed || this.totalConnections >= this.settings.getMinimumSize())
+					return;
+
+				this.totalConnections++;
+
+			} finally {
+				this.lock.unlock();
+			}
+
+			final PooledConnection pooled;
+
+			try {
+				pooled = new PooledConnection(this.openConnection());
+
+			} catch (SQLException | RuntimeException ex) {
+				this.discard(null);
+
+				throw ex;
+			}
+
+			this.lock.lock();
+
+			try {
+				if (!this.closed) {
+					this.idle.addLast(pooled);
+					this.available.signal();
+
+					continue;
+				}
+
+			} finally {
+				this.lock.unlock();
+			}
+
+			this.discard(pooled);
+		}
+	}
+
+	/*
+	 * Close connections idle for too long, refill the minimum size and report leaks
+	 */
+	private void runHousekeeping() {
+		try {
+			final long now = System.currentTimeMillis();
+			final List<PooledConnection> expired = new ArrayList<>();
+			final List<PooledConnection> leaked = new ArrayList<>();
+
+			this.lock.lock();
+
+			try {
+				if (this.closed)
+					return;
+
+				if (this.settings.getIdleTimeout() > 0) {
+
+					// Walk from the least recently used end so that warm connections survive
+					for (final Iterator<PooledConnection> it = this.idle.descendingIterator(); it.hasNext();) {
+						final PooledConnection pooled = it.next();
+
+						if (this.totalConnections <= this.settings.getMinimumSize())
+							break;
+
+						if (now - pooled.lastUsed > this.settings.getIdleTimeout()) {
+							it.remove();
+							this.totalConnections--;
+
+							expired.add(pooled);
+						}
+					}
+				}
+
+				if (this.settings.getLeakDetectionThreshold() > 0)
+					for (final PooledConnection pooled : this.borrowed.values())
+						if (!pooled.leakReported && now - pooled.borrowedAt > this.settings.getLeakDetectionThreshold()) {
+							pooled.leakReported = true;
+
+							leaked.add(pooled);
+						}
+
+			} finally {
+				this.lock.unlock();
+			}
+
+			for (final PooledConnection pooled : expired)
+				closeQuietly(pooled.connection);
+
+			for (final PooledConnection pooled : leaked) {
+				final String message = "Database connection was borrowed " + (now - pooled.borrowedAt) + "ms ago by thread '" + pooled.borrowingThread + "' and not returned yet, possible connection leak!";
+
+				if (pooled.borrowedTrace != null)
+					Common.error(pooled.borrowedTrace, message);
+				else
+					Common.warning(message);
+			}
+
+			this.fillToMinimum();
+
+		} catch (final Throwable t) {
+			Common.warning("Error running database connection pool housekeeping: " + t);
+		}
+	}
+
+	/*
+	 * Return how often to run housekeeping, frequently enough to honor the configured timeouts
+	 */
+	private long getHousekeepingPeriod() {
+		long period = 30_000;
+
+		if (this.settings.getIdleTimeout() > 0)
+			period = Math.min(period, this.settings.getIdleTimeout() / 2);
+
+		if (this.settings.getLeakDetectionThreshold() > 0)
+			period = Math.min(period, this.settings.getLeakDetectionThreshold() / 2);
+
+		return Math.max(period, 100);
+	}
+
+	/*
+	 * Close the connection ignoring errors
+	 */
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+
+		} catch (final SQLException ex) {
+			// Already broken
+		}
+	}
+
+	// --------------------------------------------------------------------
+	// Classes
+	// --------------------------------------------------------------------
+
+	/**
+	 * Settings for the pool, adjust them before the pool is created
+	 */
+	@Getter
+	@Setter
+	public static final class Settings {
+
+		/**
+		 * The amount of connections kept open even when idle
+		 */
+		private int minimumSize = 1;
+
+		/**
+		 * The maximum amount of open connections
+		 */
+		private int maximumSize = 10;
+
+		/**
+		 * How long to wait for a free connection before failing, in milliseconds
+		 */
+		private long borrowTimeout = 30_000;
+
+		/**
+		 * How long to wait for {@link Connection#isValid(int)} when borrowing, in seconds
+		 */
+		private int validationTimeout = 5;
+
+		/**
+		 * How long a connection above the minimum size may stay idle before being closed,
+		 * in milliseconds, 0 to keep them open
+		 */
+		private long idleTimeout = 600_000;
+
+		/**
+		 * How long a connection may be borrowed before being reported as a leak
+		 * with the borrowing stack trace, in milliseconds, 0 to disable.
+		 * <p>
+		 * Only enable this when looking for leaks since it captures a stack trace on every borrow.
+		 */
+		private long leakDetectionThreshold = 0;
+
+		/*
+		 * Copy the settings so that later changes do not affect a running pool
+		 */
+		private Settings copy() {
+			final Settings copy = new Settings();
+
+			copy.minimumSize = this.minimumSize;
+			copy.maximumSize = this.maximumSize;
+			copy.borrowTimeout = this.borrowTimeout;
+			copy.validationTimeout = this.validationTimeout;
+			copy.idleTimeout = this.idleTimeout;
+			copy.leakDetectionThreshold = this.leakDetectionThreshold;
+
+			return copy;
+		}
+	}
+
+	/*
+	 * A connection with its usage data
+	 */
+	private static final class PooledConnection {
+
+		private final Connection connection;
+		private final StatementCache statements;
+
+		private long lastUsed = System.currentTimeMillis();
+		private long borrowedAt;
+		private String borrowingThread;
+		private Throwable borrowedTrace;
+		private boolean leakReported;
+
+		private PooledConnection(Connection connection) {
+			this.connection = connection;
+			this.statements = new StatementCache(connection);
+		}
+
+		private void markBorrowed(boolean captureTrace) {
+			this.borrowedAt = System.currentTimeMillis();
+			this.borrowingThread = Thread.currentThread().getName();
+			this.borrowedTrace = captureTrace ? new Throwable("Connection borrowed here") : null;
+			this.leakReported = false;
+		}
+
+		private void markReturned() {
+			this.lastUsed = System.currentTimeMillis();
+			this.borrowedTrace = null;
+			this.leakReported = false;
+		}
+	}
+}
@@ -0,0 +1,488 @@
+package org.mineacademy.fo.database;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mineacademy.fo.Common;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A bounded executor running database work off the main thread
+ * and returning {@link CompletableFuture}s, used by the async methods in {@link SimpleDatabase}.
+ * <p>
+ * Tasks wait in a queue of limited size, when it is full the {@link RejectionPolicy} decides
+ * what happens. Queue depth, waiting and execution times are measured so that an overloaded
+ * database shows up in {@link #getStatistics()} and in the console instead of piling up silently.
+ */
+public final class DatabaseExecutor implements Executor {
+
+	/**
+	 * How often to warn about slow queue at most, in milliseconds
+	 */
+	private static final long WARNING_INTERVAL = 10_000;
+
+	/**
+	 * The settings this executor was created with
+	 */
+	@Getter
+	private final Settings settings;
+
+	/**
+	 * The underlying thread pool
+	 */
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Metrics
+	 */
+	private final LongAdder submitted = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final LongAdder executionNanos = new LongAdder();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	/**
+	 * When did we last warn about the queue being slow
+	 */
+	private final AtomicLong lastWarning = new AtomicLong();
+
+	/**
+	 * Create a new executor, its threads are started on demand
+	 *
+	 * @param name the name used for threads and warnings
+	 * @param settings
+	 */
+	public DatabaseExecutor(@NonNull String name, @NonNull Settings settings) {
+		if (settings.getThreads() < 1 || settings.getQueueSize() < 1)
+			throw new IllegalArgumentException("Database executor needs at least 1 thread and queue size of 1, got " + settings.getThreads() + " and " + settings.getQueueSize());
+
+		this.settings = settings.copy();
+
+		final AtomicInteger threadCount = new AtomicInteger();
+
+		this.executor = new ThreadPoolExecutor(this.settings.getThreads(), this.settings.getThreads(), 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(this.settings.getQueueSize()), runnable -> {
+			final Thread thread = new Thread(runnable, name + " Database #" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		}, this::reject);
+
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Run the callable on a database thread, completing the future with its result
+	 * or exception. When {@link Settings#isCompleteOnMainThread()} is set, the future is completed
+	 * and dependent stages run on the main thread.
+	 *
+	 * @param <T>
+	 * @param callable
+	 * @return
+	 */
+	public <T> CompletableFuture<T> submit(@NonNull Callable<T> callable) {
+		return this.submit(callable, this.settings.getRejectionPolicy());
+	}
+
+	/**
+	 * Run the callable on a database thread, see {@link #submit(Callable)}, applying the given
+	 * rejection policy instead of the configured one when the queue is full
+	 *
+	 * @param <T>
+	 * @param callable
+	 * @param rejectionPolicy
+	 * @return
+	 */
+	public <T> CompletableFuture<T> submit(@NonNull Callable<T> callable, @NonNull RejectionPolicy rejectionPolicy) {
+		final Task<T> task = new Task<>(callable, rejectionPolicy);
+
+		this.submitted.increment();
+
+		try {
+			this.executor.execute(task);
+
+		} catch (final RejectedExecutionException ex) {
+			task.fail(ex);
+		}
+
+		return task.future;
+	}
+
+	/**
+	 * Run the runnable on a database thread without applying any rejection policy,
+	 * so that the caller may run it elsewhere when it does not fit into the queue
+	 *
+	 * @param runnable
+	 * @throws RejectedExecutionException if the queue is full or the executor was shut down
+	 */
+	@Override
+	public void execute(@NonNull Runnable runnable) {
+		this.submitted.increment();
+		this.executor.execute(new Task<>(Executors.callable(runnable), null));
+	}
+
+	/**
+	 * Stop accepting new tasks and wait up to {@link Settings#getShutdownTimeout()}
+	 * for queued ones to finish, failing those that did not run
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+
+		try {
+			if (!this.executor.awaitTermination(this.settings.getShutdownTimeout(), TimeUnit.MILLISECONDS)) {
+				int cancelled = 0;
+
+				for (final Runnable runnable : this.executor.shutdownNow())
+					if (runnable instanceof Task) {
+						((Task<?>) runnable).fail(new RejectedExecutionException("Database executor was shut down"));
+
+						cancelled++;
+					}
+
+				Common.warning("Database tasks did not finish within " + this.settings.getShutdownTimeout() + "ms on shutdown, cancelled " + cancelled + " waiting tasks.");
+			}
+
+		} catch (final InterruptedException ex) {
+			this.executor.shutdownNow();
+
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Return if {@link #shutdown()} was called
+	 *
+	 * @return
+	 */
+	public boolean isShutdown() {
+		return this.executor.isShutdown();
+	}
+
+	/**
+	 * Return the amount of tasks waiting in the queue
+	 *
+	 * @return
+	 */
+	public int getQueueDepth() {
+		return this.executor.getQueue().size();
+	}
+
+	/**
+	 * Return the amount of tasks being executed right now
+	 *
+	 * @return
+	 */
+	public int getActiveCount() {
+		return this.executor.getActiveCount();
+	}
+
+	/**
+	 * Return a snapshot of the metrics
+	 *
+	 * @return
+	 */
+	public Statistics getStatistics() {
+		final long finished = this.completed.sum() + this.failed.sum();
+
+		return new Statistics(
+				this.getQueueDepth(),
+				this.getActiveCount(),
+				this.submitted.sum(),
+				this.completed.sum(),
+				this.failed.sum(),
+				this.rejected.sum(),
+				finished == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(this.waitNanos.sum() / finished),
+				TimeUnit.NANOSECONDS.toMillis(this.maxWaitNanos.get()),
+				finished == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(this.executionNanos.sum() / finished));
+	}
+
+	/**
+	 * Reset the counters and times, keeping the queue intact
+	 */
+	public void resetStatistics() {
+		this.submitted.reset();
+		this.completed.reset();
+		this.failed.reset();
+		this.rejected.reset();
+		this.waitNanos.reset();
+		this.executionNanos.reset();
+		this.maxWaitNanos.set(0);
+	}
+
+	/*
+	 * Handle a task that did not fit into the queue according to the rejection policy
+	 */
+	private void reject(Runnable runnable, ThreadPoolExecutor executor) {
+		final Task<?> task = (Task<?>) runnable;
+
+		// Submitted through execute, let the caller decide
+		if (task.rejectionPolicy == null) {
+			if (executor.isShutdown())
+				throw new RejectedExecutionException("Database executor was shut down");
+
+			this.rejected.increment();
+
+			throw new RejectedExecutionException("Database queue is full (" + executor.getQueue().size() + " tasks waiting)");
+		}
+
+		if (executor.isShutdown()) {
+			task.fail(new RejectedExecutionException("Database executor was shut down"));
+
+			return;
+		}
+
+		this.rejected.increment();
+		this.warnOverloaded("Database queue is full (" + executor.getQueue().size() + " tasks waiting), applying " + task.rejectionPolicy + " policy.");
+
+		switch (task.rejectionPolicy) {
+			case CALLER_RUNS:
+				task.run();
+				break;
+
+			case DISCARD_OLDEST:
+				final Runnable oldest = executor.getQueue().poll();
+
+				if (oldest instanceof Task)
+					((Task<?>) oldest).fail(new RejectedExecutionException("Discarded from a full database queue in favor of a newer task"));
+
+				executor.execute(task);
+				break;
+
+			default:
+				task.fail(new RejectedExecutionException("Database queue is full (" + executor.getQueue().size() + " tasks waiting)"));
+		}
+	}
+
+	/*
+	 * Print a warning at most once per interval
+	 */
+	private void warnOverloaded(String message) {
+		final long now = System.currentTimeMillis();
+		final long last = this.lastWarning.get();
+
+		if (now - last > WARNING_INTERVAL && this.lastWarning.compareAndSet(last, now))
+			Common.warning(message + " Statistics: " + this.getStatistics());
+	}
+
+	// --------------------------------------------------------------------
+	// Classes
+	// --------------------------------------------------------------------
+
+	/**
+	 * What to do with a new task when the queue is full
+	 */
+	public enum RejectionPolicy {
+
+		/**
+		 * Complete the new task's future with a {@link RejectedExecutionException}
+		 */
+		FAIL,
+
+		/**
+		 * Run the new task on the thread that submitted it. Blocks the server when submitting
+		 * from the main thread and fails there for methods that must be called async.
+		 */
+		CALLER_RUNS,
+
+		/**
+		 * Fail the task waiting the longest and queue the new one
+		 */
+		DISCARD_OLDEST
+	}
+
+	/**
+	 * Settings for the executor, adjust them before it is created
+	 */
+	@Getter
+	@Setter
+	public static final class Settings {
+
+		/**
+		 * How many database threads to run, keep this at or below the connection pool size
+		 */
+		private int threads = 4;
+
+		/**
+		 * How many tasks may wait for a free thread
+		 */
+		private int queueSize = 1_000;
+
+		/**
+		 * What to do when the queue is full
+		 */
+		@NonNull
+		private RejectionPolicy rejectionPolicy = RejectionPolicy.FAIL;
+
+		/**
+		 * Complete futures on the main thread so that callbacks may use the Bukkit API
+		 */
+		private boolean completeOnMainThread = false;
+
+		/**
+		 * Warn when a task waited in the queue longer than this, in milliseconds, 0 to disable
+		 */
+		private long latencyWarningThreshold = 5_000;
+
+		/**
+		 * How long to wait for queued tasks on shutdown, in milliseconds
+		 */
+		private long shutdownTimeout = 10_000;
+
+		/*
+		 * Copy the settings so that later changes do not affect a running executor
+		 */
+		private Settings copy() {
+			final Settings copy = new Settings();
+
+			copy.threads = this.threads;
+			copy.queueSize = this.queueSize;
+			copy.rejectionPolicy = this.rejectionPolicy;
+			copy.completeOnMainThread = this.completeOnMainThread;
+			copy.latencyWarningThreshold = this.latencyWarningThreshold;
+			copy.shutdownTimeout = this.shutdownTimeout;
+
+			return copy;
+		}
+	}
+
+	/**
+	 * A snapshot of the executor metrics
+	 */
+	@Getter
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	public static final class Statistics {
+
+		/**
+		 * Tasks waiting in the queue
+		 */
+		private final int queueDepth;
+
+		/**
+		 * Tasks being executed
+		 */
+		private final int activeCount;
+
+		/**
+		 * Tasks submitted, including rejected ones
+		 */
+		private final long submitted;
+
+		/**
+		 * Tasks finished successfully
+		 */
+		private final long completed;
+
+		/**
+		 * Tasks finished with an exception
+		 */
+		private final long failed;
+
+		/**
+		 * Tasks that did not fit into the queue
+		 */
+		private final long rejected;
+
+		/**
+		 * Average and maximum time tasks waited in the queue, in milliseconds
+		 */
+		private final long averageWaitMillis;
+		private final long maxWaitMillis;
+
+		/**
+		 * Average time tasks took to run, in milliseconds
+		 */
+		private final long averageExecutionMillis;
+
+		@Override
+		public String toString() {
+			return "{queue=" + this.queueDepth + ", active=" + this.activeCount + ", submitted=" + this.submitted + ", completed=" + this.completed + ", failed=" + this.failed
+					+ ", rejected=" + this.rejected + ", avgWait=" + this.averageWaitMillis + "ms, maxWait=" + this.maxWaitMillis + "ms, avgExecution=" + this.averageExecutionMillis + "ms}";
+		}
+	}
+
+	/*
+	 * A queued callable with its future
+	 */
+	private final class Task<T> implements Runnable {
+
+		private final Callable<T> callable;
+
+		// Null when submitted through execute, rejecting it throws to the caller
+		private final RejectionPolicy rejectionPolicy;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+		private final long queuedAt = System.nanoTime();
+
+		private Task(Callable<T> callable, RejectionPolicy rejectionPolicy) {
+			this.callable = callable;
+			this.rejectionPolicy = rejectionPolicy;
+		}
+
+		@Override
+		public void run() {
+			final long startedAt = System.nanoTime();
+			final long waited = startedAt - this.queuedAt;
+
+			DatabaseExecutor.this.waitNanos.add(waited);
+			DatabaseExecutor.this.maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+			if (DatabaseExecutor.this.settings.getLatencyWarningThreshold() > 0 && TimeUnit.NANOSECONDS.toMillis(waited) > DatabaseExecutor.this.settings.getLatencyWarningThreshold())
+				DatabaseExecutor.this.warnOverloaded("Database task waited " + TimeUnit.NANOSECONDS.toMillis(waited) + "ms in the queue, your database cannot keep up.");
+
+			T result = null;
+			Throwable error = null;
+
+			try {
+				result = this.callable.call();
+
+			} catch (final Throwable t) {
+				error = t;
+			}
+
+			DatabaseExecutor.this.executionNanos.add(System.nanoTime() - startedAt);
+
+			if (error == null) {
+				DatabaseExecutor.this.completed.increment();
+
+				this.complete(result, null);
+
+			} else {
+				DatabaseExecutor.this.failed.increment();
+
+				this.complete(null, error);
+			}
+		}
+
+		private void fail(Throwable error) {
+			this.complete(null, error);
+		}
+
+		private void complete(T result, Throwable error) {
+			final Runnable completion = () -> {
+				if (error == null)
+					this.future.complete(result);
+				else
+					this.future.completeExceptionally(error);
+			};
+
+			if (DatabaseExecutor.this.settings.isCompleteOnMainThread())
+				Common.runLater(0, completion);
+			else
+				completion.run();
+		}
+	}
+}
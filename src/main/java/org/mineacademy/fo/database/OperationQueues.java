@@ -0,0 +1,219 @@
+package org.mineacademy.fo.database;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import lombok.NonNull;
+
+/**
+ * Runs operations queued for one unique ID in order while operations
+ * for different unique IDs run in parallel, used for player loads and saves in {@link SimpleFlatDatabase}.
+ * <p>
+ * Operations run on the executor. When it rejects one, it runs on the overflow executor instead,
+ * so the operations of a player are never dropped while there is somewhere to run them
+ * and never run on the thread queuing them, which may be the main thread.
+ */
+final class OperationQueues {
+
+	/**
+	 * Operations waiting for each unique ID
+	 */
+	private final Map<UUID, OperationQueue> queues = new ConcurrentHashMap<>();
+
+	/**
+	 * Notified each time a queue was emptied, used to wait for queued operations
+	 */
+	private final Object drainLock = new Object();
+
+	/**
+	 * Where operations run, may reject them when it is full
+	 */
+	private final Executor executor;
+
+	/**
+	 * Where operations run when the executor rejected them
+	 */
+	private final Executor overflow;
+
+	/**
+	 * Create new queues running operations on the executor, or on the overflow one when it is full
+	 *
+	 * @param executor
+	 * @param overflow
+	 */
+	OperationQueues(@NonNull Executor executor, @NonNull Executor overflow) {
+		this.executor = executor;
+		this.overflow = overflow;
+	}
+
+	/**
+	 * Queue the task to run once all earlier tasks for the same unique ID finished.
+	 * A replaceable task still waiting is replaced by a newer replaceable one,
+	 * both callers then share the future of the newer one.
+	 * <p>
+	 * The future completes on the thread that ran the task, or exceptionally with
+	 * a {@link RejectedExecutionException} if neither executor accepted it.
+	 *
+	 * @param <R>
+	 * @param uuid
+	 * @param replaceable
+	 * @param task
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	<R> CompletableFuture<R> enqueue(@NonNull UUID uuid, boolean replaceable, @NonNull Callable<R> task) {
+		while (true) {
+			final OperationQueue queue = this.queues.computeIfAbsent(uuid, key -> new OperationQueue());
+
+			synchronized (queue) {
+
+				// Emptied and forgotten in the meantime, get a new one
+				if (queue.removed)
+					continue;
+
+				final Operation last = queue.pending.peekLast();
+
+				if (replaceable && last != null && last.replaceable) {
+					last.task = (Callable<Object>) task;
+
+					return (CompletableFuture<R>) last.future;
+				}
+
+				final Operation operation = new Operation(replaceable, (Callable<Object>) task);
+				queue.pending.addLast(operation);
+
+				if (!queue.running) {
+					queue.running = true;
+
+					this.runNext(uuid, queue);
+				}
+
+				return (CompletableFuture<R>) operation.future;
+			}
+		}
+	}
+
+	/**
+	 * Wait until all queued operations finished or the deadline passed
+	 *
+	 * @param deadline the time in milliseconds to stop waiting at
+	 * @return true if all operations finished
+	 */
+	boolean await(long deadline) {
+		synchronized (this.drainLock) {
+			long remaining;
+
+			try {
+				while (!this.queues.isEmpty() && (remaining = deadline - System.currentTimeMillis()) > 0)
+					this.drainLock.wait(remaining);
+
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		return this.queues.isEmpty();
+	}
+
+	/**
+	 * Return how many unique IDs have operations waiting or running
+	 *
+	 * @return
+	 */
+	int size() {
+		return this.queues.size();
+	}
+
+	/*
+	 * Run the next waiting task for the unique ID, or forget its queue if there is none
+	 */
+	private void runNext(final UUID uuid, final OperationQueue queue) {
+		final Operation operation;
+		final Callable<Object> task;
+
+		synchronized (queue) {
+			operation = queue.pending.pollFirst();
+
+			if (operation == null) {
+				queue.running = false;
+				queue.removed = true;
+
+				this.queues.remove(uuid, queue);
+
+				synchronized (this.drainLock) {
+					this.drainLock.notifyAll();
+				}
+
+				return;
+			}
+
+			task = operation.task;
+		}
+
+		final Runnable runnable = () -> {
+			Object result = null;
+			Throwable error = null;
+
+			try {
+				result = task.call();
+
+			} catch (final Throwable t) {
+				error = t;
+			}
+
+			// Start the next one before callbacks of this one run
+			this.runNext(uuid, queue);
+
+			if (error == null)
+				operation.future.complete(result);
+			else
+				operation.future.completeExceptionally(error);
+		};
+
+		try {
+			this.executor.execute(runnable);
+
+		} catch (final RejectedExecutionException ex) {
+			try {
+				this.overflow.execute(runnable);
+
+			} catch (final RuntimeException overflowEx) {
+
+				// Nowhere to run it, such as after the plugin was disabled
+				operation.future.completeExceptionally(new RejectedExecutionException("Database " + (operation.replaceable ? "save" : "load") + " for " + uuid + " could not run: " + ex.getMessage(), overflowEx));
+
+				this.runNext(uuid, queue);
+			}
+		}
+	}
+
+	/*
+	 * The operations waiting for one unique ID
+	 */
+	private static final class OperationQueue {
+		private final Deque<Operation> pending = new ArrayDeque<>();
+		private boolean running;
+		private boolean removed;
+	}
+
+	/*
+	 * A waiting operation, the task may be replaced until it starts
+	 */
+	private static final class Operation {
+		private final boolean replaceable;
+		private final CompletableFuture<Object> future = new CompletableFuture<>();
+		private Callable<Object> task;
+
+		private Operation(boolean replaceable, Callable<Object> task) {
+			this.replaceable = replaceable;
+			this.task = task;
+		}
+	}
+}
@@ -6,22 +6,32 @@ import java.sql.Array;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.Ref;
 import java.sql.ResultSet;
 import java.sql.RowId;
 import java.sql.SQLException;
 import java.sql.SQLSyntaxErrorException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
 
 import org.bukkit.inventory.ItemStack;
 import org.mineacademy.fo.Common;
@@ -67,12 +77,85 @@ public class SimpleDatabase {
 	@Setter
 	private static boolean connectUsingHikari = true;
 
+	/**
+	 * Should we use the built-in {@link ConnectionPool} when connecting without HikariCP?
+	 * SQLite always uses a single connection.
+	 */
+	@Getter
+	@Setter
+	private static boolean connectUsingPool = true;
+
+	/**
+	 * How many prepared statements to keep open per connection, see {@link StatementCache}
+	 */
+	@Getter
+	@Setter
+	private static int statementCacheSize = 64;
+
+	/**
+	 * How many generated insert statements to remember before clearing them
+	 */
+	private static final int INSERT_SQL_CACHE_SIZE = 256;
+
+	/**
+	 * Factory used to copy pooled query results so that their connection can be returned
+	 */
+	private static RowSetFactory rowSetFactory;
+
 	/**
 	 * The established connection, or null if none
 	 */
-	@Getter(value = AccessLevel.PROTECTED)
 	private Connection connection;
 
+	/**
+	 * The connection pool when connected without HikariCP, or null if not pooling
+	 */
+	private volatile ConnectionPool pool;
+
+	/**
+	 * Held while reconnecting a closed pool so that only one thread reconnects
+	 */
+	private final Object reconnectLock = new Object();
+
+	/**
+	 * Settings for the built-in connection pool, change them before calling connect()
+	 */
+	@Getter(value = AccessLevel.PROTECTED)
+	private final ConnectionPool.Settings poolSettings = new ConnectionPool.Settings();
+
+	/**
+	 * Prepared statements of the single connection when not pooling
+	 */
+	private StatementCache statementCache;
+
+	/**
+	 * Generated insert SQL by table and columns
+	 */
+	private final Map<String, String> insertSqlCache = new ConcurrentHashMap<>();
+
+	/**
+	 * How many rows to send to the database at once in batch updates
+	 */
+	@Getter(value = AccessLevel.PROTECTED)
+	@Setter(value = AccessLevel.PROTECTED)
+	private int batchSize = 1_000;
+
+	/**
+	 * Settings for the executor running async methods, change them before the first async call
+	 */
+	@Getter(value = AccessLevel.PROTECTED)
+	private final DatabaseExecutor.Settings asyncSettings = new DatabaseExecutor.Settings();
+
+	/**
+	 * The executor running async methods, created on first use
+	 */
+	private DatabaseExecutor asyncExecutor;
+
+	/**
+	 * Set when close() starts so that the executor is not created again until the next connect()
+	 */
+	private boolean closing = false;
+
 	/**
 	 * Map of variables you can use with the {} syntax in SQL
 	 */
@@ -181,6 +264,10 @@ public class SimpleDatabase {
 		try {
 			this.connecting = true;
 
+			synchronized (this) {
+				this.closing = false;
+			}
+
 			if (url.startsWith("jdbc:sqlite")) {
 
 				if (!ReflectionUtil.isClassAvailable("org.sqlite.JDBC"))
@@ -283,7 +370,16 @@ public class SimpleDatabase {
 					}
 				}
 
-				this.connection = user != null && password != null ? DriverManager.getConnection(url, user, password) : DriverManager.getConnection(url);
+				if (this.pool != null) {
+					this.pool.close();
+
+					this.pool = null;
+				}
+
+				if (connectUsingPool)
+					this.pool = new ConnectionPool(url, user, password, this.poolSettings);
+				else
+					this.connection = user != null && password != null ? DriverManager.getConnection(url, user, password) : DriverManager.getConnection(url);
 			}
 
 			this.lastCredentials = new LastCredentials(url, user, password, table);
@@ -329,6 +425,13 @@ public class SimpleDatabase {
 	protected void onConnected() {
 	}
 
+	/**
+	 * Called automatically when {@link #close()} is called, before queued async work
+	 * is finished and the connection is closed
+	 */
+	protected void onClose() {
+	}
+
 	// --------------------------------------------------------------------
 	// Disconnecting
 	// --------------------------------------------------------------------
@@ -352,10 +455,29 @@ public class SimpleDatabase {
 	 * Attempts to close the connection, if not null
 	 */
 	public final void close() {
+		synchronized (this) {
+			this.closing = true;
+		}
+
+		this.onClose();
+
+		// Let queued async work finish while the connection is still open
+		final DatabaseExecutor executor;
+
+		synchronized (this) {
+			executor = this.asyncExecutor;
+		}
+
+		if (executor != null)
+			executor.shutdown();
+
 		try {
 			if (this.connection != null)
 				this.connection.close();
 
+			if (this.pool != null)
+				this.pool.close();
+
 			if (this.hikariDataSource != null)
 				ReflectionUtil.invoke("close", this.hikariDataSource);
 
@@ -374,7 +496,7 @@ public class SimpleDatabase {
 	 * @param creator
 	 */
 	protected final void createTable(final TableCreator creator) {
-		synchronized (this.connection) {
+		this.withLock(() -> {
 			String columns = "";
 
 			for (final TableRow column : creator.getColumns()) {
@@ -425,7 +547,9 @@ public class SimpleDatabase {
 				else
 					throw t;
 			}
-		}
+
+			return null;
+		});
 	}
 
 	/**
@@ -455,13 +579,20 @@ public class SimpleDatabase {
 	 * @param columnsAndValues
 	 */
 	protected final void insert(final String table, @NonNull final SerializedMap columnsAndValues) {
-		synchronized (this.connection) {
-			final String columns = Common.join(columnsAndValues.keySet());
-			final String values = Common.join(columnsAndValues.values(), ", ", value -> value == null || value.equals("NULL") ? "NULL" : (value instanceof Number ? String.valueOf(value) : "'" + value + "'"));
-			final String duplicateUpdate = Common.join(columnsAndValues.entrySet(), ", ", entry -> entry.getKey() + "=VALUES(" + entry.getKey() + ")");
+		this.withLock(() -> {
+			final List<String> columns = new ArrayList<>(columnsAndValues.keySet());
+			final Object[] values = new Object[columns.size()];
 
-			this.update("INSERT INTO " + this.replaceVariables(table) + " (" + columns + ") VALUES (" + values + ")" + (this.isSQLite ? "" : " ON DUPLICATE KEY UPDATE " + duplicateUpdate + ";"));
-		}
+			for (int i = 0; i < values.length; i++) {
+				final Object value = columnsAndValues.asMap().get(columns.get(i));
+
+				values[i] = value == null || value.equals("NULL") ? null : value instanceof Number ? value : value.toString();
+			}
+
+			this.update(this.getInsertSql(this.replaceVariables(table), columns), values);
+
+			return null;
+		});
 	}
 
 	/**
@@ -480,35 +611,65 @@ public class SimpleDatabase {
 	 * @param maps
 	 */
 	protected final void insertBatch(final String table, @NonNull final List<SerializedMap> maps) {
-		synchronized (this.connection) {
-			final List<String> sqls = new ArrayList<>();
+		this.withLock(() -> {
+
+			// Rows with the same columns share one statement
+			final Map<String, List<Object[]>> rowsBySql = new LinkedHashMap<>();
 
 			for (final SerializedMap map : maps)
 				try {
-					final String columns = Common.join(map.keySet());
-					final String values = Common.join(map.values(), ", ", this::parseValue);
-					final String duplicateUpdate = Common.join(map.entrySet(), ", ", entry -> entry.getKey() + "=VALUES(" + entry.getKey() + ")");
+					final List<String> columns = new ArrayList<>(map.keySet());
+					final Object[] values = new Object[columns.size()];
 
-					final String sql = "INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ")" + (this.isSQLite ? "" : " ON DUPLICATE KEY UPDATE " + duplicateUpdate + ";");
+					for (int i = 0; i < values.length; i++)
+						values[i] = this.parseValue(map.asMap().get(columns.get(i)));
+
+					final String sql = this.getInsertSql(table, columns);
 					Debugger.debug("mysql", "Inserting batch SQL: " + sql);
 
-					sqls.add(sql);
+					rowsBySql.computeIfAbsent(sql, key -> new ArrayList<>()).add(values);
 
 				} catch (final Throwable t) {
 					Common.error(t, "Error inserting batch map: " + map);
 				}
 
-			this.batchUpdate(sqls);
-		}
+			for (final Map.Entry<String, List<Object[]>> entry : rowsBySql.entrySet())
+				this.batchUpdate(entry.getKey(), entry.getValue());
+
+			return null;
+		});
 	}
 
 	/*
-	 * A helper method to insert compatible value to db
+	 * A helper method to insert compatible value to db, null for NULL
 	 */
 	private final String parseValue(final Object value) {
 		final Object serialized = SerializeUtil.serialize(this.getTableMode(), value);
 
-		return value == null || value.equals("NULL") ? "NULL" : "'" + serialized.toString() + "'";
+		return value == null || value.equals("NULL") ? null : serialized.toString();
+	}
+
+	/*
+	 * Return the parameterized insert (or upsert on MySQL) SQL for the given table and columns,
+	 * generated once per column set
+	 */
+	private String getInsertSql(final String table, final List<String> columns) {
+		final String key = table + '\0' + String.join(",", columns);
+		String sql = this.insertSqlCache.get(key);
+
+		if (sql == null) {
+			final String placeholders = Common.join(columns, ", ", column -> "?");
+			final String duplicateUpdate = Common.join(columns, ", ", column -> column + "=VALUES(" + column + ")");
+
+			sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" + placeholders + ")" + (this.isSQLite ? "" : " ON DUPLICATE KEY UPDATE " + duplicateUpdate);
+
+			if (this.insertSqlCache.size() >= INSERT_SQL_CACHE_SIZE)
+				this.insertSqlCache.clear();
+
+			this.insertSqlCache.put(key, sql);
+		}
+
+		return sql;
 	}
 
 	/**
@@ -518,27 +679,59 @@ public class SimpleDatabase {
 	 *
 	 * @param sql
 	 */
-	protected final void update(String sql) {
+	protected final void update(final String sql) {
 		if (!this.connecting)
 			Valid.checkAsync("Updating database must be done async! Call: " + sql);
 
-		synchronized (this.connection) {
-			this.checkEstablished();
+		this.checkEstablished();
 
-			if (!this.isConnected())
-				this.connectUsingLastCredentials();
+		final String replacedSql = this.replaceVariables(sql);
+		Valid.checkBoolean(!replacedSql.contains("{table}"), "Table not set! Either use connect() method that specifies it or call addVariable(table, 'yourtablename') in your constructor!");
 
-			sql = this.replaceVariables(sql);
-			Valid.checkBoolean(!sql.contains("{table}"), "Table not set! Either use connect() method that specifies it or call addVariable(table, 'yourtablename') in your constructor!");
+		Debugger.debug("mysql", "Updating database with: " + replacedSql);
 
-			Debugger.debug("mysql", "Updating database with: " + sql);
+		try {
+			this.withConnection(connection -> {
+				try (Statement statement = connection.createStatement()) {
+					return statement.executeUpdate(replacedSql);
+				}
+			});
 
-			try (Statement statement = this.connection.createStatement()) {
-				statement.executeUpdate(sql);
+		} catch (final SQLException e) {
+			this.handleError(e, "Error on updating database with: " + replacedSql);
+		}
+	}
 
-			} catch (final SQLException e) {
-				this.handleError(e, "Error on updating database with: " + sql);
-			}
+	/**
+	 * Attempts to execute a new update query with the given values bound to its ? placeholders.
+	 * The statement is prepared once per connection and reused.
+	 * <p>
+	 * Make sure you called connect() first otherwise an error will be thrown
+	 *
+	 * @param sql
+	 * @param parameters
+	 */
+	protected final void update(final String sql, final Object... parameters) {
+		if (!this.connecting)
+			Valid.checkAsync("Updating database must be done async! Call: " + sql);
+
+		this.checkEstablished();
+
+		final String replacedSql = this.replaceVariables(sql);
+		Valid.checkBoolean(!replacedSql.contains("{table}"), "Table not set! Either use connect() method that specifies it or call addVariable(table, 'yourtablename') in your constructor!");
+
+		Debugger.debug("mysql", "Updating database with: " + replacedSql + " " + Common.join(parameters));
+
+		try {
+			this.withConnection(connection -> {
+				final PreparedStatement statement = this.prepareCached(connection, replacedSql);
+
+				bindParameters(statement, parameters);
+				return statement.executeUpdate();
+			});
+
+		} catch (final SQLException e) {
+			this.handleError(e, "Error on updating database with: " + replacedSql + " " + Common.join(parameters));
 		}
 	}
 
@@ -564,30 +757,18 @@ public class SimpleDatabase {
 	 * @param consumer
 	 */
 	protected final void select(final String table, @Nullable final String where, final ResultReader consumer) {
-		synchronized (this.connection) {
-			if (!this.isLoaded())
-				return;
-
-			final String tableName = this.replaceVariables(table);
-
-			try (ResultSet resultSet = this.query("SELECT * FROM " + table + (where == null ? "" : " WHERE " + where))) {
-				while (resultSet.next())
-					try {
-						consumer.accept(new SimpleResultSet(tableName, resultSet));
-
-					} catch (final InvalidRowException ex) {
-						// Pardoned
+		if (!this.isLoaded())
+			return;
 
-					} catch (final Throwable t) {
-						Common.log("Error reading a row from table " + tableName + " where " + (where == null ? "all" : where) + ", aborting...");
+		try {
+			this.queryRows("SELECT * FROM " + table + (where == null ? "" : " WHERE " + where), resultSet -> {
+				this.readRows(table, where, resultSet, consumer);
 
-						t.printStackTrace();
-						break;
-					}
+				return null;
+			});
 
-			} catch (final Throwable t) {
-				Common.error(t, "Error selecting rows from table " + table + " where " + (where == null ? "all" : where));
-			}
+		} catch (final Throwable t) {
+			Common.error(t, "Error selecting rows from table " + table + " where " + (where == null ? "all" : where));
 		}
 	}
 
@@ -607,31 +788,40 @@ public class SimpleDatabase {
 	 * @param consumer
 	 */
 	protected final void select(final String table, @Nullable final Map<String, Object> where, final ResultReader consumer) {
-		synchronized (this.connection) {
-			if (!this.isLoaded())
-				return;
+		if (!this.isLoaded())
+			return;
 
-			final String tableName = this.replaceVariables(table);
+		try {
+			this.queryRows("SELECT * FROM " + table + " " + buildWhere(where), resultSet -> {
+				this.readRows(table, where, resultSet, consumer);
 
-			try (ResultSet resultSet = this.query("SELECT * FROM " + table + " " + buildWhere(where))) {
-				while (resultSet.next())
-					try {
-						consumer.accept(new SimpleResultSet(tableName, resultSet));
+				return null;
+			});
 
-					} catch (final InvalidRowException ex) {
-						// Pardoned
+		} catch (final Throwable t) {
+			Common.error(t, "Error selecting rows from table " + table + " where " + (where == null ? "all" : where));
+		}
+	}
 
-					} catch (final Throwable t) {
-						Common.log("Error reading a row from table " + tableName + " where " + (where == null ? "all" : where) + ", aborting...");
+	/*
+	 * Pass each row to the consumer, skipping invalid rows and stopping at the first error
+	 */
+	private void readRows(final String table, @Nullable final Object where, final ResultSet resultSet, final ResultReader consumer) throws SQLException {
+		final String tableName = this.replaceVariables(table);
 
-						t.printStackTrace();
-						break;
-					}
+		while (resultSet.next())
+			try {
+				consumer.accept(new SimpleResultSet(tableName, resultSet));
+
+			} catch (final InvalidRowException ex) {
+				// Pardoned
 
 			} catch (final Throwable t) {
-				Common.error(t, "Error selecting rows from table " + table + " where " + (where == null ? "all" : where));
+				Common.log("Error reading a row from table " + tableName + " where " + (where == null ? "all" : where) + ", aborting...");
+
+				t.printStackTrace();
+				break;
 			}
-		}
 	}
 
 	private static String buildWhere(Map<String, Object> conditions) {
@@ -680,31 +870,23 @@ public class SimpleDatabase {
 	 * @return
 	 */
 	protected final int count(final String table, final SerializedMap conditions) {
-		synchronized (this.connection) {
-			// Convert conditions into SQL syntax
-			final Set<String> conditionsList = Common.convertSet(conditions.entrySet(), entry -> entry.getKey() + " = '" + SerializeUtil.serialize(this.getTableMode(), entry.getValue()) + "'");
 
-			// Run the query
-			final String sql = "SELECT * FROM " + table + (conditionsList.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditionsList)) + ";";
+		// Convert conditions into SQL syntax
+		final Set<String> conditionsList = Common.convertSet(conditions.entrySet(), entry -> entry.getKey() + " = '" + SerializeUtil.serialize(this.getTableMode(), entry.getValue()) + "'");
 
-			try (ResultSet resultSet = this.query(sql)) {
-				int count = 0;
+		// Run the query
+		final String sql = "SELECT * FROM " + table + (conditionsList.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditionsList)) + ";";
 
-				while (resultSet.next())
-					count++;
+		final Integer count = this.queryRows(sql, resultSet -> {
+			int rows = 0;
 
-				return count;
+			while (resultSet.next())
+				rows++;
 
-			} catch (final SQLException ex) {
-				Common.throwError(ex,
-						"Unable to count rows!",
-						"Table: " + this.replaceVariables(table),
-						"Conditions: " + conditions,
-						"Query: " + sql);
-			}
+			return rows;
+		});
 
-			return 0;
-		}
+		return count == null ? 0 : count;
 	}
 
 	/**
@@ -715,32 +897,72 @@ public class SimpleDatabase {
 	 * @param sql
 	 * @return
 	 */
-	protected final ResultSet query(String sql) {
+	protected final ResultSet query(final String sql) {
 		Valid.checkAsync("Sending database query must be called async, command: " + sql);
 
-		synchronized (this.connection) {
-			this.checkEstablished();
+		this.checkEstablished();
 
-			if (!this.isConnected())
-				this.connectUsingLastCredentials();
+		final String replacedSql = this.replaceVariables(sql);
 
-			sql = this.replaceVariables(sql);
+		Debugger.debug("mysql", "Querying database with: " + replacedSql);
 
-			Debugger.debug("mysql", "Querying database with: " + sql);
+		try {
+			return this.withConnection(connection -> {
+				if (this.pool == null)
+					return connection.createStatement().executeQuery(replacedSql);
 
-			try {
-				final Statement statement = this.connection.createStatement();
-				final ResultSet resultSet = statement.executeQuery(sql);
+				// Copy the rows so that the connection can go back to the pool right away
+				try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(replacedSql)) {
+					final CachedRowSet rows = getRowSetFactory().createCachedRowSet();
+					rows.populate(resultSet);
+
+					return rows;
+				}
+			});
+
+		} catch (final SQLException ex) {
+			if (ex instanceof SQLSyntaxErrorException && ex.getMessage().startsWith("Table") && ex.getMessage().endsWith("doesn't exist"))
+				return new DummyResultSet();
 
-				return resultSet;
+			this.handleError(ex, "Error on querying database with: " + replacedSql);
+		}
+
+		return null;
+	}
+
+	/*
+	 * Run the query and pass its result set to the reader while the connection is held,
+	 * unlike query() which copies the rows when pooling. Returns null if the query failed.
+	 */
+	private <T> T queryRows(final String sql, final ResultSetCallback<T> reader) {
+		Valid.checkAsync("Sending database query must be called async, command: " + sql);
+
+		this.checkEstablished();
+
+		final String replacedSql = this.replaceVariables(sql);
+
+		Debugger.debug("mysql", "Querying database with: " + replacedSql);
+
+		try {
+			return this.withConnection(connection -> {
+				try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(replacedSql)) {
+					return reader.apply(resultSet);
+				}
+			});
 
-			} catch (final SQLException ex) {
-				if (ex instanceof SQLSyntaxErrorException && ex.getMessage().startsWith("Table") && ex.getMessage().endsWith("doesn't exist"))
-					return new DummyResultSet();
+		} catch (final SQLException ex) {
+			if (!(ex instanceof SQLSyntaxErrorException && ex.getMessage().startsWith("Table") && ex.getMessage().endsWith("doesn't exist"))) {
+				this.handleError(ex, "Error on querying database with: " + replacedSql);
 
-				this.handleError(ex, "Error on querying database with: " + sql);
+				return null;
 			}
+		}
+
+		// The table does not exist yet, read no rows
+		try {
+			return reader.apply(new DummyResultSet());
 
+		} catch (final SQLException ex) {
 			return null;
 		}
 	}
@@ -754,57 +976,179 @@ public class SimpleDatabase {
 		if (sqls.isEmpty())
 			return;
 
-		synchronized (this.connection) {
-			this.checkEstablished();
+		this.checkEstablished();
 
-			if (!this.isConnected())
-				this.connectUsingLastCredentials();
+		try {
+			this.withConnection(connection -> {
+				try (Statement batchStatement = connection.createStatement(this.isSQLite ? ResultSet.TYPE_FORWARD_ONLY : ResultSet.TYPE_SCROLL_SENSITIVE, this.isSQLite ? ResultSet.CONCUR_READ_ONLY : ResultSet.CONCUR_UPDATABLE)) {
+					final int processedCount = sqls.size();
+
+					for (final String sql : sqls)
+						batchStatement.addBatch(this.replaceVariables(sql));
+
+					if (processedCount > 10_000)
+						Common.log("Updating your database (" + processedCount + " entries)... PLEASE BE PATIENT THIS WILL TAKE "
+								+ (processedCount > 50_000 ? "10-20 MINUTES" : "5-10 MINUTES") + " - If server will print a crash report, ignore it, update will proceed.");
+
+					// Prevent automatically sending db instructions
+					connection.setAutoCommit(false);
+
+					try {
+						// Execute
+						batchStatement.executeBatch();
+
+						// This will block the thread
+						connection.commit();
 
-			try (Statement batchStatement = this.getConnection().createStatement(this.isSQLite ? ResultSet.TYPE_FORWARD_ONLY : ResultSet.TYPE_SCROLL_SENSITIVE, this.isSQLite ? ResultSet.CONCUR_READ_ONLY : ResultSet.CONCUR_UPDATABLE)) {
-				final int processedCount = sqls.size();
+					} catch (final Throwable t) {
+						final List<String> errorMessage = new ArrayList<>();
+
+						errorMessage.add("Error executing a batch update with " + sqls.size() + " SQLs:");
+
+						for (final String sql : sqls)
+							errorMessage.add(sql);
+
+						Common.error(t, Common.toArray(errorMessage));
+
+						// Cancel the task but handle the error upstream
+						throw t;
+					}
+
+				} finally {
+					try {
+						connection.setAutoCommit(true);
 
-				for (final String sql : sqls)
-					batchStatement.addBatch(this.replaceVariables(sql));
+					} catch (final SQLException ex) {
+						ex.printStackTrace();
+					}
+				}
+
+				return null;
+			});
+
+		} catch (final Throwable t) {
+			t.printStackTrace();
+		}
+	}
 
+	/**
+	 * Executes a massive batch update binding each row of values to the ? placeholders
+	 * of the given SQL, sending them to the database in chunks of {@link #getBatchSize()}
+	 * within a single transaction
+	 *
+	 * @param sql
+	 * @param rows
+	 * @return true if all rows were committed, false if the batch failed and was rolled back
+	 */
+	protected final boolean batchUpdate(final String sql, @NonNull final List<Object[]> rows) {
+		return this.batchUpdate(Collections.singletonMap(sql, rows));
+	}
+
+	/**
+	 * Executes massive batch updates for each SQL in the map's order binding its rows of values
+	 * to the ? placeholders, sending them to the database in chunks of {@link #getBatchSize()}
+	 * within a single transaction so that either all or none of them are committed
+	 *
+	 * @param rowsBySql
+	 * @return true if all rows were committed, false if the batch failed and was rolled back
+	 */
+	protected final boolean batchUpdate(@NonNull final Map<String, List<Object[]>> rowsBySql) {
+		return this.batchUpdate(rowsBySql, 0);
+	}
+
+	/**
+	 * Executes massive batch updates, see {@link #batchUpdate(Map)}, giving up once the deadline passed.
+	 * Waiting for a pooled connection and each statement are limited to the time left.
+	 *
+	 * @param rowsBySql
+	 * @param deadline the time in milliseconds to give up at, 0 to wait as long as it takes
+	 * @return true if all rows were committed, false if the batch failed and was rolled back
+	 */
+	protected final boolean batchUpdate(@NonNull final Map<String, List<Object[]>> rowsBySql, final long deadline) {
+		int rowCount = 0;
+
+		for (final List<Object[]> rows : rowsBySql.values())
+			rowCount += rows.size();
+
+		if (rowCount == 0)
+			return true;
+
+		this.checkEstablished();
+
+		final int processedCount = rowCount;
+
+		try {
+			return this.withConnection(deadline, connection -> {
 				if (processedCount > 10_000)
 					Common.log("Updating your database (" + processedCount + " entries)... PLEASE BE PATIENT THIS WILL TAKE "
 							+ (processedCount > 50_000 ? "10-20 MINUTES" : "5-10 MINUTES") + " - If server will print a crash report, ignore it, update will proceed.");
 
 				// Prevent automatically sending db instructions
-				this.getConnection().setAutoCommit(false);
+				connection.setAutoCommit(false);
+
+				PreparedStatement statement = null;
+				String replacedSql = null;
 
 				try {
-					// Execute
-					batchStatement.executeBatch();
+					for (final Map.Entry<String, List<Object[]>> entry : rowsBySql.entrySet()) {
+						if (entry.getValue().isEmpty())
+							continue;
+
+						replacedSql = this.replaceVariables(entry.getKey());
+						statement = this.prepareCached(connection, replacedSql);
+
+						int pending = 0;
+
+						for (final Object[] row : entry.getValue()) {
+							bindParameters(statement, row);
+							statement.addBatch();
+
+							if (++pending >= this.batchSize) {
+								executeBatch(statement, deadline);
+
+								pending = 0;
+							}
+						}
+
+						if (pending > 0)
+							executeBatch(statement, deadline);
+					}
 
 					// This will block the thread
-					this.getConnection().commit();
+					connection.commit();
 
 				} catch (final Throwable t) {
-					final List<String> errorMessage = new ArrayList<>();
+					try {
+						if (statement != null)
+							statement.clearBatch();
 
-					errorMessage.add("Error executing a batch update with " + sqls.size() + " SQLs:");
+						connection.rollback();
 
-					for (final String sql : sqls)
-						errorMessage.add(sql);
+					} catch (final SQLException ex) {
+						// Reported below
+					}
 
-					Common.error(t, Common.toArray(errorMessage));
+					Common.error(t, "Error executing a batch update with " + processedCount + " rows:", replacedSql);
 
 					// Cancel the task but handle the error upstream
 					throw t;
+
+				} finally {
+					try {
+						connection.setAutoCommit(true);
+
+					} catch (final SQLException ex) {
+						ex.printStackTrace();
+					}
 				}
 
-			} catch (final Throwable t) {
-				t.printStackTrace();
+				return true;
+			});
 
-			} finally {
-				try {
-					this.getConnection().setAutoCommit(true);
+		} catch (final Throwable t) {
+			t.printStackTrace();
 
-				} catch (final SQLException ex) {
-					ex.printStackTrace();
-				}
-			}
+			return false;
 		}
 	}
 
@@ -817,18 +1161,8 @@ public class SimpleDatabase {
 	 * @return
 	 * @throws SQLException
 	 */
-	protected final java.sql.PreparedStatement prepareStatement(String sql) throws SQLException {
-		synchronized (this.connection) {
-			this.checkEstablished();
-
-			if (!this.isConnected())
-				this.connectUsingLastCredentials();
-
-			sql = this.replaceVariables(sql);
-
-			Debugger.debug("mysql", "Preparing statement: " + sql);
-			return this.connection.prepareStatement(sql);
-		}
+	protected final java.sql.PreparedStatement prepareStatement(final String sql) throws SQLException {
+		return this.prepareStatement(sql, connection -> connection.prepareStatement(this.replaceVariables(sql)));
 	}
 
 	/**
@@ -843,20 +1177,207 @@ public class SimpleDatabase {
 	 * @return
 	 * @throws SQLException
 	 */
-	protected final java.sql.PreparedStatement prepareStatement(String sql, final int type, final int concurrency) throws SQLException {
-		synchronized (this.connection) {
-			this.checkEstablished();
+	protected final java.sql.PreparedStatement prepareStatement(final String sql, final int type, final int concurrency) throws SQLException {
+		return this.prepareStatement(sql, connection -> connection.prepareStatement(this.replaceVariables(sql), type, concurrency));
+	}
+
+	/*
+	 * Prepare a statement, when pooling it is prepared on the separate connection from getConnection()
+	 * so that statements the caller never closes do not keep pooled connections borrowed
+	 */
+	private java.sql.PreparedStatement prepareStatement(final String sql, final ConnectionCallback<java.sql.PreparedStatement> factory) throws SQLException {
+		this.checkEstablished();
+
+		Debugger.debug("mysql", "Preparing statement: " + this.replaceVariables(sql));
+
+		if (this.pool == null)
+			return this.withConnection(factory);
+
+		final Connection connection = this.getConnection();
+
+		if (connection == null)
+			throw new SQLException("Could not open a database connection to prepare: " + sql);
+
+		synchronized (connection) {
+			return factory.apply(connection);
+		}
+	}
+
+	/*
+	 * Return a cached prepared statement of the given connection, it must not be closed
+	 */
+	private PreparedStatement prepareCached(final Connection connection, final String sql) throws SQLException {
+		if (this.pool != null)
+			return this.pool.getStatementCache(connection).prepare(sql);
+
+		// Only used while holding the single connection's lock
+		if (this.statementCache == null || this.statementCache.getConnection() != connection) {
+			if (this.statementCache != null)
+				this.statementCache.close();
+
+			this.statementCache = new StatementCache(connection);
+		}
+
+		return this.statementCache.prepare(sql);
+	}
+
+	/*
+	 * Bind the values to the statement's placeholders, null and "NULL" are bound as SQL NULL
+	 */
+	private static void bindParameters(final PreparedStatement statement, final Object[] parameters) throws SQLException {
+		for (int i = 0; i < parameters.length; i++) {
+			final Object parameter = parameters[i];
+
+			if (parameter == null || parameter.equals("NULL"))
+				statement.setNull(i + 1, Types.NULL);
+			else
+				statement.setObject(i + 1, parameter);
+		}
+	}
+
+	/*
+	 * Return the pool, reconnecting first after close() same as with a single connection,
+	 * or null if not pooling
+	 */
+	private ConnectionPool getOpenPool() {
+		ConnectionPool pool = this.pool;
+
+		if (pool != null && pool.isClosed())
+			synchronized (this.reconnectLock) {
+
+				// Another thread may have reconnected while we waited
+				if (this.pool == pool)
+					this.connectUsingLastCredentials();
+
+				pool = this.pool;
+			}
+
+		return pool;
+	}
+
+	/*
+	 * Execute the batch, limited to the time left until the deadline in milliseconds unless it is 0
+	 */
+	private static void executeBatch(final PreparedStatement statement, final long deadline) throws SQLException {
+		if (deadline == 0) {
+			statement.executeBatch();
+
+			return;
+		}
 
+		final long remaining = deadline - System.currentTimeMillis();
+
+		if (remaining <= 0)
+			throw new SQLTimeoutException("Gave up on the batch update, its deadline passed");
+
+		statement.setQueryTimeout((int) Math.max(1, (remaining + 999) / 1000));
+
+		try {
+			statement.executeBatch();
+
+		} finally {
+
+			// Statements are cached and reused by other updates
+			statement.setQueryTimeout(0);
+		}
+	}
+
+	/*
+	 * Run the callback with a connection borrowed from the pool, or with the single
+	 * connection locked when not pooling, reconnecting first if it was lost
+	 */
+	private <T> T withConnection(final ConnectionCallback<T> callback) throws SQLException {
+		return this.withConnection(0, callback);
+	}
+
+	/*
+	 * Run the callback with a connection, see above, waiting for a pooled one
+	 * only until the deadline in milliseconds unless it is 0
+	 */
+	private <T> T withConnection(final long deadline, final ConnectionCallback<T> callback) throws SQLException {
+		final ConnectionPool pool = this.getOpenPool();
+
+		if (pool != null) {
+			final Connection connection = deadline == 0 ? pool.borrow() : pool.borrow(Math.max(0, deadline - System.currentTimeMillis()));
+
+			try {
+				return callback.apply(connection);
+
+			} finally {
+				pool.release(connection);
+			}
+		}
+
+		synchronized (this.connection) {
 			if (!this.isConnected())
 				this.connectUsingLastCredentials();
 
-			sql = this.replaceVariables(sql);
+			return callback.apply(this.connection);
+		}
+	}
+
+	/*
+	 * Run the task holding the single connection's lock so that other threads cannot use the
+	 * connection in between its statements. When pooling the task runs without locking since
+	 * each statement borrows its own connection and query results are copied off it.
+	 */
+	private <T, E extends Throwable> T withLock(final LockedTask<T, E> task) throws E {
+		if (this.pool != null || this.connection == null)
+			return task.run();
 
-			Debugger.debug("mysql", "Preparing statement: " + sql);
-			return this.connection.prepareStatement(sql, type, concurrency);
+		synchronized (this.connection) {
+			return task.run();
 		}
 	}
 
+	/*
+	 * Return the factory for copying pooled query results
+	 */
+	private static synchronized RowSetFactory getRowSetFactory() throws SQLException {
+		if (rowSetFactory == null)
+			rowSetFactory = RowSetProvider.newFactory();
+
+		return rowSetFactory;
+	}
+
+	/**
+	 * Return the established connection, or null if none.
+	 * <p>
+	 * When using the built-in {@link ConnectionPool} this is a separate connection opened
+	 * on first call for code that manages its own statements, prefer the query methods
+	 * in this class which use the pool.
+	 *
+	 * @return
+	 */
+	protected Connection getConnection() {
+		final ConnectionPool pool = this.getOpenPool();
+
+		synchronized (this) {
+
+			// Reopen after close() or when the connection was lost
+			if (pool != null)
+				try {
+					if (this.connection == null || this.connection.isClosed())
+						this.connection = pool.openConnection();
+
+				} catch (final SQLException ex) {
+					this.handleError(ex, "Error opening a database connection");
+				}
+
+			return this.connection;
+		}
+	}
+
+	/**
+	 * Return the built-in connection pool, or null if connected using HikariCP, SQLite
+	 * or with {@link #setConnectUsingPool(boolean)} disabled
+	 *
+	 * @return
+	 */
+	protected final ConnectionPool getPool() {
+		return this.pool;
+	}
+
 	/**
 	 * Is the connection established, open and valid?
 	 * Performs a blocking ping request to the database
@@ -867,6 +1388,10 @@ public class SimpleDatabase {
 		if (!this.isLoaded())
 			return false;
 
+		// Pooled connections are validated when borrowed
+		if (this.pool != null)
+			return !this.pool.isClosed();
+
 		try {
 			if (!this.connection.isValid(0))
 				return false;
@@ -901,6 +1426,170 @@ public class SimpleDatabase {
 			Common.throwError(t, fallbackMessage);
 	}
 
+	// --------------------------------------------------------------------
+	// Async querying
+	// --------------------------------------------------------------------
+
+	/**
+	 * Lists all rows in the given table on a database thread, converting each using the mapper.
+	 * Rows the mapper fails to read because of invalid values are skipped.
+	 *
+	 * @param <T>
+	 * @param table
+	 * @param mapper
+	 * @return
+	 */
+	protected final <T> CompletableFuture<List<T>> selectAllAsync(final String table, final ResultMapper<T> mapper) {
+		return this.selectAsync(table, (String) null, mapper);
+	}
+
+	/**
+	 * Lists all rows in the given table matching the given where clause on a database thread,
+	 * see {@link #selectAllAsync(String, ResultMapper)}
+	 *
+	 * @param <T>
+	 * @param table
+	 * @param where
+	 * @param mapper
+	 * @return
+	 */
+	protected final <T> CompletableFuture<List<T>> selectAsync(final String table, @Nullable final String where, final ResultMapper<T> mapper) {
+		return this.selectRowsAsync(table, where == null ? "" : " WHERE " + where, mapper);
+	}
+
+	/**
+	 * Lists all rows in the given table matching the given column-value conditions on a database thread,
+	 * see {@link #selectAllAsync(String, ResultMapper)}
+	 *
+	 * @param <T>
+	 * @param table
+	 * @param where
+	 * @param mapper
+	 * @return
+	 */
+	protected final <T> CompletableFuture<List<T>> selectAsync(final String table, @Nullable final Map<String, Object> where, final ResultMapper<T> mapper) {
+		return this.selectRowsAsync(table, " " + buildWhere(where), mapper);
+	}
+
+	/*
+	 * Read all rows matching the where clause on a database thread
+	 */
+	private <T> CompletableFuture<List<T>> selectRowsAsync(final String table, final String whereClause, final ResultMapper<T> mapper) {
+		return this.getAsyncExecutor().submit(() -> {
+			final String tableName = this.replaceVariables(table);
+			final List<T> rows = new ArrayList<>();
+
+			this.queryRows("SELECT * FROM " + table + whereClause, resultSet -> {
+				while (resultSet.next())
+					try {
+						rows.add(mapper.map(new SimpleResultSet(tableName, resultSet)));
+
+					} catch (final InvalidRowException ex) {
+						// Pardoned
+					}
+
+				return null;
+			});
+
+			return rows;
+		});
+	}
+
+	/**
+	 * Returns the amount of rows from the given table per the key-value conditions on a database thread,
+	 * see {@link #count(String, Object...)}
+	 *
+	 * @param table
+	 * @param array
+	 * @return
+	 */
+	protected final CompletableFuture<Integer> countAsync(final String table, final Object... array) {
+		return this.countAsync(table, SerializedMap.ofArray(array));
+	}
+
+	/**
+	 * Returns the amount of rows from the given table per the conditions on a database thread,
+	 * see {@link #count(String, SerializedMap)}
+	 *
+	 * @param table
+	 * @param conditions
+	 * @return
+	 */
+	protected final CompletableFuture<Integer> countAsync(final String table, final SerializedMap conditions) {
+		return this.getAsyncExecutor().submit(() -> this.count(table, conditions));
+	}
+
+	/**
+	 * Executes the update query on a database thread
+	 *
+	 * @param sql
+	 * @return
+	 */
+	protected final CompletableFuture<Void> updateAsync(final String sql) {
+		return this.getAsyncExecutor().submit(() -> {
+			this.update(sql);
+
+			return null;
+		});
+	}
+
+	/**
+	 * Executes the update query with the given values bound to its ? placeholders on a database thread,
+	 * see {@link #update(String, Object...)}
+	 *
+	 * @param sql
+	 * @param parameters
+	 * @return
+	 */
+	protected final CompletableFuture<Void> updateAsync(final String sql, final Object... parameters) {
+		return this.getAsyncExecutor().submit(() -> {
+			this.update(sql, parameters);
+
+			return null;
+		});
+	}
+
+	/**
+	 * Insert the batch map into {@link #getTable()} on a database thread
+	 *
+	 * @param maps
+	 * @return
+	 */
+	protected final CompletableFuture<Void> insertBatchAsync(@NonNull final List<SerializedMap> maps) {
+		return this.insertBatchAsync("{table}", maps);
+	}
+
+	/**
+	 * Insert the batch map into the given table on a database thread
+	 *
+	 * @param table
+	 * @param maps
+	 * @return
+	 */
+	protected final CompletableFuture<Void> insertBatchAsync(final String table, @NonNull final List<SerializedMap> maps) {
+		return this.getAsyncExecutor().submit(() -> {
+			this.insertBatch(table, maps);
+
+			return null;
+		});
+	}
+
+	/**
+	 * Return the executor running async methods, see {@link DatabaseExecutor#getStatistics()}
+	 * for its queue depth and latency.
+	 * <p>
+	 * Once {@link #close()} was called, the executor is not created again until the next connect,
+	 * tasks submitted in the meantime fail with a {@link java.util.concurrent.RejectedExecutionException}.
+	 *
+	 * @return
+	 */
+	protected final synchronized DatabaseExecutor getAsyncExecutor() {
+		if (this.asyncExecutor == null || this.asyncExecutor.isShutdown() && !this.closing)
+			this.asyncExecutor = new DatabaseExecutor(SimplePlugin.getNamed(), this.asyncSettings);
+
+		return this.asyncExecutor;
+	}
+
 	// --------------------------------------------------------------------
 	// Non-blocking checking
 	// --------------------------------------------------------------------
@@ -924,7 +1613,7 @@ public class SimpleDatabase {
 	protected final String getTable() {
 		this.checkEstablished();
 
-		return Common.getOrEmpty(this.lastCredentials.table);
+		return this.lastCredentials.table == null ? "" : this.lastCredentials.table;
 	}
 
 	/**
@@ -940,7 +1629,7 @@ public class SimpleDatabase {
 	 * @return
 	 */
 	public final boolean isLoaded() {
-		return this.connection != null;
+		return this.connection != null || this.pool != null;
 	}
 
 	// --------------------------------------------------------------------
@@ -994,6 +1683,30 @@ public class SimpleDatabase {
 	// Classes
 	// --------------------------------------------------------------------
 
+	/*
+	 * Work done with a database connection
+	 */
+	@FunctionalInterface
+	private interface ConnectionCallback<T> {
+		T apply(Connection connection) throws SQLException;
+	}
+
+	/*
+	 * Work done with the rows of a query
+	 */
+	@FunctionalInterface
+	private interface ResultSetCallback<T> {
+		T apply(ResultSet resultSet) throws SQLException;
+	}
+
+	/*
+	 * Work done while holding the single connection's lock
+	 */
+	@FunctionalInterface
+	private interface LockedTask<T, E extends Throwable> {
+		T run() throws E;
+	}
+
 	/**
 	 * Helps to create new database tables preventing SQL syntax errors
 	 */
@@ -1140,6 +1853,23 @@ public class SimpleDatabase {
 		void accept(SimpleResultSet set) throws SQLException;
 	}
 
+	/**
+	 * Converts a row of a results set into an object, used by the async select methods
+	 *
+	 * @param <T>
+	 */
+	protected interface ResultMapper<T> {
+
+		/**
+		 * Reads the current row of the given results set, we skip rows with invalid values for you
+		 *
+		 * @param set
+		 * @return
+		 * @throws SQLException
+		 */
+		T map(SimpleResultSet set) throws SQLException;
+	}
+
 	private static class InvalidRowException extends RuntimeException {
 		private static final long serialVersionUID = 1L;
 	}
@@ -1,13 +1,29 @@
 package org.mineacademy.fo.database;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nullable;
 
-import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.mineacademy.fo.ChatUtil;
 import org.mineacademy.fo.Common;
@@ -15,7 +31,8 @@ import org.mineacademy.fo.MathUtil;
 import org.mineacademy.fo.Valid;
 import org.mineacademy.fo.collection.SerializedMap;
 import org.mineacademy.fo.debug.Debugger;
-import org.mineacademy.fo.debug.LagCatcher;
+import org.mineacademy.fo.model.SimpleTask;
+import org.mineacademy.fo.plugin.SimplePlugin;
 import org.mineacademy.fo.settings.SimpleSettings;
 
 import lombok.NonNull;
@@ -45,10 +62,36 @@ import lombok.NonNull;
 public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 
 	/**
-	 * An internal flag to prevent dead lock so that we do not call any
-	 * more queries within the {@link #load(UUID, Object)} or {@link #save(UUID, Object)} methods
+	 * Operations waiting for each player so that those for one player run in order
+	 * while different players are loaded and saved in parallel. When the database queue
+	 * is full they run on a Bukkit async thread instead of being rejected or blocking the server.
 	 */
-	private boolean isQuerying = false;
+	private final OperationQueues operations = new OperationQueues(runnable -> this.getAsyncExecutor().execute(runnable), Common::runAsync);
+
+	/**
+	 * How many content hashes of stored rows to remember before clearing them
+	 */
+	private static final int STORED_HASH_CACHE_SIZE = 10_000;
+
+	/**
+	 * Saved data not yet written to the database in write-behind mode
+	 */
+	private final Map<UUID, DirtyEntry> dirtyEntries = new ConcurrentHashMap<>();
+
+	/**
+	 * Content hashes of the data last written for each unique ID, to skip writing unchanged data
+	 */
+	private final Map<UUID, StoredHash> storedHashes = new ConcurrentHashMap<>();
+
+	/**
+	 * Only one flush may write at a time
+	 */
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	/**
+	 * The task writing dirty entries periodically in write-behind mode
+	 */
+	private SimpleTask flushTask;
 
 	/**
 	 * Creates the table if it does not exist
@@ -66,10 +109,55 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 		// Remove entries that have not been updated in the last X days
 		this.removeOldEntries();
 
+		// Write saved data in the background
+		if (this.isWriteBehind()) {
+			if (this.flushTask != null)
+				this.flushTask.cancel();
+
+			final int intervalTicks = Math.max(1, this.getFlushIntervalSeconds()) * 20;
+
+			this.flushTask = Common.runTimerAsync(intervalTicks, intervalTicks, this::flush);
+		}
+
 		// Call any hooks
 		this.onConnectFinish();
 	}
 
+	/**
+	 * Waits for queued loads and saves at most the shutdown timeout from {@link #getAsyncSettings()}
+	 * and writes data saved in write-behind mode on this thread, again for at most the shutdown timeout,
+	 * before the connection is closed. Data not written by then is reported as lost.
+	 * <p>
+	 * To override this override {@link #onCloseFinish()}
+	 */
+	@Override
+	protected final void onClose() {
+
+		// The executor is shut down right after this, operations queued for a player must be submitted before
+		this.awaitQueues(System.currentTimeMillis() + this.getAsyncSettings().getShutdownTimeout());
+
+		if (this.flushTask != null) {
+			this.flushTask.cancel();
+
+			this.flushTask = null;
+		}
+
+		// Write here instead of waiting for a future which may complete on the main thread we block
+		this.flushDirtyEntries(System.currentTimeMillis() + this.getAsyncSettings().getShutdownTimeout());
+
+		if (!this.dirtyEntries.isEmpty()) {
+			Common.warning("Could not write " + this.dirtyEntries.size() + " saved entries to the database within " + this.getAsyncSettings().getShutdownTimeout() + "ms on shutdown, their changes are lost: " + this.dirtyEntries.keySet());
+
+			for (final DirtyEntry entry : this.dirtyEntries.values())
+				entry.future.completeExceptionally(new SQLException("Saved data was lost on shutdown"));
+
+			this.dirtyEntries.clear();
+		}
+
+		// Call any hooks
+		this.onCloseFinish();
+	}
+
 	/**
 	 * You can override this to run code after the connection was made and
 	 * the table created as well as purged ({@link #removeOldEntries()})
@@ -77,6 +165,13 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 	protected void onConnectFinish() {
 	}
 
+	/**
+	 * You can override this to run code when {@link #close()} is called after
+	 * queued loads and saves finished and saved data was written, before the connection is closed
+	 */
+	protected void onCloseFinish() {
+	}
+
 	/*
 	 * Remove entries that have not been updated (called {@link #save(Identifiable)} method) for the
 	 * last given X amount of days
@@ -100,14 +195,43 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 		return 90;
 	}
 
+	/**
+	 * Return true to only remember the data in save methods and write it
+	 * to the database in batches every {@link #getFlushIntervalSeconds()} and on {@link #close()}.
+	 * <p>
+	 * Data that did not change since it was last written is skipped.
+	 * <p>
+	 * Your plugin must call {@link #close()} when it disables, otherwise data saved since
+	 * the last flush is lost. Saves made while the plugin is disabled are written right away.
+	 * <p>
+	 * Default: false, data is written on each save
+	 *
+	 * @return
+	 */
+	protected boolean isWriteBehind() {
+		return false;
+	}
+
+	/**
+	 * How often to write saved data in write-behind mode, see {@link #isWriteBehind()}
+	 * <p>
+	 * Default: 30 seconds
+	 *
+	 * @return
+	 */
+	protected int getFlushIntervalSeconds() {
+		return 30;
+	}
+
 	/**
 	 * Load the data for the given unique ID and his cache
 	 *
 	 * @param player
 	 * @param cache
+	 * @return
 	 */
-	public final void load(final Player player, final T cache) {
-		this.load(player.getUniqueId(), cache, null);
+	public final CompletableFuture<Void> load(final Player player, final T cache) {
+		return this.load(player.getUniqueId(), cache, null);
 	}
 
 	/**
@@ -116,9 +240,10 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 	 * @param player
 	 * @param cache
 	 * @param runAfterLoad callback synced on the main thread
+	 * @return
 	 */
-	public final void load(final Player player, final T cache, @Nullable Runnable runAfterLoad) {
-		this.load(player.getUniqueId(), cache, runAfterLoad);
+	public final CompletableFuture<Void> load(final Player player, final T cache, @Nullable Runnable runAfterLoad) {
+		return this.load(player.getUniqueId(), cache, runAfterLoad);
 	}
 
 	/**
@@ -126,56 +251,51 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 	 *
 	 * @param uuid
 	 * @param cache
+	 * @return
 	 */
-	public final void load(final UUID uuid, final T cache) {
-		this.load(uuid, cache, null);
+	public final CompletableFuture<Void> load(final UUID uuid, final T cache) {
+		return this.load(uuid, cache, null);
 	}
 
 	/**
 	 * Load the data for the given unique ID and his cache async.
+	 * <p>
+	 * Runs after operations already queued for this unique ID. The future completes
+	 * on the main thread after {@link #onLoad(SerializedMap, Object)} was called.
 	 *
 	 * @param uuid
 	 * @param cache
 	 * @param runAfterLoad callback synced on the main thread
+	 * @return
 	 */
-	public final void load(final UUID uuid, final T cache, @Nullable Runnable runAfterLoad) {
-		if (!this.isLoaded() || this.isQuerying)
-			return;
-
-		LagCatcher.start("mysql");
-		this.isQuerying = true;
+	public final CompletableFuture<Void> load(final UUID uuid, final T cache, @Nullable Runnable runAfterLoad) {
+		if (!this.isLoaded())
+			return CompletableFuture.completedFuture(null);
 
 		Debugger.debug("mysql", "---------------- MySQL - Loading data for " + uuid);
 
-		Common.runAsync(() -> {
+		final CompletableFuture<Void> loaded = new CompletableFuture<>();
 
-			try {
-				final ResultSet resultSet = this.query("SELECT * FROM {table} WHERE UUID='" + uuid + "'");
-				final String dataRaw = resultSet.next() ? resultSet.getString("Data") : "{}";
-				Debugger.debug("mysql", "JSON: " + dataRaw);
+		this.enqueue(uuid, false, () -> {
+			final long startNanos = System.nanoTime();
 
-				Common.runLater(() -> {
+			try {
+				final DirtyEntry dirty = this.dirtyEntries.get(uuid);
+				final String dataRaw;
 
-					try {
-						final SerializedMap data = SerializedMap.fromJson(dataRaw);
-						Debugger.debug("mysql", "Deserialized data: " + data);
+				// Saved data not written yet is newer than what the database has
+				if (dirty != null)
+					dataRaw = dirty.data == null || dirty.data.isEmpty() ? "{}" : dirty.data.toJson();
 
-						// Call the user specified load method
-						this.onLoad(data, cache);
+				else {
+					final ResultSet resultSet = this.query("SELECT * FROM {table} WHERE UUID='" + uuid + "'");
 
-						// Invoke sync callback when load finish
-						if (runAfterLoad != null)
-							runAfterLoad.run();
+					dataRaw = resultSet != null && resultSet.next() ? resultSet.getString("Data") : "{}";
+				}
 
-					} catch (final Throwable t) {
-						Common.error(t,
-								"Failed to parse loaded data from MySQL!",
-								"UUID: " + uuid,
-								"Raw data: " + dataRaw,
-								"Error: %error");
+				Debugger.debug("mysql", "JSON: " + dataRaw);
 
-					}
-				});
+				return dataRaw;
 
 			} catch (final Throwable t) {
 				Common.error(t,
@@ -183,12 +303,47 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 						"UUID: " + uuid,
 						"Error: %error");
 
+				throw t;
+
 			} finally {
-				this.isQuerying = false;
+				this.logPerformance("loading", startNanos);
+			}
 
-				this.logPerformance("loading");
+		}).whenComplete((dataRaw, error) -> {
+			if (error != null) {
+				loaded.completeExceptionally(error);
+
+				return;
 			}
+
+			Common.runLater(() -> {
+
+				try {
+					final SerializedMap data = SerializedMap.fromJson(dataRaw);
+					Debugger.debug("mysql", "Deserialized data: " + data);
+
+					// Call the user specified load method
+					this.onLoad(data, cache);
+
+					// Invoke sync callback when load finish
+					if (runAfterLoad != null)
+						runAfterLoad.run();
+
+					loaded.complete(null);
+
+				} catch (final Throwable t) {
+					Common.error(t,
+							"Failed to parse loaded data from MySQL!",
+							"UUID: " + uuid,
+							"Raw data: " + dataRaw,
+							"Error: %error");
+
+					loaded.completeExceptionally(t);
+				}
+			});
 		});
+
+		return loaded;
 	}
 
 	/**
@@ -207,9 +362,10 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 	 *
 	 * @param player
 	 * @param cache
+	 * @return
 	 */
-	public final void save(final Player player, final T cache) {
-		this.save(player.getName(), player.getUniqueId(), cache);
+	public final CompletableFuture<Void> save(final Player player, final T cache) {
+		return this.save(player.getName(), player.getUniqueId(), cache);
 	}
 
 	/**
@@ -220,9 +376,10 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 	 * @param name
 	 * @param uuid
 	 * @param cache
+	 * @return
 	 */
-	public final void save(final String name, final UUID uuid, final T cache) {
-		this.save(name, uuid, cache, null);
+	public final CompletableFuture<Void> save(final String name, final UUID uuid, final T cache) {
+		return this.save(name, uuid, cache, null);
 	}
 
 	/**
@@ -233,27 +390,32 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 	 * @param player
 	 * @param cache
 	 * @param runAfterSave sync callback to be run when save is done
+	 * @return
 	 */
-	public final void save(final Player player, final T cache, @Nullable final Runnable runAfterSave) {
-		this.save(player.getName(), player.getUniqueId(), cache, runAfterSave);
+	public final CompletableFuture<Void> save(final Player player, final T cache, @Nullable final Runnable runAfterSave) {
+		return this.save(player.getName(), player.getUniqueId(), cache, runAfterSave);
 	}
 
 	/**
 	 * Save the data for the given name, unique ID and his cache async.
 	 *
 	 * If the onSave returns empty data we delete the row
+	 * <p>
+	 * Runs after operations already queued for this unique ID. If an earlier save
+	 * is still waiting, it is replaced by this one and both futures complete when it is done.
+	 * <p>
+	 * In write-behind mode the data is only remembered and the future completes once
+	 * it was written by the next flush, see {@link #isWriteBehind()}.
 	 *
 	 * @param name
 	 * @param uuid
 	 * @param cache
 	 * @param runAfterSave sync callback to be run when save is done
+	 * @return
 	 */
-	public final void save(final String name, final UUID uuid, final T cache, @Nullable final Runnable runAfterSave) {
-		if (!this.isLoaded() || this.isQuerying)
-			return;
-
-		LagCatcher.start("mysql");
-		this.isQuerying = true;
+	public final CompletableFuture<Void> save(final String name, final UUID uuid, final T cache, @Nullable final Runnable runAfterSave) {
+		if (!this.isLoaded())
+			return CompletableFuture.completedFuture(null);
 
 		// Save using the user configured save method
 		final SerializedMap data = this.onSave(cache);
@@ -262,50 +424,319 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 		Debugger.debug("mysql", "Raw data: " + data);
 		Debugger.debug("mysql", "JSON: " + (data == null ? "null" : data.toJson()));
 
-		Common.runAsync(() -> {
+		final CompletableFuture<Void> saved = this.isWriteBehind() ? this.markDirty(uuid, name, data) : this.enqueue(uuid, true, () -> {
+			final long startNanos = System.nanoTime();
 
 			try {
 				// Remove data if empty
 				if (data == null || data.isEmpty()) {
-					this.update("DELETE FROM {table} WHERE UUID= '" + uuid + "';");
+					this.update("DELETE FROM {table} WHERE UUID=?", uuid.toString());
 
 					if (Debugger.isDebugged("mysql"))
 						Debugger.debug("mysql", "Data was empty, row has been removed.");
 
 				} else if (this.isStored(uuid))
-					this.update("UPDATE {table} SET Data='" + data.toJson() + "', Updated='" + System.currentTimeMillis() + "' WHERE UUID='" + uuid + "';");
+					this.update("UPDATE {table} SET Data=?, Updated=? WHERE UUID=?", data.toJson(), System.currentTimeMillis(), uuid.toString());
 				else
-					this.update("INSERT INTO {table}(UUID, Name, Data, Updated) VALUES ('" + uuid + "', '" + name + "', '" + data.toJson() + "', '" + System.currentTimeMillis() + "');");
+					this.update("INSERT INTO {table}(UUID, Name, Data, Updated) VALUES (?, ?, ?, ?)", uuid.toString(), name, data.toJson(), System.currentTimeMillis());
 
-				if (runAfterSave != null)
-					Common.runLater(() -> runAfterSave.run());
+				return null;
 
-			} catch (final Throwable ex) {
-				Common.error(ex,
+			} catch (final Throwable t) {
+				Common.error(t,
 						"Failed to save data to MySQL!",
 						"UUID: " + uuid,
 						"Error: %error");
 
-			} finally {
-				this.isQuerying = false;
+				throw t;
 
-				this.logPerformance("saving");
+			} finally {
+				this.logPerformance("saving", startNanos);
 			}
 		});
+
+		if (runAfterSave != null)
+			saved.thenRun(() -> Common.runLater(runAfterSave));
+
+		return saved;
 	}
 
 	/*
-	 * Utility method to finish LagCatcher mysql measure and log
-	 * if there was some lag, or if we detected mysql being run
-	 * from the main thread.
+	 * Remember the data to be written by the next flush, replacing data saved earlier,
+	 * or write it right away if the plugin is disabled and no flush may come
+	 */
+	private CompletableFuture<Void> markDirty(final UUID uuid, final String name, final SerializedMap data) {
+		final DirtyEntry entry = new DirtyEntry(name, data);
+
+		this.dirtyEntries.compute(uuid, (key, previous) -> {
+
+			// The previous data is superseded, its callers are done once ours is written
+			if (previous != null)
+				entry.future.whenComplete((result, error) -> {
+					if (error != null)
+						previous.future.completeExceptionally(error);
+					else
+						previous.future.complete(null);
+				});
+
+			return entry;
+		});
+
+		if (!SimplePlugin.getInstance().isEnabled())
+			this.flushDirtyEntries();
+
+		return entry.future;
+	}
+
+	/**
+	 * Write all data saved in write-behind mode in one transaction on a database thread.
+	 * Called automatically every {@link #getFlushIntervalSeconds()} and on {@link #close()}.
 	 *
-	 * @param operation
+	 * @return
+	 */
+	public final CompletableFuture<Void> flush() {
+		if (this.dirtyEntries.isEmpty())
+			return CompletableFuture.completedFuture(null);
+
+		return this.getAsyncExecutor().submit(() -> {
+			this.flushDirtyEntries();
+
+			return null;
+		});
+	}
+
+	/*
+	 * Write the dirty entries, waiting for another flush to finish, see below
+	 */
+	private void flushDirtyEntries() {
+		this.flushDirtyEntries(0);
+	}
+
+	/*
+	 * Write the dirty entries, giving up once the deadline in milliseconds passed unless it is 0
+	 */
+	private void flushDirtyEntries(final long deadline) {
+		try {
+			if (deadline == 0)
+				this.flushLock.lock();
+
+			else if (!this.flushLock.tryLock(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS))
+				return;
+
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+
+			return;
+		}
+
+		try {
+			this.writeDirtyEntries(deadline);
+
+		} finally {
+			this.flushLock.unlock();
+		}
+	}
+
+	/*
+	 * Write the dirty entries using batched deletes and upserts in one transaction, skipping unchanged data.
+	 * Entries are forgotten only after they were committed so that loading never misses them.
+	 * If the batch fails while still connected, rows are written one by one and those the database
+	 * rejects are dropped so that they do not hold back the others forever.
+	 */
+	private void writeDirtyEntries(final long deadline) {
+		final Map<UUID, DirtyEntry> snapshot = new HashMap<>(this.dirtyEntries);
+
+		if (snapshot.isEmpty())
+			return;
+
+		final long startNanos = System.nanoTime();
+		final long now = System.currentTimeMillis();
+		final long refreshMillis = Math.min(TimeUnit.DAYS.toMillis(1), TimeUnit.DAYS.toMillis(this.getExpirationDays()) / 2);
+
+		final Map<UUID, Object[]> deletes = new LinkedHashMap<>();
+		final Map<UUID, Object[]> upserts = new LinkedHashMap<>();
+		final Map<UUID, StoredHash> writtenHashes = new HashMap<>();
+
+		for (final Map.Entry<UUID, DirtyEntry> entry : snapshot.entrySet()) {
+			final UUID uuid = entry.getKey();
+			final SerializedMap data = entry.getValue().data;
+
+			if (data == null || data.isEmpty()) {
+				deletes.put(uuid, new Object[] { uuid.toString() });
+
+				continue;
+			}
+
+			final String json = data.toJson();
+			final byte[] hash = hash(json);
+			final StoredHash stored = this.storedHashes.get(uuid);
+
+			// Unchanged, only write to refresh the Updated column before it expires
+			if (stored != null && Arrays.equals(stored.hash, hash) && now - stored.writtenAt < refreshMillis)
+				continue;
+
+			upserts.put(uuid, new Object[] { uuid.toString(), entry.getValue().name, json, now });
+			writtenHashes.put(uuid, new StoredHash(hash, now));
+		}
+
+		final String deleteSql = "DELETE FROM {table} WHERE UUID=?";
+		final String upsertSql = this.isSQLite()
+				? "INSERT OR REPLACE INTO {table}(UUID, Name, Data, Updated) VALUES (?, ?, ?, ?)"
+				: "INSERT INTO {table}(UUID, Name, Data, Updated) VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE Name=VALUES(Name), Data=VALUES(Data), Updated=VALUES(Updated)";
+
+		final Map<String, List<Object[]>> rowsBySql = new LinkedHashMap<>();
+
+		rowsBySql.put(deleteSql, new ArrayList<>(deletes.values()));
+		rowsBySql.put(upsertSql, new ArrayList<>(upserts.values()));
+
+		final Set<UUID> written = new HashSet<>();
+		final Set<UUID> dropped = new HashSet<>();
+
+		if (this.batchUpdate(rowsBySql, deadline)) {
+			written.addAll(deletes.keySet());
+			written.addAll(upserts.keySet());
+
+		} else if (!this.isConnected() || isPast(deadline)) {
+			Common.warning("Failed to write " + snapshot.size() + " saved entries to the database, retrying on next flush.");
+
+			return;
+
+		} else {
+
+			// One bad row rolls the whole batch back, write them one by one to commit the others
+			final boolean finished = this.writeRowByRow(deleteSql, deletes, written, dropped, deadline) && this.writeRowByRow(upsertSql, upserts, written, dropped, deadline);
+
+			if (!dropped.isEmpty())
+				Common.warning("Dropped saved data of " + dropped.size() + " entries the database rejected, see the errors above: " + dropped);
+
+			if (!finished)
+				Common.warning("Lost the database connection while writing saved entries, retrying the rest on next flush.");
+		}
+
+		if (this.storedHashes.size() + writtenHashes.size() > STORED_HASH_CACHE_SIZE)
+			this.storedHashes.clear();
+
+		for (final Map.Entry<UUID, DirtyEntry> entry : snapshot.entrySet()) {
+			final UUID uuid = entry.getKey();
+			final DirtyEntry dirty = entry.getValue();
+			final boolean unchanged = !deletes.containsKey(uuid) && !upserts.containsKey(uuid);
+
+			if (dropped.contains(uuid)) {
+				this.storedHashes.remove(uuid);
+				this.dirtyEntries.remove(uuid, dirty);
+
+				dirty.future.completeExceptionally(new SQLException("The database rejected the saved data of " + uuid));
+
+			} else if (unchanged || written.contains(uuid)) {
+				if (writtenHashes.containsKey(uuid))
+					this.storedHashes.put(uuid, writtenHashes.get(uuid));
+
+				else if (deletes.containsKey(uuid))
+					this.storedHashes.remove(uuid);
+
+				// Keep entries saved again while we were writing
+				this.dirtyEntries.remove(uuid, dirty);
+
+				dirty.future.complete(null);
+			}
+		}
+
+		Debugger.debug("mysql", "Flushed " + snapshot.size() + " saved entries: " + upserts.size() + " written, " + deletes.size() + " removed, " + (snapshot.size() - upserts.size() - deletes.size()) + " unchanged, " + dropped.size() + " dropped.");
+
+		this.logPerformance("flushing", startNanos);
+	}
+
+	/*
+	 * Write the rows one at a time after their batch failed, remembering which were written
+	 * and which the database rejected. Return false if the connection was lost or the deadline
+	 * passed, the rest is then left for the next flush.
+	 */
+	private boolean writeRowByRow(final String sql, final Map<UUID, Object[]> rows, final Set<UUID> written, final Set<UUID> dropped, final long deadline) {
+		for (final Map.Entry<UUID, Object[]> row : rows.entrySet()) {
+			if (this.batchUpdate(Collections.singletonMap(sql, Collections.singletonList(row.getValue())), deadline))
+				written.add(row.getKey());
+
+			else if (this.isConnected() && !isPast(deadline))
+				dropped.add(row.getKey());
+
+			else
+				return false;
+		}
+
+		return true;
+	}
+
+	/*
+	 * Return true if the deadline in milliseconds passed, 0 means there is none
 	 */
-	private void logPerformance(final String operation) {
-		final boolean isMainThread = Bukkit.isPrimaryThread();
+	private static boolean isPast(final long deadline) {
+		return deadline != 0 && System.currentTimeMillis() >= deadline;
+	}
 
-		LagCatcher.end("mysql", isMainThread ? 10 : MathUtil.atLeast(200, SimpleSettings.LAG_THRESHOLD_MILLIS),
-				ChatUtil.capitalize(operation) + " data to MySQL took {time} ms" + (isMainThread ? " - To prevent slowing the server, " + operation + " can be made async (carefully)" : ""));
+	/*
+	 * Return the content hash of the data
+	 */
+	private static byte[] hash(final String json) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8));
+
+		} catch (final NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is not available", ex);
+		}
+	}
+
+	/*
+	 * Queue the task to run on a database thread once all earlier tasks for the same unique ID
+	 * finished, see {@link OperationQueues#enqueue(UUID, boolean, Callable)}
+	 */
+	private <R> CompletableFuture<R> enqueue(final UUID uuid, final boolean replaceable, final Callable<R> task) {
+
+		// Database threads may not finish before the server stops, so run right away like before
+		if (!SimplePlugin.getInstance().isEnabled())
+			return runNow(task);
+
+		final CompletableFuture<R> future = this.operations.enqueue(uuid, replaceable, task);
+
+		future.whenComplete((result, error) -> {
+			if (error instanceof RejectedExecutionException)
+				Common.warning(error.getMessage());
+		});
+
+		return future;
+	}
+
+	/*
+	 * Run the task on this thread and return its completed future
+	 */
+	private static <R> CompletableFuture<R> runNow(final Callable<R> task) {
+		final CompletableFuture<R> future = new CompletableFuture<>();
+
+		try {
+			future.complete(task.call());
+
+		} catch (final Throwable t) {
+			future.completeExceptionally(t);
+		}
+
+		return future;
+	}
+
+	/*
+	 * Wait until all queued operations finished or the deadline passed
+	 */
+	private void awaitQueues(final long deadline) {
+		if (!this.operations.await(deadline))
+			Common.warning("Database operations for " + this.operations.size() + " players did not finish within " + this.getAsyncSettings().getShutdownTimeout() + "ms on shutdown, their changes may be lost!");
+	}
+
+	/*
+	 * Log if the operation took longer than the lag threshold
+	 */
+	private void logPerformance(final String operation, final long startNanos) {
+		final long tookMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+		if (SimpleSettings.LAG_THRESHOLD_MILLIS != -1 && tookMillis > MathUtil.atLeast(200, SimpleSettings.LAG_THRESHOLD_MILLIS))
+			Common.log(ChatUtil.capitalize(operation) + " data to MySQL took " + tookMillis + " ms");
 	}
 
 	/*
@@ -336,4 +767,31 @@ public abstract class SimpleFlatDatabase<T> extends SimpleDatabase {
 	 * @return
 	 */
 	protected abstract SerializedMap onSave(T data);
+
+	/*
+	 * Saved data waiting to be written in write-behind mode
+	 */
+	private static final class DirtyEntry {
+		private final String name;
+		private final SerializedMap data;
+		private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		private DirtyEntry(String name, SerializedMap data) {
+			this.name = name;
+			this.data = data;
+		}
+	}
+
+	/*
+	 * The content hash of the data last written and when
+	 */
+	private static final class StoredHash {
+		private final byte[] hash;
+		private final long writtenAt;
+
+		private StoredHash(byte[] hash, long writtenAt) {
+			this.hash = hash;
+			this.writtenAt = writtenAt;
+		}
+	}
 }
@@ -0,0 +1,92 @@
+package org.mineacademy.fo.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Keeps prepared statements of one connection open keyed by their SQL
+ * so that the database does not need to parse them again.
+ * <p>
+ * Not thread safe, the connection must only be used by one thread at a time.
+ * Statements are owned by this cache and must not be closed by the caller.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+final class StatementCache {
+
+	/**
+	 * The connection statements are prepared on
+	 */
+	@Getter
+	private final Connection connection;
+
+	/**
+	 * The open statements, least recently used first
+	 */
+	private final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75F, true) {
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+			if (this.size() > Math.max(1, SimpleDatabase.getStatementCacheSize())) {
+				closeQuietly(eldest.getValue());
+
+				return true;
+			}
+
+			return false;
+		}
+	};
+
+	/**
+	 * Return a prepared statement for the given SQL with its parameters and batch cleared,
+	 * reusing an open one if possible
+	 *
+	 * @param sql
+	 * @return
+	 * @throws SQLException
+	 */
+	PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement statement = this.statements.get(sql);
+
+		if (statement != null && !statement.isClosed()) {
+			statement.clearParameters();
+			statement.clearBatch();
+
+			return statement;
+		}
+
+		statement = this.connection.prepareStatement(sql);
+		this.statements.put(sql, statement);
+
+		return statement;
+	}
+
+	/**
+	 * Close all cached statements
+	 */
+	void close() {
+		for (final PreparedStatement statement : new ArrayList<>(this.statements.values()))
+			closeQuietly(statement);
+
+		this.statements.clear();
+	}
+
+	/*
+	 * Close the statement ignoring errors
+	 */
+	private static void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+
+		} catch (final SQLException ex) {
+			// Connection already broken
+		}
+	}
+}
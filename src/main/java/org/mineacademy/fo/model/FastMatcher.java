@@ -141,6 +141,55 @@ public class FastMatcher implements ConfigSerializable {
 
 		return matchers;
 	}
+
+	/**
+	 * Compile the given matchers into one {@link MultiMatcher} finding the raw pattern
+	 * of the first matcher returning true from {@link #find(String)}, without testing
+	 * each matcher one by one
+	 *
+	 * @param matchers
+	 * @return
+	 */
+	public static MultiMatcher combine(List<FastMatcher> matchers) {
+		final MultiMatcher.Builder builder = MultiMatcher.builder().ignoreEmptyMessages();
+
+		for (final FastMatcher matcher : matchers) {
+			builder.entry(matcher.getRawPattern());
+
+			if (matcher.matchers == null) {
+				builder.matchAll();
+
+				continue;
+			}
+
+			boolean hasEmptyPart = false;
+
+			for (final Matcher part : matcher.matchers)
+				hasEmptyPart |= part.getPattern().isEmpty();
+
+			// Let the matcher report the empty part when it is reached
+			if (hasEmptyPart) {
+				builder.test(matcher::find);
+
+				continue;
+			}
+
+			for (final Matcher part : matcher.matchers)
+				if (part.getMode() == 1)
+					builder.startsWith(part.getPattern());
+
+				else if (part.getMode() == 2)
+					builder.endsWith(part.getPattern());
+
+				else if (part.getMode() == 3)
+					builder.equalTo(part.getPattern());
+
+				else
+					builder.contains(part.getPattern());
+		}
+
+		return builder.build();
+	}
 }
 
 @Getter
@@ -27,6 +27,9 @@ import org.bukkit.block.Block;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
 import org.bukkit.permissions.Permissible;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.RegisteredServiceProvider;
@@ -91,8 +94,11 @@ import lombok.NonNull;
 import me.clip.placeholderapi.PlaceholderAPI;
 import me.clip.placeholderapi.PlaceholderAPIPlugin;
 import me.clip.placeholderapi.PlaceholderHook;
+import me.clip.placeholderapi.events.ExpansionRegisterEvent;
+import me.clip.placeholderapi.events.ExpansionUnregisterEvent;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import me.clip.placeholderapi.expansion.Relational;
+import me.clip.placeholderapi.expansion.manager.LocalExpansionManager;
 import net.citizensnpcs.api.CitizensAPI;
 import net.citizensnpcs.api.ai.EntityTarget;
 import net.citizensnpcs.api.npc.NPC;
@@ -2497,6 +2503,21 @@ class PlaceholderAPIHook {
 
 	private final VariablesInjector injector;
 
+	/**
+	 * Marks the expansions below for rebuilding when PlaceholderAPI registers or unregisters an expansion
+	 */
+	private final Listener expansionListener = new ExpansionListener();
+
+	/**
+	 * Lowercase identifier - Expansion, null if it needs to be rebuilt
+	 */
+	private volatile Map<String, PlaceholderExpansion> hooks;
+
+	/**
+	 * How many expansions PlaceholderAPI had registered when we built the map above
+	 */
+	private volatile int hooksCount;
+
 	PlaceholderAPIHook() {
 		injector = new VariablesInjector();
 
@@ -2506,9 +2527,13 @@ class PlaceholderAPIHook {
 		} catch (final Throwable throwable) {
 			Common.error(throwable, "Failed to inject our variables into PlaceholderAPI!");
 		}
+
+		Bukkit.getPluginManager().registerEvents(this.expansionListener, SimplePlugin.getInstance());
 	}
 
 	final void unregister() {
+		HandlerList.unregisterAll(this.expansionListener);
+
 		if (injector != null)
 			try {
 				injector.unregister();
@@ -2534,89 +2559,92 @@ class PlaceholderAPIHook {
 	}
 
 	private String setPlaceholders(final OfflinePlayer player, String text) {
-		final String oldText = text;
-		final Map<String, PlaceholderExpansion> hooks = new HashMap<>();
-
-		// MineAcademy edit: Case insensitive
-		for (final PlaceholderExpansion expansion : PlaceholderAPIPlugin.getInstance().getLocalExpansionManager().getExpansions())
-			hooks.put(expansion.getIdentifier().toLowerCase(), expansion);
+		final Map<String, PlaceholderExpansion> hooks = this.getHooks();
 
 		if (hooks.isEmpty())
 			return text;
 
-		text = this.setPlaceholders(player, oldText, text, hooks, Variables.VARIABLE_PATTERN.matcher(text));
-		text = this.setPlaceholders(player, oldText, text, hooks, Variables.BRACKET_VARIABLE_PATTERN.matcher(text));
+		// Request each placeholder only once even if it appears multiple times
+		final Map<String, String> values = new HashMap<>();
 
-		return text;
+		return VariableTemplate.compile(text).render(format -> {
+			if (values.containsKey(format))
+				return values.get(format);
+
+			final String value = this.requestPlaceholder(player, text, format, hooks);
+			values.put(format, value);
+
+			return value;
+		}, true);
 	}
 
-	private String setPlaceholders(@Nullable OfflinePlayer player, String oldText, String text, Map<String, PlaceholderExpansion> hooks, Matcher matcher) {
-		while (matcher.find()) {
-			String format = matcher.group(1);
-			boolean frontSpace = false;
-			boolean backSpace = false;
+	/*
+	 * Return registered expansions, only rebuilding them after PlaceholderAPI registered or unregistered some
+	 */
+	private Map<String, PlaceholderExpansion> getHooks() {
+		final LocalExpansionManager manager = PlaceholderAPIPlugin.getInstance().getLocalExpansionManager();
+		final int count = manager.getExpansionsCount();
 
-			if (format.startsWith("+")) {
-				frontSpace = true;
+		Map<String, PlaceholderExpansion> hooks = this.hooks;
 
-				format = format.substring(1);
-			}
+		if (hooks == null || this.hooksCount != count) {
+			hooks = new HashMap<>();
 
-			if (format.endsWith("+")) {
-				backSpace = true;
+			// MineAcademy edit: Case insensitive
+			for (final PlaceholderExpansion expansion : manager.getExpansions())
+				hooks.put(expansion.getIdentifier().toLowerCase(), expansion);
 
-				format = format.substring(0, format.length() - 1);
-			}
+			this.hooksCount = count;
+			this.hooks = hooks;
+		}
 
-			final int index = format.indexOf("_");
+		return hooks;
+	}
 
-			if (index <= 0 || index >= format.length())
-				continue;
+	/*
+	 * Return the value of the given identifier_params placeholder or null if no expansion replaces it
+	 */
+	private String requestPlaceholder(@Nullable OfflinePlayer player, String text, String format, Map<String, PlaceholderExpansion> hooks) {
+		final int index = format.indexOf("_");
 
-			final String identifier = format.substring(0, index).toLowerCase();
-			final String params = format.substring(index + 1);
-			final String finalFormat = format;
+		if (index <= 0)
+			return null;
 
-			if (hooks.containsKey(identifier)) {
+		final PlaceholderExpansion expansion = hooks.get(format.substring(0, index).toLowerCase());
 
-				// Wait 0.5 seconds then kill the thread to prevent server
-				// crashing on PlaceholderAPI variables hanging up on the main thread
-				final Thread currentThread = Thread.currentThread();
-				final boolean main = Bukkit.isPrimaryThread();
-				final BukkitTask watchDog = Common.runLater(main ? 30 : 80, () -> {
-					Common.logFramed(
-							"IMPORTANT: PREVENTED SERVER CRASH FROM PLACEHOLDERAPI",
-							"",
-							"Replacing PlaceholderAPI variable took over " + (main ? "1.5" : "4") + " sec",
-							"and was interrupted to prevent hanging the server.",
-							"",
-							"This is typically caused when a variable sends a",
-							"blocking HTTP request, such as checking stuff on",
-							"the Internet or resolving offline player names.",
-							"This is NOT an error in " + SimplePlugin.getNamed() + ", you need",
-							"to contact the placeholder expansion's author instead.",
-							"",
-							"Variable: " + finalFormat,
-							"Text: " + oldText,
-							"Player: " + (player == null ? "none" : player.getName()));
-
-					currentThread.stop();
-				});
-
-				String value = hooks.get(identifier).onRequest(player, params);
-
-				// Indicate we no longer have to kill the thread.
-				watchDog.cancel();
-
-				if (value != null) {
-					value = Matcher.quoteReplacement(Common.colorize(value));
-
-					text = text.replaceAll(Pattern.quote(matcher.group()), value.isEmpty() ? "" : (frontSpace ? " " : "") + value + (backSpace ? " " : ""));
-				}
-			}
-		}
+		if (expansion == null)
+			return null;
 
-		return text;
+		// Wait 0.5 seconds then kill the thread to prevent server
+		// crashing on PlaceholderAPI variables hanging up on the main thread
+		final Thread currentThread = Thread.currentThread();
+		final boolean main = Bukkit.isPrimaryThread();
+		final BukkitTask watchDog = Common.runLater(main ? 30 : 80, () -> {
+			Common.logFramed(
+					"IMPORTANT: PREVENTED SERVER CRASH FROM PLACEHOLDERAPI",
+					"",
+					"Replacing PlaceholderAPI variable took over " + (main ? "1.5" : "4") + " sec",
+					"and was interrupted to prevent hanging the server.",
+					"",
+					"This is typically caused when a variable sends a",
+					"blocking HTTP request, such as checking stuff on",
+					"the Internet or resolving offline player names.",
+					"This is NOT an error in " + SimplePlugin.getNamed() + ", you need",
+					"to contact the placeholder expansion's author instead.",
+					"",
+					"Variable: " + format,
+					"Text: " + text,
+					"Player: " + (player == null ? "none" : player.getName()));
+
+			currentThread.stop();
+		});
+
+		final String value = expansion.onRequest(player, format.substring(index + 1));
+
+		// Indicate we no longer have to kill the thread.
+		watchDog.cancel();
+
+		return value;
 	}
 
 	final String replaceRelationPlaceholders(final Player one, final Player two, final String message) {
@@ -2766,7 +2794,7 @@ class PlaceholderAPIHook {
 						return value;
 				}
 
-				for (final SimpleExpansion expansion : Variables.getExpansions()) {
+				for (final SimpleExpansion expansion : Variables.getExpansionsFor(identifier)) {
 					final String value = expansion.replacePlaceholders(player, identifier);
 
 					if (value != null) {
@@ -2786,6 +2814,22 @@ class PlaceholderAPIHook {
 			return null;
 		}
 	}
+
+	/*
+	 * Invalidates cached expansions when PlaceholderAPI changes them
+	 */
+	private final class ExpansionListener implements Listener {
+
+		@EventHandler
+		public void onExpansionRegister(ExpansionRegisterEvent event) {
+			PlaceholderAPIHook.this.hooks = null;
+		}
+
+		@EventHandler
+		public void onExpansionUnregister(ExpansionUnregisterEvent event) {
+			PlaceholderAPIHook.this.hooks = null;
+		}
+	}
 }
 
 class NickyHook {
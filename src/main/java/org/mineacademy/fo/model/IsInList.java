@@ -2,7 +2,6 @@ package org.mineacademy.fo.model;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.regex.Pattern;
 
 import org.mineacademy.fo.Common;
 import org.mineacademy.fo.collection.StrictSet;
@@ -107,7 +106,7 @@ public final class IsInList<T> implements Iterable<T> {
 		for (final T item : this.list) {
 			final String itemString = item.toString().toLowerCase();
 
-			if (Pattern.compile(itemString).matcher(evaluatedString).find())
+			if (Common.compilePattern(itemString, 0).matcher(evaluatedString).find())
 				return true;
 		}
 
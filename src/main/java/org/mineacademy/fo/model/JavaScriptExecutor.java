@@ -2,12 +2,21 @@ package org.mineacademy.fo.model;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
@@ -20,6 +29,7 @@ import org.mineacademy.fo.Common;
 import org.mineacademy.fo.ReflectionUtil;
 import org.mineacademy.fo.Valid;
 import org.mineacademy.fo.exception.EventHandledException;
+import org.mineacademy.fo.exception.FoException;
 import org.mineacademy.fo.exception.FoScriptException;
 import org.mineacademy.fo.plugin.SimplePlugin;
 import org.mineacademy.fo.remain.Remain;
@@ -31,14 +41,71 @@ import lombok.NonNull;
  * <p>
  * The code is based off JavaScript with new Java methods, see:
  * https://winterbe.com/posts/2014/04/05/java8-nashorn-tutorial/
+ * <p>
+ * Scripts are compiled once per engine and cached by their source. Each call borrows
+ * an engine from a small pool so that async callers do not wait for each other,
+ * when all engines are busy callers wait for one to be returned. Scripts running
+ * other scripts reuse the engine their thread already borrowed with their own variables.
  */
 public final class JavaScriptExecutor {
 
 	/**
-	 * The engine singleton
+	 * How many compiled scripts each engine keeps, the least recently used one is evicted when full
+	 */
+	public static int SCRIPT_CACHE_SIZE = 500;
+
+	/**
+	 * How many engines we create at most, callers wait for a free engine when all are busy
+	 */
+	public static int ENGINE_POOL_SIZE = 4;
+
+	/**
+	 * How long we wait for a free engine when all are busy before running the script
+	 * in a temporary engine instead
+	 */
+	public static int ENGINE_WAIT_MILLIS = 1_000;
+
+	/**
+	 * Evaluate simple conditions such as "{world}" == "lobby" or player.getLevel() > 5
+	 * natively without the script engine, running everything else as JavaScript
+	 */
+	public static boolean NATIVE_CONDITIONS = true;
+
+	/**
+	 * Matches player.hasPermission("...") calls we replace before running the script
+	 */
+	private static final Pattern PERMISSION_PATTERN = Pattern.compile("player\\.hasPermission\\(\"([^\"]+)\"\\)");
+
+	/**
+	 * The engine singleton, used to create new engines for the pool
 	 */
 	private static final ScriptEngine engine;
 
+	/**
+	 * Engines not currently running a script
+	 */
+	private static final BlockingQueue<PooledEngine> idleEngines = new LinkedBlockingQueue<>();
+
+	/**
+	 * How many engines were created, idle or busy
+	 */
+	private static final AtomicInteger engineCount = new AtomicInteger();
+
+	/**
+	 * The engine the current thread borrowed, so that scripts calling {@link #run(String, Map)}
+	 * again do not wait for a second engine while holding the first one
+	 */
+	private static final ThreadLocal<PooledEngine> borrowedEngine = new ThreadLocal<>();
+
+	/**
+	 * Statistics for {@link #getScriptCacheHits()} and similar
+	 */
+	private static final LongAdder scriptCacheHits = new LongAdder();
+	private static final LongAdder scriptCacheMisses = new LongAdder();
+	private static final LongAdder evaluations = new LongAdder();
+	private static final LongAdder evaluationNanos = new LongAdder();
+	private static final LongAdder nativeEvaluations = new LongAdder();
+
 	// Load the engine
 	static {
 		Thread.currentThread().setContextClassLoader(SimplePlugin.class.getClassLoader());
@@ -86,6 +153,11 @@ public final class JavaScriptExecutor {
 						"or other vendor that supports Nashorn."));
 
 			Common.logFramed(false, Common.toArray(warningMessage));
+
+		} else {
+			idleEngines.add(new PooledEngine(engine, false));
+
+			engineCount.incrementAndGet();
 		}
 
 	}
@@ -130,14 +202,15 @@ public final class JavaScriptExecutor {
 			replacements = new HashMap<>();
 
 		// Workaround hasPermission for null senders (i.e. Discord)
-		final Pattern pattern = Pattern.compile("player\\.hasPermission\\(\"([^\"]+)\"\\)");
-		final Matcher matcher = pattern.matcher(javascript);
+		if (javascript.contains("player.hasPermission(")) {
+			final Matcher matcher = PERMISSION_PATTERN.matcher(javascript);
 
-		while (matcher.find()) {
-			final String permission = matcher.group(1);
-			final boolean hasPermission = sender == null ? false : sender.hasPermission(permission);
+			while (matcher.find()) {
+				final String permission = matcher.group(1);
+				final boolean hasPermission = sender == null ? false : sender.hasPermission(permission);
 
-			javascript = javascript.replace(matcher.group(), String.valueOf(hasPermission));
+				javascript = javascript.replace(matcher.group(), String.valueOf(hasPermission));
+			}
 		}
 
 		// Find and replace all %syntax% and {syntax} variables since they were not replaced for Discord
@@ -198,29 +271,64 @@ public final class JavaScriptExecutor {
 	 * @throws FoScriptException
 	 */
 	public static Object run(@NonNull String javascript, Map<String, Object> replacements) throws FoScriptException {
-		synchronized (SimplePlugin.getInstance()) {
-			if (replacements == null)
-				replacements = new HashMap<>();
+		if (replacements == null)
+			replacements = new HashMap<>();
 
-			// Mohist is unsupported
-			if (Bukkit.getName().equals("Mohist"))
-				return null;
+		// Mohist is unsupported
+		if (Bukkit.getName().equals("Mohist"))
+			return null;
 
-			// Speed up
-			if (javascript.equals("true") || javascript.equals("!false") || javascript.equals("yes"))
-				return true;
+		// Speed up
+		if (javascript.equals("true") || javascript.equals("!false") || javascript.equals("yes"))
+			return true;
+
+		if (javascript.equals("false") || javascript.equals("!true") || javascript.equals("no"))
+			return false;
 
-			if (javascript.equals("false") || javascript.equals("!true") || javascript.equals("no"))
-				return false;
+		// Evaluate simple conditions such as player.getLevel() > 5 without the engine
+		if (NATIVE_CONDITIONS) {
+			final NativeCondition condition = NativeCondition.compile(javascript);
 
-			if (engine == null) {
-				Common.warning("Not running script because JavaScript library is missing (try installing mineacademy.org/nashorn). Script: " + javascript);
+			if (condition != null) {
+				final Boolean result = condition.evaluate(replacements);
 
-				return null;
+				if (result != null) {
+					nativeEvaluations.increment();
+
+					return result;
+				}
 			}
+		}
+
+		if (engine == null) {
+			Common.warning("Not running script because JavaScript library is missing (try installing mineacademy.org/nashorn). Script: " + javascript);
+
+			return null;
+		}
+
+		final PooledEngine heldEngine = borrowedEngine.get();
+		final boolean nested = heldEngine != null;
+		final PooledEngine pooledEngine = nested ? heldEngine : borrowEngine();
+		final long startNanos = System.nanoTime();
+
+		if (!nested)
+			borrowedEngine.set(pooledEngine);
 
-			// CLear past variables
-			engine.getBindings(ScriptContext.ENGINE_SCOPE).clear();
+		try {
+			final Bindings bindings;
+
+			// The outer script is still using the engine variables, give this one its own
+			if (nested)
+				bindings = pooledEngine.getEngine().createBindings();
+
+			else {
+
+				// Only this call uses the engine until it is returned, so its variables are ours
+				bindings = pooledEngine.getEngine().getBindings(ScriptContext.ENGINE_SCOPE);
+
+				// CLear past variables
+				bindings.clear();
+			}
 
 			// Put new variables
 			for (final Map.Entry<String, Object> replacement : replacements.entrySet()) {
@@ -230,11 +338,11 @@ public final class JavaScriptExecutor {
 				final Object value = replacement.getValue();
 				Valid.checkNotNull(value, "Value can't be null in javascript variables for key " + key + ": " + replacements);
 
-				engine.put(key, value);
+				bindings.put(key, value);
 			}
 
 			try {
-				final Object result = engine.eval(javascript);
+				final Object result = pooledEngine.eval(javascript, nested ? bindings : null);
 
 				if (result instanceof String) {
 					String resultString = Common.stripColors((String) result).trim().toLowerCase();
@@ -285,6 +393,206 @@ public final class JavaScriptExecutor {
 					errorMessage.add("Error: " + ex.getMessage());
 				throw new FoScriptException(String.join(" ", errorMessage), javascript, ex instanceof ScriptException ? ((ScriptException) ex).getLineNumber() : -1, ex);
 			}
+
+		} finally {
+			evaluations.increment();
+			evaluationNanos.add(System.nanoTime() - startNanos);
+
+			if (!nested) {
+				borrowedEngine.remove();
+
+				returnEngine(pooledEngine);
+			}
+		}
+	}
+
+	/*
+	 * Take an idle engine, create a new one if all are busy and we are below the pool size,
+	 * otherwise wait until one is returned or fall back to a temporary engine
+	 */
+	private static PooledEngine borrowEngine() {
+		final PooledEngine pooledEngine = idleEngines.poll();
+
+		if (pooledEngine != null)
+			return pooledEngine;
+
+		while (true) {
+			final int count = engineCount.get();
+
+			if (count >= Math.max(1, ENGINE_POOL_SIZE))
+				break;
+
+			if (engineCount.compareAndSet(count, count + 1))
+				try {
+					return createEngine(false);
+
+				} catch (RuntimeException | Error ex) {
+					engineCount.decrementAndGet();
+
+					throw ex;
+				}
+		}
+
+		try {
+			final PooledEngine returned = idleEngines.poll(ENGINE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+
+			return returned != null ? returned : createEngine(true);
+
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+
+			throw new FoException(ex, "Interrupted while waiting for a free JavaScript engine");
+		}
+	}
+
+	/*
+	 * Create a new engine for the pool, or one that is discarded once the script finishes if temporary
+	 */
+	private static PooledEngine createEngine(boolean temporary) {
+		final Thread thread = Thread.currentThread();
+		final ClassLoader oldClassLoader = thread.getContextClassLoader();
+
+		// Nashorn resolves Java classes through the context class loader
+		try {
+			thread.setContextClassLoader(SimplePlugin.class.getClassLoader());
+
+			return new PooledEngine(engine.getFactory().getScriptEngine(), temporary);
+
+		} finally {
+			thread.setContextClassLoader(oldClassLoader);
+		}
+	}
+
+	/*
+	 * Return the engine to the pool, or discard it if temporary or the pool size was lowered in the meantime
+	 */
+	private static void returnEngine(PooledEngine pooledEngine) {
+		if (pooledEngine.temporary)
+			return;
+
+		if (engineCount.get() > Math.max(1, ENGINE_POOL_SIZE)) {
+			engineCount.decrementAndGet();
+
+			return;
+		}
+
+		idleEngines.offer(pooledEngine);
+	}
+
+	/**
+	 * Return how many times a script was found already compiled
+	 *
+	 * @return
+	 */
+	public static long getScriptCacheHits() {
+		return scriptCacheHits.sum();
+	}
+
+	/**
+	 * Return how many times a script had to be compiled
+	 *
+	 * @return
+	 */
+	public static long getScriptCacheMisses() {
+		return scriptCacheMisses.sum();
+	}
+
+	/**
+	 * Return how many scripts we have evaluated
+	 *
+	 * @return
+	 */
+	public static long getEvaluationCount() {
+		return evaluations.sum();
+	}
+
+	/**
+	 * Return the average time in nanoseconds it took to evaluate a script, or 0 if none were run
+	 *
+	 * @return
+	 */
+	public static long getAverageEvaluationNanos() {
+		final long count = evaluations.sum();
+
+		return count == 0 ? 0 : evaluationNanos.sum() / count;
+	}
+
+	/**
+	 * Return how many conditions were evaluated natively without the script engine
+	 *
+	 * @return
+	 */
+	public static long getNativeEvaluationCount() {
+		return nativeEvaluations.sum();
+	}
+
+	/**
+	 * Reset statistics returned by {@link #getScriptCacheHits()} and similar
+	 */
+	public static void resetStatistics() {
+		scriptCacheHits.reset();
+		scriptCacheMisses.reset();
+		evaluations.reset();
+		evaluationNanos.reset();
+		nativeEvaluations.reset();
+	}
+
+	/*
+	 * An engine together with scripts compiled by it, only used by one thread at a time
+	 */
+	private static final class PooledEngine {
+
+		/**
+		 * The engine
+		 */
+		private final ScriptEngine engine;
+
+		/**
+		 * Was this engine created because all pooled ones were busy for too long? Then it is not pooled
+		 */
+		private final boolean temporary;
+
+		/**
+		 * Script source - Compiled script, in access order
+		 */
+		private final Map<String, CompiledScript> compiledScripts = new LinkedHashMap<String, CompiledScript>(16, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+				return this.size() > SCRIPT_CACHE_SIZE;
+			}
+		};
+
+		PooledEngine(ScriptEngine engine, boolean temporary) {
+			this.engine = engine;
+			this.temporary = temporary;
+		}
+
+		ScriptEngine getEngine() {
+			return this.engine;
+		}
+
+		/*
+		 * Evaluate the script using its compiled form, compiling it first if we have not seen it yet,
+		 * with the given variables or the engine ones if null
+		 */
+		Object eval(String javascript, @Nullable Bindings bindings) throws ScriptException {
+			if (!(this.engine instanceof Compilable))
+				return bindings != null ? this.engine.eval(javascript, bindings) : this.engine.eval(javascript);
+
+			CompiledScript script = this.compiledScripts.get(javascript);
+
+			if (script == null) {
+				scriptCacheMisses.increment();
+
+				script = ((Compilable) this.engine).compile(javascript);
+				this.compiledScripts.put(javascript, script);
+
+			} else
+				scriptCacheHits.increment();
+
+			return bindings != null ? script.eval(bindings) : script.eval();
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,772 @@
+package org.mineacademy.fo.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.Nullable;
+
+import org.mineacademy.fo.Common;
+import org.mineacademy.fo.Valid;
+import org.mineacademy.fo.exception.RegexTimeoutException;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Represents a list of entries compiled once into a single matcher, so that finding
+ * which entry matches a message does not need to test each entry one after another.
+ *
+ * Entries containing a literal are searched for all at once using an Aho-Corasick automaton,
+ * entries the message must start or end with using tries, entries the message must equal
+ * using a hash lookup, and regular expressions are merged into one alternation where that
+ * does not change what they match.
+ *
+ * When multiple entries match, the one added first is returned, the same as testing
+ * the entries one by one in the order they were added would return.
+ */
+public final class MultiMatcher {
+
+	/**
+	 * Indicates no entry was matched
+	 */
+	private static final int NONE = Integer.MAX_VALUE;
+
+	/**
+	 * The entries in the order they were added
+	 */
+	@Getter
+	private final List<String> entries;
+
+	/**
+	 * Literals the message must contain, or null if there are none
+	 */
+	private final Trie contains;
+
+	/**
+	 * Literals the message must start with, or null if there are none
+	 */
+	private final Trie prefixes;
+
+	/**
+	 * Literals the message must end with, stored reversed, or null if there are none
+	 */
+	private final Trie suffixes;
+
+	/**
+	 * Message - First entry the message must equal
+	 */
+	private final Map<String, Integer> exact;
+
+	/**
+	 * The first entry matching everything, or {@link #NONE}
+	 */
+	private final int matchAll;
+
+	/**
+	 * Regular expressions and custom checks tested one by one, ordered by their entry
+	 */
+	private final Check[] checks;
+
+	/**
+	 * All regular expressions from {@link #checks} that could be merged, or null
+	 */
+	private final Pattern merged;
+
+	/**
+	 * Set to true if the merged expression timed out, we then only test expressions one by one
+	 */
+	private volatile boolean mergedDisabled;
+
+	/**
+	 * Evaluate regular expressions through {@link Common#regExMatch(Matcher)} to strip colors
+	 * from the message and stop expressions taking too long
+	 */
+	private final boolean timed;
+
+	/**
+	 * Only entries matching everything match empty messages
+	 */
+	private final boolean ignoreEmptyMessages;
+
+	private MultiMatcher(Builder builder) {
+		this.entries = Collections.unmodifiableList(new ArrayList<>(builder.entries));
+		this.contains = builder.contains.isEmpty() ? null : builder.contains.build(true);
+		this.prefixes = builder.prefixes.isEmpty() ? null : builder.prefixes.build(false);
+		this.suffixes = builder.suffixes.isEmpty() ? null : builder.suffixes.build(false);
+		this.exact = builder.exact.isEmpty() ? null : new HashMap<>(builder.exact);
+		this.matchAll = builder.matchAll;
+		this.checks = builder.checks.toArray(new Check[builder.checks.size()]);
+		this.merged = builder.mergeExpressions(this.checks);
+		this.timed = builder.timed;
+		this.ignoreEmptyMessages = builder.ignoreEmptyMessages;
+	}
+
+	/**
+	 * Return true if any entry matches the message
+	 *
+	 * @param message
+	 * @return
+	 */
+	public boolean matches(@NonNull String message) {
+		return this.findIndex(message) != -1;
+	}
+
+	/**
+	 * Return the first entry matching the message, or null if none does
+	 *
+	 * @param message
+	 * @return
+	 */
+	@Nullable
+	public String find(@NonNull String message) {
+		final int index = this.findIndex(message);
+
+		return index == -1 ? null : this.entries.get(index);
+	}
+
+	/**
+	 * Return the index of the first entry matching the message, or -1 if none does
+	 *
+	 * @param message
+	 * @return
+	 */
+	public int findIndex(@NonNull String message) {
+		int best = this.matchAll;
+
+		if (message.isEmpty() && this.ignoreEmptyMessages)
+			return best == NONE ? -1 : best;
+
+		if (this.exact != null) {
+			final Integer entry = this.exact.get(message);
+
+			if (entry != null && entry < best)
+				best = entry;
+		}
+
+		if (this.prefixes != null)
+			best = Math.min(best, this.prefixes.findPrefix(message, false));
+
+		if (this.suffixes != null)
+			best = Math.min(best, this.suffixes.findPrefix(message, true));
+
+		if (this.contains != null)
+			best = Math.min(best, this.contains.findAnywhere(message, best));
+
+		best = this.findCheck(message, best);
+
+		return best == NONE ? -1 : best;
+	}
+
+	/*
+	 * Return the first check matching the message added before the given entry, or the entry
+	 */
+	private int findCheck(String message, int best) {
+		boolean mergedMayMatch = true;
+		boolean mergedTested = false;
+
+		for (final Check check : this.checks) {
+			if (check.entry >= best)
+				break;
+
+			if (check.merged) {
+				if (!mergedTested) {
+					mergedMayMatch = this.findMerged(message);
+					mergedTested = true;
+				}
+
+				if (!mergedMayMatch)
+					continue;
+			}
+
+			if (check.matches(message, this.timed))
+				return check.entry;
+		}
+
+		return best;
+	}
+
+	/*
+	 * Return false if none of the merged expressions can match the message
+	 */
+	private boolean findMerged(String message) {
+		if (this.merged == null || this.mergedDisabled)
+			return true;
+
+		if (!this.timed)
+			return this.merged.matcher(message).find();
+
+		final Matcher matcher = Common.compileTimedMatcher(this.merged, message);
+
+		try {
+			return matcher.find();
+
+		} catch (final RegexTimeoutException ex) {
+
+			// Let expressions time out and be reported on their own
+			this.mergedDisabled = true;
+
+			return true;
+		}
+	}
+
+	/**
+	 * Return how many entries this matcher has
+	 *
+	 * @return
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	@Override
+	public String toString() {
+		return "MultiMatcher{" + this.entries + "}";
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Static
+	// ------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Start building a new matcher
+	 *
+	 * @return
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Classes
+	// ------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Builds a {@link MultiMatcher}. Call {@link #entry(String)} to start each entry and
+	 * then add the conditions of which any one makes the message match that entry.
+	 */
+	@NoArgsConstructor(access = AccessLevel.PRIVATE)
+	public static final class Builder {
+
+		private final List<String> entries = new ArrayList<>();
+		private final TrieBuilder contains = new TrieBuilder(false);
+		private final TrieBuilder prefixes = new TrieBuilder(false);
+		private final TrieBuilder suffixes = new TrieBuilder(true);
+		private final Map<String, Integer> exact = new HashMap<>();
+		private final List<Check> checks = new ArrayList<>();
+		private int matchAll = NONE;
+		private boolean timed;
+		private boolean ignoreEmptyMessages;
+
+		/**
+		 * Start a new entry, the conditions added after this call belong to it
+		 *
+		 * @param entry
+		 * @return
+		 */
+		public Builder entry(@NonNull String entry) {
+			this.entries.add(entry);
+
+			return this;
+		}
+
+		/**
+		 * Match the current entry when the message contains the literal
+		 *
+		 * @param literal
+		 * @return
+		 */
+		public Builder contains(@NonNull String literal) {
+			this.contains.add(literal, this.current());
+
+			return this;
+		}
+
+		/**
+		 * Match the current entry when the message starts with the literal
+		 *
+		 * @param literal
+		 * @return
+		 */
+		public Builder startsWith(@NonNull String literal) {
+			this.prefixes.add(literal, this.current());
+
+			return this;
+		}
+
+		/**
+		 * Match the current entry when the message ends with the literal
+		 *
+		 * @param literal
+		 * @return
+		 */
+		public Builder endsWith(@NonNull String literal) {
+			this.suffixes.add(literal, this.current());
+
+			return this;
+		}
+
+		/**
+		 * Match the current entry when the message equals the literal
+		 *
+		 * @param literal
+		 * @return
+		 */
+		public Builder equalTo(@NonNull String literal) {
+			this.exact.putIfAbsent(literal, this.current());
+
+			return this;
+		}
+
+		/**
+		 * Match the current entry when the pattern is found in the message
+		 *
+		 * @param pattern
+		 * @return
+		 */
+		public Builder regex(@NonNull Pattern pattern) {
+			this.checks.add(new Check(this.current(), pattern, null));
+
+			return this;
+		}
+
+		/**
+		 * Match the current entry when the predicate returns true for the message,
+		 * the predicate is only called when no entry added before matched
+		 *
+		 * @param predicate
+		 * @return
+		 */
+		public Builder test(@NonNull Predicate<String> predicate) {
+			this.checks.add(new Check(this.current(), null, predicate));
+
+			return this;
+		}
+
+		/**
+		 * Match the current entry for every message
+		 *
+		 * @return
+		 */
+		public Builder matchAll() {
+			this.matchAll = Math.min(this.matchAll, this.current());
+
+			return this;
+		}
+
+		/**
+		 * Evaluate regular expressions the same way {@link Common#regExMatch(Pattern, String)}
+		 * does, stripping colors from the message and stopping expressions taking too long
+		 *
+		 * @return
+		 */
+		public Builder timed() {
+			this.timed = true;
+
+			return this;
+		}
+
+		/**
+		 * Only match empty messages with entries added using {@link #matchAll()}
+		 *
+		 * @return
+		 */
+		public Builder ignoreEmptyMessages() {
+			this.ignoreEmptyMessages = true;
+
+			return this;
+		}
+
+		/**
+		 * Compile the matcher
+		 *
+		 * @return
+		 */
+		public MultiMatcher build() {
+			return new MultiMatcher(this);
+		}
+
+		/*
+		 * Return the index of the entry conditions are added to
+		 */
+		private int current() {
+			Valid.checkBoolean(!this.entries.isEmpty(), "Call entry() before adding conditions to a MultiMatcher");
+
+			return this.entries.size() - 1;
+		}
+
+		/*
+		 * Merge expressions that can be safely put into one alternation, marking their checks
+		 */
+		private Pattern mergeExpressions(Check[] checks) {
+			final List<Check> mergeable = new ArrayList<>();
+			int flags = -1;
+
+			for (final Check check : checks)
+				if (check.pattern != null && isMergeable(check.pattern) && (flags == -1 || flags == check.pattern.flags())) {
+					flags = check.pattern.flags();
+
+					mergeable.add(check);
+				}
+
+			// Nothing to gain
+			if (mergeable.size() < 2)
+				return null;
+
+			final StringBuilder alternation = new StringBuilder();
+
+			for (final Check check : mergeable)
+				alternation.append(alternation.length() == 0 ? "" : "|").append("(?:").append(check.pattern.pattern()).append(")");
+
+			final Pattern merged;
+
+			try {
+				merged = Pattern.compile(alternation.toString(), flags);
+
+			} catch (final PatternSyntaxException ex) {
+				return null;
+			}
+
+			for (final Check check : mergeable)
+				check.merged = true;
+
+			return merged;
+		}
+
+		/*
+		 * Return true if the expression matches the same when put into a group of an alternation,
+		 * meaning it has no back references which would be renumbered, no \Q quotes which could
+		 * swallow the closing group and no comments mode
+		 */
+		private static boolean isMergeable(Pattern pattern) {
+			if ((pattern.flags() & (Pattern.COMMENTS | Pattern.LITERAL)) != 0)
+				return false;
+
+			final String regex = pattern.pattern();
+
+			for (int index = 0; index < regex.length() - 1; index++) {
+				final char letter = regex.charAt(index);
+
+				if (letter == '\\') {
+					final char next = regex.charAt(index + 1);
+
+					if (Character.isDigit(next) || next == 'k' || next == 'Q')
+						return false;
+
+					index++;
+
+				} else if (letter == '(' && regex.charAt(index + 1) == '?') {
+
+					// Inline flags such as (?x) or (?ix:...)
+					for (int flag = index + 2; flag < regex.length(); flag++) {
+						final char flagLetter = regex.charAt(flag);
+
+						if (flagLetter == 'x')
+							return false;
+
+						if (!Character.isLetter(flagLetter) && flagLetter != '-')
+							break;
+					}
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/*
+	 * A regular expression or custom condition tested on its own
+	 */
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	private static final class Check {
+
+		/**
+		 * The entry this check belongs to
+		 */
+		private final int entry;
+
+		/**
+		 * The expression to find in the message, or null if this is a predicate
+		 */
+		private final Pattern pattern;
+
+		/**
+		 * The condition to test, or null if this is an expression
+		 */
+		private final Predicate<String> predicate;
+
+		/**
+		 * Is the expression a part of {@link MultiMatcher#merged}?
+		 */
+		private boolean merged;
+
+		/*
+		 * Return true if this check matches the message
+		 */
+		boolean matches(String message, boolean timed) {
+			if (this.predicate != null)
+				return this.predicate.test(message);
+
+			return timed ? Common.regExMatch(this.pattern, message) : this.pattern.matcher(message).find();
+		}
+	}
+
+	/*
+	 * Collects literals and the first entry they belong to before building a trie
+	 */
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	private static final class TrieBuilder {
+
+		/**
+		 * Should literals be stored reversed to match them from the end?
+		 */
+		private final boolean reversed;
+
+		/**
+		 * Node children by their letter, the root node is the first one
+		 */
+		private final List<TreeMap<Character, Integer>> children = new ArrayList<>();
+
+		/**
+		 * The first entry ending at each node, or {@link MultiMatcher#NONE}
+		 */
+		private final List<Integer> terminals = new ArrayList<>();
+
+		/*
+		 * Add the literal, keeping the first entry if it was added before
+		 */
+		void add(String literal, int entry) {
+			if (this.children.isEmpty())
+				this.addNode();
+
+			int node = 0;
+
+			for (int i = 0; i < literal.length(); i++) {
+				final char letter = literal.charAt(this.reversed ? literal.length() - 1 - i : i);
+				Integer next = this.children.get(node).get(letter);
+
+				if (next == null) {
+					next = this.addNode();
+
+					this.children.get(node).put(letter, next);
+				}
+
+				node = next;
+			}
+
+			this.terminals.set(node, Math.min(this.terminals.get(node), entry));
+		}
+
+		/*
+		 * Return true if no literal was added
+		 */
+		boolean isEmpty() {
+			return this.children.isEmpty();
+		}
+
+		/*
+		 * Create a trie, linking its nodes into an Aho-Corasick automaton when requested
+		 */
+		Trie build(boolean automaton) {
+			final int size = this.children.size();
+			final char[][] letters = new char[size][];
+			final int[][] next = new int[size][];
+			final int[] terminals = new int[size];
+
+			for (int node = 0; node < size; node++) {
+				final TreeMap<Character, Integer> nodeChildren = this.children.get(node);
+
+				letters[node] = new char[nodeChildren.size()];
+				next[node] = new int[nodeChildren.size()];
+				terminals[node] = this.terminals.get(node);
+
+				int index = 0;
+
+				for (final Map.Entry<Character, Integer> child : nodeChildren.entrySet()) {
+					letters[node][index] = child.getKey();
+					next[node][index++] = child.getValue();
+				}
+			}
+
+			final Trie trie = new Trie(letters, next, terminals);
+
+			if (automaton)
+				trie.link();
+
+			return trie;
+		}
+
+		private int addNode() {
+			this.children.add(new TreeMap<>());
+			this.terminals.add(NONE);
+
+			return this.children.size() - 1;
+		}
+	}
+
+	/*
+	 * A compact trie with children sorted by their letter
+	 */
+	private static final class Trie {
+
+		/**
+		 * Children letters for each node, sorted
+		 */
+		private final char[][] letters;
+
+		/**
+		 * Children nodes for each node, in the order of their letters
+		 */
+		private final int[][] next;
+
+		/**
+		 * The first entry ending at each node, or {@link MultiMatcher#NONE}
+		 */
+		private final int[] terminals;
+
+		/**
+		 * The longest proper suffix of each node that is also in the trie, only set for automatons
+		 */
+		private int[] failures;
+
+		/**
+		 * The first entry ending at each node or any of its failure nodes, only set for automatons
+		 */
+		private int[] outputs;
+
+		/**
+		 * The first entry of all literals, we stop searching once found
+		 */
+		private int firstEntry = NONE;
+
+		Trie(char[][] letters, int[][] next, int[] terminals) {
+			this.letters = letters;
+			this.next = next;
+			this.terminals = terminals;
+		}
+
+		/*
+		 * Return the child of the node for the letter or -1
+		 */
+		private int child(int node, char letter) {
+			final char[] nodeLetters = this.letters[node];
+			int low = 0;
+			int high = nodeLetters.length - 1;
+
+			while (low <= high) {
+				final int middle = (low + high) >>> 1;
+				final char middleLetter = nodeLetters[middle];
+
+				if (middleLetter < letter)
+					low = middle + 1;
+
+				else if (middleLetter > letter)
+					high = middle - 1;
+
+				else
+					return this.next[node][middle];
+			}
+
+			return -1;
+		}
+
+		/*
+		 * Compute failure links breadth first
+		 */
+		void link() {
+			final int size = this.letters.length;
+			final Queue<Integer> queue = new ArrayDeque<>();
+
+			this.failures = new int[size];
+			this.outputs = new int[size];
+			this.outputs[0] = this.terminals[0];
+
+			for (final int child : this.next[0]) {
+				this.failures[child] = 0;
+				this.outputs[child] = Math.min(this.terminals[child], this.outputs[0]);
+
+				queue.add(child);
+			}
+
+			while (!queue.isEmpty()) {
+				final int node = queue.poll();
+
+				for (int index = 0; index < this.next[node].length; index++) {
+					final char letter = this.letters[node][index];
+					final int child = this.next[node][index];
+
+					int failure = this.failures[node];
+
+					while (failure != 0 && this.child(failure, letter) == -1)
+						failure = this.failures[failure];
+
+					final int failureChild = this.child(failure, letter);
+
+					this.failures[child] = failureChild == -1 ? 0 : failureChild;
+					this.outputs[child] = Math.min(this.terminals[child], this.outputs[this.failures[child]]);
+
+					queue.add(child);
+				}
+			}
+
+			for (final int terminal : this.terminals)
+				this.firstEntry = Math.min(this.firstEntry, terminal);
+		}
+
+		/*
+		 * Return the first entry of a literal the message starts with, or ends with if reversed
+		 */
+		int findPrefix(String message, boolean reversed) {
+			final int length = message.length();
+			int best = this.terminals[0];
+			int node = 0;
+
+			for (int i = 0; i < length; i++) {
+				node = this.child(node, message.charAt(reversed ? length - 1 - i : i));
+
+				if (node == -1)
+					break;
+
+				best = Math.min(best, this.terminals[node]);
+			}
+
+			return best;
+		}
+
+		/*
+		 * Return the first entry of a literal found anywhere in the message, stopping early
+		 * when no literal could beat the given entry
+		 */
+		int findAnywhere(String message, int bound) {
+			int best = Math.min(bound, this.outputs[0]);
+			int node = 0;
+
+			for (int i = 0; i < message.length() && best > this.firstEntry; i++) {
+				final char letter = message.charAt(i);
+				int child = this.child(node, letter);
+
+				while (child == -1 && node != 0) {
+					node = this.failures[node];
+					child = this.child(node, letter);
+				}
+
+				node = child == -1 ? 0 : child;
+				best = Math.min(best, this.outputs[node]);
+			}
+
+			return best;
+		}
+	}
+}
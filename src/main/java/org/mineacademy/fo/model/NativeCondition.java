@@ -0,0 +1,548 @@
+package org.mineacademy.fo.model;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Evaluates simple JavaScript conditions without starting the script engine.
+ * <p>
+ * Supported is a safe subset of JavaScript: true/false, string and number literals,
+ * !, &&, ||, ==, !=, ===, !==, <, <=, >, >=, unary minus, parentheses and a few
+ * whitelisted getters on the "player" variable, such as player.getLevel() > 5 or
+ * "{world}" == "lobby" && player.hasPermission('my.perm').
+ * <p>
+ * Both sides of each operator must be of the same type and the whole condition
+ * must return a boolean, so that the result is always what JavaScript would return.
+ * Everything else is left to {@link JavaScriptExecutor}.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+final class NativeCondition {
+
+	/**
+	 * How many compiled conditions we cache, the cache is cleared when full
+	 */
+	private static final int CACHE_SIZE = 1_000;
+
+	/**
+	 * Types of operands we know at compile time
+	 */
+	private static final int BOOLEAN = 0, NUMBER = 1, STRING = 2;
+
+	/**
+	 * Thrown when a condition cannot be evaluated natively at runtime, such as when the player is missing
+	 */
+	private static final RuntimeException FALLBACK = new RuntimeException("Falling back to JavaScript", null, false, false) {
+		private static final long serialVersionUID = 1L;
+	};
+
+	/**
+	 * Thrown when the parser meets syntax we do not support so that the script is run as JavaScript
+	 */
+	private static final UnsupportedSyntaxException UNSUPPORTED_SYNTAX = new UnsupportedSyntaxException();
+
+	/**
+	 * Placeholder in the cache for scripts we cannot compile
+	 */
+	private static final NativeCondition UNSUPPORTED = new NativeCondition(null);
+
+	/**
+	 * Script source - Compiled condition or {@link #UNSUPPORTED}
+	 */
+	private static final Map<String, NativeCondition> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * Method name - Whitelisted getter on the "player" variable
+	 */
+	private static final Map<String, Getter> getters = new HashMap<>();
+
+	static {
+		registerGetter(CommandSender.class, "getName", String.class);
+		registerGetter(CommandSender.class, "isOp", boolean.class);
+		registerGetter(CommandSender.class, "hasPermission", boolean.class, String.class);
+
+		registerGetter(Player.class, "getDisplayName", String.class);
+		registerGetter(Player.class, "getLevel", int.class);
+		registerGetter(Player.class, "getExp", float.class);
+		registerGetter(Player.class, "getTotalExperience", int.class);
+		registerGetter(Player.class, "getFoodLevel", int.class);
+		registerGetter(Player.class, "getHealth", double.class);
+		registerGetter(Player.class, "isFlying", boolean.class);
+		registerGetter(Player.class, "isSneaking", boolean.class);
+		registerGetter(Player.class, "isSprinting", boolean.class);
+		registerGetter(Player.class, "isOnline", boolean.class);
+		registerGetter(Player.class, "isDead", boolean.class);
+		registerGetter(Player.class, "isInsideVehicle", boolean.class);
+	}
+
+	/*
+	 * Bind the given public method through a method handle, skipping it if this server version lacks it
+	 */
+	private static void registerGetter(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+		try {
+			final MethodHandle handle = MethodHandles.publicLookup().findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+			final int type = returnType == boolean.class ? BOOLEAN : returnType == String.class ? STRING : NUMBER;
+
+			getters.put(name, new Getter(owner, handle.asType(MethodType.genericMethodType(parameters.length + 1)), type, parameters.length));
+
+		} catch (final ReflectiveOperationException ex) {
+			// Unsupported on this version
+		}
+	}
+
+	/**
+	 * The compiled condition
+	 */
+	private final Node root;
+
+	/**
+	 * Evaluate the condition, returning null if it needs to be run as JavaScript instead
+	 *
+	 * @param variables
+	 * @return
+	 */
+	Boolean evaluate(Map<String, Object> variables) {
+		try {
+			return (Boolean) this.root.evaluate(variables.get("player"));
+
+		} catch (final Throwable t) {
+			// Let JavaScript evaluate it again and report any errors the usual way
+			return null;
+		}
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Static
+	// ------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Return the compiled condition for the given script, or null if it
+	 * uses anything we do not support and needs to be run as JavaScript
+	 *
+	 * @param javascript
+	 * @return
+	 */
+	static NativeCondition compile(String javascript) {
+		NativeCondition condition = cache.get(javascript);
+
+		if (condition == null) {
+			final Node root = new Parser(javascript).parse();
+
+			condition = root == null ? UNSUPPORTED : new NativeCondition(root);
+
+			if (cache.size() >= CACHE_SIZE)
+				cache.clear();
+
+			cache.put(javascript, condition);
+		}
+
+		return condition == UNSUPPORTED ? null : condition;
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Classes
+	// ------------------------------------------------------------------------------------------------------------
+
+	/*
+	 * Signals syntax the parser does not support, without a stack trace since it is expected
+	 */
+	private static final class UnsupportedSyntaxException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private UnsupportedSyntaxException() {
+			super("Unsupported syntax, falling back to JavaScript", null, false, false);
+		}
+	}
+
+	/*
+	 * A part of the condition, evaluated for the given player
+	 */
+	private interface Node {
+		Object evaluate(Object player) throws Throwable;
+	}
+
+	/*
+	 * A node together with the type it returns
+	 */
+	@RequiredArgsConstructor
+	private static final class Operand {
+		private final Node node;
+		private final int type;
+	}
+
+	/*
+	 * A whitelisted method on the player
+	 */
+	@RequiredArgsConstructor
+	private static final class Getter {
+		private final Class<?> owner;
+		private final MethodHandle handle;
+		private final int type;
+		private final int parameterCount;
+	}
+
+	/*
+	 * Recursive descent parser following JavaScript operator precedence,
+	 * returning null from parse() when the script is not supported
+	 */
+	@RequiredArgsConstructor
+	private static final class Parser {
+
+		private final String input;
+		private int position;
+
+		/*
+		 * Parse the whole script, allowing one trailing semicolon
+		 */
+		Node parse() {
+			try {
+				final Operand operand = this.parseOr();
+
+				this.skipWhitespace();
+
+				if (this.position < this.input.length() && this.input.charAt(this.position) == ';') {
+					this.position++;
+					this.skipWhitespace();
+				}
+
+				return this.position == this.input.length() && operand.type == BOOLEAN ? operand.node : null;
+
+			} catch (final UnsupportedSyntaxException ex) {
+				return null;
+			}
+		}
+
+		private Operand parseOr() {
+			Operand left = this.parseAnd();
+
+			while (this.consume("||")) {
+				final Node first = this.expect(left, BOOLEAN).node;
+				final Node second = this.expect(this.parseAnd(), BOOLEAN).node;
+
+				left = new Operand(player -> (Boolean) first.evaluate(player) || (Boolean) second.evaluate(player), BOOLEAN);
+			}
+
+			return left;
+		}
+
+		private Operand parseAnd() {
+			Operand left = this.parseEquality();
+
+			while (this.consume("&&")) {
+				final Node first = this.expect(left, BOOLEAN).node;
+				final Node second = this.expect(this.parseEquality(), BOOLEAN).node;
+
+				left = new Operand(player -> (Boolean) first.evaluate(player) && (Boolean) second.evaluate(player), BOOLEAN);
+			}
+
+			return left;
+		}
+
+		private Operand parseEquality() {
+			Operand left = this.parseRelational();
+
+			while (true) {
+				final boolean negate;
+
+				if (this.consume("===") || this.consume("=="))
+					negate = false;
+
+				else if (this.consume("!==") || this.consume("!="))
+					negate = true;
+
+				else
+					return left;
+
+				final Operand right = this.parseRelational();
+
+				if (left.type != right.type)
+					throw UNSUPPORTED_SYNTAX;
+
+				final Node first = left.node;
+				final Node second = right.node;
+
+				// Doubles are compared by value so that NaN is not equal to itself, just like in JavaScript
+				if (left.type == NUMBER)
+					left = new Operand(player -> ((Double) first.evaluate(player)).doubleValue() == ((Double) second.evaluate(player)).doubleValue() != negate, BOOLEAN);
+				else
+					left = new Operand(player -> first.evaluate(player).equals(second.evaluate(player)) != negate, BOOLEAN);
+			}
+		}
+
+		private Operand parseRelational() {
+			Operand left = this.parseUnary();
+
+			while (true) {
+				final int mode;
+
+				if (this.consume("<="))
+					mode = 1;
+
+				else if (this.consume(">="))
+					mode = 2;
+
+				else if (this.consume("<"))
+					mode = 3;
+
+				else if (this.consume(">"))
+					mode = 4;
+
+				else
+					return left;
+
+				final Operand right = this.parseUnary();
+
+				if (left.type != right.type || left.type == BOOLEAN)
+					throw UNSUPPORTED_SYNTAX;
+
+				final Node first = left.node;
+				final Node second = right.node;
+
+				if (left.type == NUMBER)
+					left = new Operand(player -> compare((Double) first.evaluate(player), (Double) second.evaluate(player), mode), BOOLEAN);
+				else
+					left = new Operand(player -> compare((String) first.evaluate(player), (String) second.evaluate(player), mode), BOOLEAN);
+			}
+		}
+
+		private Operand parseUnary() {
+			this.skipWhitespace();
+
+			// Make sure we do not take "!=" for a negation
+			if (this.peek('!') && !this.input.startsWith("!=", this.position)) {
+				this.position++;
+
+				final Node node = this.expect(this.parseUnary(), BOOLEAN).node;
+
+				return new Operand(player -> !(Boolean) node.evaluate(player), BOOLEAN);
+			}
+
+			if (this.peek('-') && !this.input.startsWith("--", this.position)) {
+				this.position++;
+
+				final Node node = this.expect(this.parseUnary(), NUMBER).node;
+
+				return new Operand(player -> -(Double) node.evaluate(player), NUMBER);
+			}
+
+			return this.parsePrimary();
+		}
+
+		private Operand parsePrimary() {
+			this.skipWhitespace();
+
+			if (this.position >= this.input.length())
+				throw UNSUPPORTED_SYNTAX;
+
+			final char c = this.input.charAt(this.position);
+
+			if (c == '(') {
+				this.position++;
+
+				final Operand operand = this.parseOr();
+
+				if (!this.consume(")"))
+					throw UNSUPPORTED_SYNTAX;
+
+				return operand;
+			}
+
+			if (c == '"' || c == '\'') {
+				final String value = this.parseString(c);
+
+				return new Operand(player -> value, STRING);
+			}
+
+			if (c >= '0' && c <= '9') {
+				final Double value = this.parseNumber();
+
+				return new Operand(player -> value, NUMBER);
+			}
+
+			final String identifier = this.parseIdentifier();
+
+			if (identifier.equals("true"))
+				return new Operand(player -> Boolean.TRUE, BOOLEAN);
+
+			if (identifier.equals("false"))
+				return new Operand(player -> Boolean.FALSE, BOOLEAN);
+
+			if (identifier.equals("player") && this.consume("."))
+				return this.parseGetter();
+
+			throw UNSUPPORTED_SYNTAX;
+		}
+
+		/*
+		 * Parse a whitelisted method call on the player, after the dot
+		 */
+		private Operand parseGetter() {
+			this.skipWhitespace();
+
+			final Getter getter = getters.get(this.parseIdentifier());
+
+			if (getter == null || !this.consume("("))
+				throw UNSUPPORTED_SYNTAX;
+
+			final Node argument;
+
+			if (getter.parameterCount == 1) {
+				argument = this.expect(this.parseOr(), STRING).node;
+
+			} else
+				argument = null;
+
+			if (!this.consume(")"))
+				throw UNSUPPORTED_SYNTAX;
+
+			return new Operand(player -> {
+				if (!getter.owner.isInstance(player))
+					throw FALLBACK;
+
+				final Object result = argument == null ? getter.handle.invokeExact(player) : getter.handle.invokeExact(player, argument.evaluate(player));
+
+				// JavaScript would treat null as a different type
+				if (result == null)
+					throw FALLBACK;
+
+				return getter.type == NUMBER ? ((Number) result).doubleValue() : result;
+
+			}, getter.type);
+		}
+
+		/*
+		 * Parse a quoted string, only supporting simple escapes
+		 */
+		private String parseString(char quote) {
+			final StringBuilder builder = new StringBuilder();
+
+			for (int i = this.position + 1; i < this.input.length(); i++) {
+				char c = this.input.charAt(i);
+
+				if (c == quote) {
+					this.position = i + 1;
+
+					return builder.toString();
+				}
+
+				if (c == '\n' || c == '\r')
+					break;
+
+				if (c == '\\') {
+					if (++i >= this.input.length())
+						break;
+
+					c = this.input.charAt(i);
+
+					if (c == 'n')
+						c = '\n';
+
+					else if (c == 't')
+						c = '\t';
+
+					else if (c == 'r')
+						c = '\r';
+
+					else if (c != '\\' && c != '\'' && c != '"')
+						break;
+				}
+
+				builder.append(c);
+			}
+
+			throw UNSUPPORTED_SYNTAX;
+		}
+
+		/*
+		 * Parse a decimal number such as 5 or 2.5, leaving octal, hex and exponents to JavaScript
+		 */
+		private Double parseNumber() {
+			final int start = this.position;
+
+			while (this.position < this.input.length() && Character.isDigit(this.input.charAt(this.position)))
+				this.position++;
+
+			if (this.position - start > 1 && this.input.charAt(start) == '0')
+				throw UNSUPPORTED_SYNTAX;
+
+			if (this.peek('.')) {
+				this.position++;
+
+				final int fractionStart = this.position;
+
+				while (this.position < this.input.length() && Character.isDigit(this.input.charAt(this.position)))
+					this.position++;
+
+				if (this.position == fractionStart)
+					throw UNSUPPORTED_SYNTAX;
+			}
+
+			if (this.position < this.input.length() && Character.isJavaIdentifierPart(this.input.charAt(this.position)))
+				throw UNSUPPORTED_SYNTAX;
+
+			return Double.valueOf(this.input.substring(start, this.position));
+		}
+
+		private String parseIdentifier() {
+			final int start = this.position;
+
+			while (this.position < this.input.length() && Character.isJavaIdentifierPart(this.input.charAt(this.position)))
+				this.position++;
+
+			if (start == this.position || !Character.isJavaIdentifierStart(this.input.charAt(start)))
+				throw UNSUPPORTED_SYNTAX;
+
+			return this.input.substring(start, this.position);
+		}
+
+		/*
+		 * Skip whitespace and consume the given token if it comes next
+		 */
+		private boolean consume(String token) {
+			this.skipWhitespace();
+
+			if (this.input.startsWith(token, this.position)) {
+				this.position += token.length();
+
+				return true;
+			}
+
+			return false;
+		}
+
+		private boolean peek(char c) {
+			return this.position < this.input.length() && this.input.charAt(this.position) == c;
+		}
+
+		private void skipWhitespace() {
+			while (this.position < this.input.length() && Character.isWhitespace(this.input.charAt(this.position)))
+				this.position++;
+		}
+
+		private Operand expect(Operand operand, int type) {
+			if (operand.type != type)
+				throw UNSUPPORTED_SYNTAX;
+
+			return operand;
+		}
+
+		private static boolean compare(double first, double second, int mode) {
+			return mode == 1 ? first <= second : mode == 2 ? first >= second : mode == 3 ? first < second : first > second;
+		}
+
+		private static boolean compare(String first, String second, int mode) {
+			final int result = first.compareTo(second);
+
+			return mode == 1 ? result <= 0 : mode == 2 ? result >= 0 : mode == 3 ? result < 0 : result > 0;
+		}
+	}
+}
@@ -1,11 +1,16 @@
 package org.mineacademy.fo.model;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 import org.bukkit.entity.Player;
@@ -44,10 +49,32 @@ import net.md_5.bungee.api.chat.BaseComponent;
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 public abstract class PacketListener {
 
+	/**
+	 * How many recent JSON chat messages we remember converted to legacy text
+	 */
+	public static int LEGACY_CACHE_SIZE = 256;
+
+	/**
+	 * Longer JSON chat messages are converted each time instead of being remembered
+	 */
+	public static int LEGACY_CACHE_MAX_LENGTH = 2_048;
+
 	/**
 	 * Stores 1.19 system chat packet constructor and Adventure stuff for maximum performance
 	 */
-	private static Class<?> textComponentClass;
+	private static volatile Class<?> textComponentClass;
+
+	/**
+	 * Adventure methods bound once on first use, see {@link SimpleChatAdapter}. Netty threads may race
+	 * to bind them, which is harmless since they all bind the same methods.
+	 */
+	private static volatile MethodHandle serializerHandle, contentHandle, childrenHandle;
+
+	/**
+	 * JSON message - Legacy text, since many players receive the same packets,
+	 * cleared when full so that netty threads never wait for each other
+	 */
+	private static final Map<String, String> legacyCache = new ConcurrentHashMap<>();
 
 	/**
 	 * Called automatically when you use \@AutoRegister, inject
@@ -264,6 +291,11 @@ public abstract class PacketListener {
 				this.processedPlayers.add(playerName);
 
 				final String legacyText = this.compileChatMessage(event);
+
+				// Not interesting for the filter
+				if (legacyText == null)
+					return;
+
 				String parsedText = legacyText;
 
 				try {
@@ -287,6 +319,7 @@ public abstract class PacketListener {
 				if (this.jsonMessage != null && !this.jsonMessage.isEmpty())
 					this.jsonMessage = this.onJsonMessage(this.jsonMessage);
 
+				// Only serialize the packet again when its text actually changed
 				if (!legacyText.equals(parsedText))
 					this.writeEditedMessage(parsedText, event);
 
@@ -296,7 +329,8 @@ public abstract class PacketListener {
 		}
 
 		/*
-		 * Read the chat message in unpacked format from the event
+		 * Read the chat message in unpacked format from the event,
+		 * or return null if the filter is not interested in it
 		 */
 		private String compileChatMessage(PacketEvent event) {
 
@@ -318,7 +352,7 @@ public abstract class PacketListener {
 					}
 
 					if (this.jsonMessage != null)
-						return Remain.toLegacyText(this.jsonMessage, false);
+						return this.isInterested(this.jsonMessage) ? toLegacyText(this.jsonMessage) : null;
 
 					try {
 						final StructureModifier<Object> adventureModifier = event.getPacket().getModifier().withType(AdventureComponentConverter.getComponentClass());
@@ -326,13 +360,17 @@ public abstract class PacketListener {
 						if (!adventureModifier.getFields().isEmpty()) {
 							final Object comp = adventureModifier.read(0);
 
-							final Class<?> serializerClass = ReflectionUtil.lookupClass("net.kyori.adventure.text.serializer.gson.GsonComponentSerializer");
-							final Object gsonInstance = ReflectionUtil.invokeStatic(serializerClass, "gson");
+							if (serializerHandle == null) {
+								final Class<?> serializerClass = ReflectionUtil.lookupClass("net.kyori.adventure.text.serializer.gson.GsonComponentSerializer");
+								final Object gsonInstance = ReflectionUtil.invokeStatic(serializerClass, "gson");
+
+								final Class<?> componentClass = ReflectionUtil.lookupClass("net.kyori.adventure.text.Component");
+								final Method gsonMethod = ReflectionUtil.getMethod(gsonInstance.getClass(), "serialize", componentClass);
 
-							final Class<?> componentClass = ReflectionUtil.lookupClass("net.kyori.adventure.text.Component");
-							final Method gsonMethod = ReflectionUtil.getMethod(gsonInstance.getClass(), "serialize", componentClass);
+								serializerHandle = MethodHandles.lookup().unreflect(gsonMethod).bindTo(gsonInstance);
+							}
 
-							final String json = ReflectionUtil.invoke(gsonMethod, gsonInstance, comp);
+							final String json = (String) serializerHandle.invoke(comp);
 							this.jsonMessage = WrappedChatComponent.fromJson(json).getJson();
 						}
 
@@ -344,6 +382,9 @@ public abstract class PacketListener {
 					final Object adventureContent = ReflectionUtil.getFieldContent(event.getPacket().getHandle(), "adventure$content");
 
 					if (adventureContent != null) {
+						if (this.jsonMessage != null && !this.isInterested(this.jsonMessage))
+							return null;
+
 						final List<String> contents = new ArrayList<>();
 
 						this.mergeChildren(adventureContent, contents);
@@ -402,9 +443,12 @@ public abstract class PacketListener {
 				if (this.jsonMessage.length() < 50_000) {
 					final String legacyText;
 
+					if (!this.isInterested(this.jsonMessage))
+						return null;
+
 					// Catch errors from other plugins and silence them
 					try {
-						legacyText = Remain.toLegacyText(this.jsonMessage, false);
+						legacyText = toLegacyText(this.jsonMessage);
 
 					} catch (final Throwable t) {
 						return "";
@@ -420,18 +464,31 @@ public abstract class PacketListener {
 		 * Helper method to get content of all children of the given component
 		 */
 		private void mergeChildren(Object component, List<String> contents) {
-			final Method contentMethod = ReflectionUtil.getMethod(component.getClass(), "content");
-			final Method childrenMethod = ReflectionUtil.getMethod(component.getClass(), "children");
+			if (textComponentClass == null) {
+				final Class<?> textComponent = ReflectionUtil.lookupClass("net.kyori.adventure.text.TextComponent");
 
-			if (textComponentClass == null)
-				textComponentClass = ReflectionUtil.lookupClass("net.kyori.adventure.text.TextComponent");
+				try {
+					contentHandle = MethodHandles.publicLookup().findVirtual(textComponent, "content", MethodType.methodType(String.class));
+					childrenHandle = MethodHandles.publicLookup().findVirtual(textComponent, "children", MethodType.methodType(List.class));
 
-			if (textComponentClass.isAssignableFrom(component.getClass())) {
-				contents.add(ReflectionUtil.invoke(contentMethod, component));
+				} catch (final ReflectiveOperationException ex) {
+					throw new FoException(ex, "Unable to find Adventure TextComponent methods");
+				}
 
-				for (final Object child : (List<?>) ReflectionUtil.invoke(childrenMethod, component))
-					mergeChildren(child, contents);
+				// Written last, so threads seeing it also see the handles above
+				textComponentClass = textComponent;
 			}
+
+			if (textComponentClass.isAssignableFrom(component.getClass()))
+				try {
+					contents.add((String) contentHandle.invoke(component));
+
+					for (final Object child : (List<?>) childrenHandle.invoke(component))
+						mergeChildren(child, contents);
+
+				} catch (final Throwable t) {
+					throw new FoException(t, "Unable to read Adventure component " + component);
+				}
 		}
 
 		/*
@@ -474,6 +531,20 @@ public abstract class PacketListener {
 				packet.getStrings().writeSafely(0, SerializedMap.of("text", this.jsonMessage.substring(1, this.jsonMessage.length() - 1)).toJson());
 		}
 
+		/**
+		 * Called automatically before we decipher the chat message from the packet's JSON.
+		 * <p>
+		 * Return false to let the packet through without converting it to legacy text
+		 * and calling {@link #onMessage(String)}, such as when the JSON does not contain
+		 * anything your filter looks for.
+		 *
+		 * @param jsonMessage
+		 * @return
+		 */
+		protected boolean isInterested(final String jsonMessage) {
+			return true;
+		}
+
 		/**
 		 * Called automatically when we receive and decipher a chat message packet.
 		 * <p>
@@ -564,4 +635,25 @@ public abstract class PacketListener {
 			throw new FoException("Override onPacketReceiving to handle sending server>client packet type " + this.type);
 		}
 	}
+
+	/*
+	 * Convert the JSON message to legacy text, remembering recent conversions
+	 */
+	private static String toLegacyText(String jsonMessage) {
+		if (jsonMessage.length() > LEGACY_CACHE_MAX_LENGTH)
+			return Remain.toLegacyText(jsonMessage, false);
+
+		String legacyText = legacyCache.get(jsonMessage);
+
+		if (legacyText == null) {
+			legacyText = Remain.toLegacyText(jsonMessage, false);
+
+			if (legacyCache.size() >= LEGACY_CACHE_SIZE)
+				legacyCache.clear();
+
+			legacyCache.put(jsonMessage, legacyText);
+		}
+
+		return legacyText;
+	}
 }
@@ -0,0 +1,156 @@
+package org.mineacademy.fo.model;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.entity.Player;
+import org.mineacademy.fo.ChatUtil;
+import org.mineacademy.fo.ChatUtil.SimilarityProfile;
+import org.mineacademy.fo.Valid;
+
+import lombok.NonNull;
+
+/**
+ * Represents the last messages of a player kept for comparing new messages
+ * with them, such as when checking for spam using {@link ChatUtil#getSimilarityPercentage(String, String)}.
+ *
+ * Messages are prepared once when added so each comparison reuses them.
+ */
+public final class RecentMessages {
+
+	/**
+	 * How many messages we remember for each player in {@link #getFor(Player)}
+	 */
+	public static int DEFAULT_CAPACITY = 10;
+
+	/**
+	 * Player unique id - Their recent messages
+	 */
+	private static final Map<UUID, RecentMessages> playerMessages = new ConcurrentHashMap<>();
+
+	/**
+	 * The messages, the oldest one is overwritten when full
+	 */
+	private final SimilarityProfile[] messages;
+
+	/**
+	 * Where the next message is stored
+	 */
+	private int nextIndex;
+
+	/**
+	 * How many messages we have
+	 */
+	private int size;
+
+	/**
+	 * Create a new empty ring remembering up to the given amount of messages
+	 *
+	 * @param capacity
+	 */
+	public RecentMessages(int capacity) {
+		Valid.checkBoolean(capacity > 0, "Capacity must be greater than 0, got " + capacity);
+
+		this.messages = new SimilarityProfile[capacity];
+	}
+
+	/**
+	 * Remember the message, forgetting the oldest one if full
+	 *
+	 * @param message
+	 */
+	public synchronized void add(@NonNull String message) {
+		this.messages[this.nextIndex] = SimilarityProfile.of(message);
+		this.nextIndex = (this.nextIndex + 1) % this.messages.length;
+
+		if (this.size < this.messages.length)
+			this.size++;
+	}
+
+	/**
+	 * Return the highest similarity (a double within 0.00 and 1.00) of the message
+	 * to any of the recent messages, or 0 if we have none
+	 *
+	 * @param message
+	 * @return
+	 */
+	public synchronized double getHighestSimilarity(@NonNull String message) {
+		final SimilarityProfile profile = SimilarityProfile.of(message);
+		double highest = 0;
+
+		for (int i = 0; i < this.size; i++)
+			highest = Math.max(highest, profile.getSimilarityPercentage(this.getNewest(i)));
+
+		return highest;
+	}
+
+	/**
+	 * Return true if the message is at least as similar as the threshold to any
+	 * of the recent messages, comparing with the newest messages first
+	 *
+	 * @param message
+	 * @param threshold a double within 0.00 and 1.00
+	 * @return
+	 */
+	public synchronized boolean isSimilar(@NonNull String message, double threshold) {
+		final SimilarityProfile profile = SimilarityProfile.of(message);
+
+		for (int i = 0; i < this.size; i++)
+			if (profile.isSimilar(this.getNewest(i), threshold))
+				return true;
+
+		return false;
+	}
+
+	/*
+	 * Return the message added the given amount of messages before the newest one
+	 */
+	private SimilarityProfile getNewest(int age) {
+		return this.messages[Math.floorMod(this.nextIndex - 1 - age, this.messages.length)];
+	}
+
+	/**
+	 * Return how many messages we remember
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Forget all messages
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < this.messages.length; i++)
+			this.messages[i] = null;
+
+		this.nextIndex = 0;
+		this.size = 0;
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Static
+	// ------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Return the recent messages of the given player, remembering up to
+	 * {@link #DEFAULT_CAPACITY} messages. They are forgotten when the player quits.
+	 *
+	 * @param player
+	 * @return
+	 */
+	public static RecentMessages getFor(@NonNull Player player) {
+		return playerMessages.computeIfAbsent(player.getUniqueId(), uniqueId -> new RecentMessages(DEFAULT_CAPACITY));
+	}
+
+	/**
+	 * Forget recent messages of the given player, called automatically when they quit
+	 *
+	 * @param player
+	 */
+	public static void removeFor(@NonNull Player player) {
+		playerMessages.remove(player.getUniqueId());
+	}
+}
@@ -0,0 +1,107 @@
+package org.mineacademy.fo.model;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mineacademy.fo.Valid;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Represents how long the value of a custom variable or {@link SimpleExpansion}
+ * stays valid before {@link Variables} needs to resolve it again.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class RefreshPolicy {
+
+	/**
+	 * The value is resolved each time it is used, this is the default
+	 */
+	public static final RefreshPolicy ALWAYS = new RefreshPolicy(0, null);
+
+	/**
+	 * The value never changes and is only resolved once, or once per player
+	 * for variables with {@link Variables.Scope#RECEIVER}
+	 */
+	public static final RefreshPolicy CONSTANT = new RefreshPolicy(-1, null);
+
+	/**
+	 * The value is resolved at most once per server tick (50ms)
+	 */
+	public static final RefreshPolicy TICK = new RefreshPolicy(50, null);
+
+	/**
+	 * How long the value is valid in milliseconds, 0 to never cache or -1 to cache forever
+	 */
+	private final long durationMillis;
+
+	/**
+	 * The event that invalidates the value when called from {@link Variables#invalidate(String)}, or null
+	 */
+	private final String event;
+
+	/**
+	 * Return true if the value should be cached at all
+	 *
+	 * @return
+	 */
+	public boolean isCached() {
+		return this.durationMillis != 0 || this.event != null;
+	}
+
+	/**
+	 * Return the time in milliseconds when a value resolved now expires,
+	 * or {@link Long#MAX_VALUE} if it only expires on the event or never
+	 *
+	 * @return
+	 */
+	public long getExpirationTime() {
+		return this.durationMillis > 0 ? System.currentTimeMillis() + this.durationMillis : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Return a copy of this policy that is also invalidated when the given event is called
+	 * using {@link Variables#invalidate(String)}
+	 *
+	 * @param event
+	 * @return
+	 */
+	public RefreshPolicy orUntil(@NonNull String event) {
+		return new RefreshPolicy(this.durationMillis == 0 ? -1 : this.durationMillis, event);
+	}
+
+	@Override
+	public String toString() {
+		return "RefreshPolicy{" + (this.durationMillis == 0 ? "always" : this.durationMillis == -1 ? "constant" : this.durationMillis + "ms") + (this.event != null ? ", event=" + this.event : "") + "}";
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Static
+	// ------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Cache the value for the given duration
+	 *
+	 * @param duration
+	 * @param unit
+	 * @return
+	 */
+	public static RefreshPolicy every(long duration, @NonNull TimeUnit unit) {
+		Valid.checkBoolean(duration > 0, "Refresh duration must be greater than 0, got " + duration);
+
+		return new RefreshPolicy(unit.toMillis(duration), null);
+	}
+
+	/**
+	 * Cache the value until the given event is called using {@link Variables#invalidate(String)}
+	 *
+	 * @param event
+	 * @return
+	 */
+	public static RefreshPolicy untilEvent(@NonNull String event) {
+		return new RefreshPolicy(-1, event);
+	}
+}
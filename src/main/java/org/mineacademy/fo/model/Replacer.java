@@ -1,20 +1,71 @@
 package org.mineacademy.fo.model;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 
-import org.mineacademy.fo.Common;
+import org.mineacademy.fo.Valid;
 import org.mineacademy.fo.collection.SerializedMap;
 
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
 
 /**
  * An elegant way to find {variables} and replace them.
+ *
+ * Messages are scanned once and each %variable% or {variable} is looked up
+ * among the given pairs, see {@link VariableTemplate}. One-off replacements are not
+ * cached, use {@link #compile(String)} for messages you send repeatedly with different values.
  */
-@AllArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
 public final class Replacer {
 
+	/**
+	 * The parsed message
+	 */
+	@Getter
+	private final VariableTemplate template;
+
+	/**
+	 * Replace all variables in the {@link SerializedMap#ofArray(Object...)} format
+	 * adding {} to them if they do not contain it already
+	 *
+	 * @param replacements
+	 * @return
+	 */
+	public String replace(Object... replacements) {
+		return this.template.render(toValues(replacements)::get);
+	}
+
+	/**
+	 * Replace key pairs in the message
+	 *
+	 * @param variables
+	 * @return
+	 */
+	public String replace(@NonNull SerializedMap variables) {
+		return this.template.render(toValues(variables)::get);
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Static
+	// ------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Parse the message once so that its variables can be replaced
+	 * repeatedly with different values
+	 *
+	 * @param message
+	 * @return
+	 */
+	public static Replacer compile(@NonNull String message) {
+		return new Replacer(VariableTemplate.compile(message));
+	}
+
 	/**
 	 * Replace all variables in the {@link SerializedMap#ofArray(Object...)} format
 	 * adding {} to them if they do not contain it already
@@ -24,10 +75,7 @@ public final class Replacer {
 	 * @return
 	 */
 	public static List<String> replaceArray(List<String> list, Object... replacements) {
-		String joined = String.join("%FLPV%", list);
-		joined = replaceArray(joined, replacements);
-
-		return java.util.Arrays.asList(joined.split("%FLPV%"));
+		return replaceLines(list, toValues(replacements));
 	}
 
 	/**
@@ -39,9 +87,7 @@ public final class Replacer {
 	 * @return
 	 */
 	public static String replaceArray(String message, Object... replacements) {
-		final SerializedMap map = SerializedMap.ofArray(replacements);
-
-		return replaceVariables(message, map);
+		return replace(message, toValues(replacements));
 	}
 
 	/**
@@ -53,10 +99,7 @@ public final class Replacer {
 	 * @return
 	 */
 	public static List<String> replaceVariables(List<String> list, SerializedMap replacements) {
-		String joined = String.join("%FLPV%", list);
-		joined = replaceVariables(joined, replacements);
-
-		return java.util.Arrays.asList(joined.split("%FLPV%"));
+		return replaceLines(list, toValues(replacements));
 	}
 
 	/**
@@ -67,57 +110,80 @@ public final class Replacer {
 	 * @return
 	 */
 	public static String replaceVariables(String message, SerializedMap variables) {
-		if (message == null)
-			return null;
+		return replace(message, toValues(variables));
+	}
 
-		if ("".equals(message))
-			return "";
+	/*
+	 * Replace variables in each line separately
+	 */
+	private static List<String> replaceLines(List<String> list, Map<String, String> values) {
+		final List<String> replaced = new ArrayList<>(list.size());
 
-		message = replaceVariables(message, variables, Variables.VARIABLE_PATTERN.matcher(message));
-		message = replaceVariables(message, variables, Variables.BRACKET_VARIABLE_PATTERN.matcher(message));
+		for (final String line : list)
+			replaced.add(replace(line, values));
 
-		return message;
+		return replaced;
 	}
 
-	private static String replaceVariables(String message, SerializedMap variables, Matcher matcher) {
-		while (matcher.find()) {
-			String variable = matcher.group(1);
+	/*
+	 * Replace variables in the message with the given values
+	 */
+	private static String replace(String message, Map<String, String> values) {
+		if (message == null)
+			return null;
+
+		if (message.isEmpty() || values.isEmpty())
+			return message;
+
+		return VariableTemplate.parse(message).render(values::get);
+	}
 
-			boolean frontSpace = false;
-			boolean backSpace = false;
+	/*
+	 * Convert the key-value pairs into variable names without brackets and their values,
+	 * the later pair wins when two keys have the same name
+	 */
+	private static Map<String, String> toValues(Object... replacements) {
 
-			if (variable.startsWith("+")) {
-				variable = variable.substring(1);
+		// If the first argument is a map already, treat as such
+		if (replacements != null && replacements.length == 1)
+			return toValues(SerializedMap.ofArray(replacements));
 
-				frontSpace = true;
-			}
+		final Map<String, Object> pairs = new LinkedHashMap<>();
 
-			if (variable.endsWith("+")) {
-				variable = variable.substring(0, variable.length() - 1);
+		if (replacements != null)
+			for (int i = 0; i < replacements.length; i++) {
+				final Object key = replacements[i];
+				Valid.checkBoolean(key instanceof String, "Expected String, got " + key.getClass().getSimpleName() + ": " + key);
 
-				backSpace = true;
+				if (++i < replacements.length)
+					pairs.put((String) key, replacements[i]);
 			}
 
-			String value = null;
+		return toValues(pairs);
+	}
 
-			for (final Map.Entry<String, Object> entry : variables.entrySet()) {
-				String variableKey = entry.getKey();
+	/*
+	 * See toValues(Object...)
+	 */
+	private static Map<String, String> toValues(SerializedMap variables) {
+		return toValues(variables.asMap());
+	}
 
-				variableKey = variableKey.startsWith("{") ? variableKey.substring(1) : variableKey;
-				variableKey = variableKey.endsWith("}") ? variableKey.substring(0, variableKey.length() - 1) : variableKey;
+	/*
+	 * See toValues(Object...)
+	 */
+	private static Map<String, String> toValues(Map<String, Object> variables) {
+		final Map<String, String> values = new HashMap<>(variables.size() * 2);
 
-				if (variableKey.equals(variable))
-					value = entry.getValue() == null ? "null" : entry.getValue().toString();
-			}
+		for (final Map.Entry<String, Object> entry : variables.entrySet()) {
+			String key = entry.getKey();
 
-			if (value != null) {
-				final boolean emptyColorless = Common.stripColors(value).isEmpty();
-				value = value.isEmpty() ? "" : (frontSpace && !emptyColorless ? " " : "") + Common.colorize(value) + (backSpace && !emptyColorless ? " " : "");
+			key = key.startsWith("{") ? key.substring(1) : key;
+			key = key.endsWith("}") ? key.substring(0, key.length() - 1) : key;
 
-				message = message.replace(matcher.group(), value);
-			}
+			values.put(key, entry.getValue() == null ? "null" : entry.getValue().toString());
 		}
 
-		return message;
+		return values;
 	}
 }
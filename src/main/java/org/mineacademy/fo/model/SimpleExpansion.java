@@ -1,5 +1,8 @@
 package org.mineacademy.fo.model;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import org.bukkit.command.CommandSender;
 import org.mineacademy.fo.Common;
 
@@ -51,6 +54,48 @@ public abstract class SimpleExpansion {
 	 */
 	protected abstract String onReplace(@NonNull CommandSender sender, String identifier);
 
+	/**
+	 * Return the first _ separated segments of all identifiers this expansion replaces,
+	 * such as "arena" for {arena_name} and {arena_players}. Variables then only asks
+	 * this expansion for identifiers starting with these prefixes.
+	 *
+	 * Return an empty collection to be asked for every identifier, which is the default.
+	 * The prefixes are read when the expansion is registered and must not change afterwards.
+	 *
+	 * @return
+	 */
+	public Collection<String> getPrefixes() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Return whether the value of the given identifier depends on who receives the message.
+	 *
+	 * Override and return {@link Variables.Scope#GLOBAL} for identifiers that are the
+	 * same for everyone, such as arena names, so that they are only resolved once
+	 * when the message is broadcasted using {@link Variables.BroadcastContext}.
+	 *
+	 * @param identifier
+	 * @return
+	 */
+	public Variables.Scope getScope(String identifier) {
+		return Variables.Scope.RECEIVER;
+	}
+
+	/**
+	 * Return how long the value of the given identifier stays valid. Variables resolves
+	 * it again after the value expires, or when the event of the policy is called.
+	 *
+	 * Values are cached per receiver, or once for everyone for identifiers with
+	 * {@link Variables.Scope#GLOBAL} scope.
+	 *
+	 * @param identifier
+	 * @return
+	 */
+	public RefreshPolicy getRefreshPolicy(String identifier) {
+		return RefreshPolicy.ALWAYS;
+	}
+
 	/**
 	 * Automatically joins the {@link #args} from the given index
 	 *
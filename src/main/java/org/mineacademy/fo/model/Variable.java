@@ -1,6 +1,7 @@
 package org.mineacademy.fo.model;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -34,6 +35,16 @@ public final class Variable extends YamlConfig {
 	 */
 	private static final ConfigItems<Variable> loadedVariables = ConfigItems.fromFolder("variables", Variable.class);
 
+	/**
+	 * Lowercase variable key - Variable, keys may differ from file names so we index them separately
+	 */
+	private static volatile Map<String, Variable> variablesByKey = new HashMap<>();
+
+	/**
+	 * Are we loading variables in bulk? Then we index them all once at the end instead of one by one
+	 */
+	private static volatile boolean bulkLoading = false;
+
 	/**
 	 * The kind of this variable
 	 */
@@ -171,6 +182,10 @@ public final class Variable extends YamlConfig {
 		// Test for key validity
 		if (!Common.regExMatch("^\\w+$", this.key))
 			throw new IllegalArgumentException("(DO NOT REPORT, PLEASE FIX YOURSELF) The 'Key' variable in " + this.getFileName() + " must only contains letters, numbers or underscores. Do not write [] or {} there!");
+
+		// The key may have changed when only this file is reloaded
+		if (!bulkLoading)
+			indexVariable(this);
 	}
 
 	@Override
@@ -414,14 +429,32 @@ public final class Variable extends YamlConfig {
 	 * @param name
 	 */
 	public static void createVariable(String name) {
-		loadedVariables.loadOrCreateItem(name);
+		bulkLoading = true;
+
+		try {
+			loadedVariables.loadOrCreateItem(name);
+
+		} finally {
+			bulkLoading = false;
+		}
+
+		indexVariables();
 	}
 
 	/**
 	 * Load all variables from variables/ folder
 	 */
 	public static void loadVariables() {
-		loadedVariables.loadItems();
+		bulkLoading = true;
+
+		try {
+			loadedVariables.loadItems();
+
+		} finally {
+			bulkLoading = false;
+		}
+
+		indexVariables();
 	}
 
 	/**
@@ -431,6 +464,32 @@ public final class Variable extends YamlConfig {
 	 */
 	public static void removeVariable(final Variable variable) {
 		loadedVariables.removeItem(variable);
+
+		indexVariables();
+	}
+
+	/*
+	 * Rebuild the case insensitive key index, the first variable with a key wins
+	 */
+	private static synchronized void indexVariables() {
+		final Map<String, Variable> index = new HashMap<>();
+
+		for (final Variable variable : getVariables())
+			index.putIfAbsent(variable.getKey().toLowerCase(), variable);
+
+		variablesByKey = index;
+	}
+
+	/*
+	 * Update the index after the given variable was loaded, replacing the previous key of its file
+	 */
+	private static synchronized void indexVariable(final Variable variable) {
+		final Map<String, Variable> index = new HashMap<>(variablesByKey);
+
+		index.values().removeIf(other -> other == variable || other.getFileName().equals(variable.getFileName()));
+		index.putIfAbsent(variable.getKey().toLowerCase(), variable);
+
+		variablesByKey = index;
 	}
 
 	/**
@@ -450,11 +509,7 @@ public final class Variable extends YamlConfig {
 	 * @return
 	 */
 	public static Variable findVariable(@NonNull final String name) {
-		for (final Variable item : getVariables())
-			if (item.getKey().equalsIgnoreCase(name))
-				return item;
-
-		return null;
+		return variablesByKey.get(name.toLowerCase());
 	}
 
 	/**
@@ -0,0 +1,319 @@
+package org.mineacademy.fo.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.mineacademy.fo.Common;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Represents a message parsed once into literal runs and %variable% or {variable}
+ * slots, so that rendering it only needs to resolve the slots.
+ *
+ * The output is the same as running {@link Variables#VARIABLE_PATTERN} followed
+ * by {@link Variables#BRACKET_VARIABLE_PATTERN} over the message, including the
+ * {+variable+} syntax adding spaces around non-empty values and %variables%
+ * whose values complete a {variable} such as {arena_%player%}.
+ */
+public final class VariableTemplate {
+
+	/**
+	 * How many templates we keep before the cache is cleared to prevent it
+	 * growing indefinitely from messages that already had their placeholders replaced.
+	 */
+	private static final int CACHE_LIMIT = 5_000;
+
+	/**
+	 * Raw message - Parsed template
+	 */
+	private static final Map<String, VariableTemplate> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * The message this template was parsed from
+	 */
+	@Getter
+	private final String source;
+
+	/**
+	 * The literal runs, there is always one more than there are slots
+	 */
+	private final String[] literals;
+
+	/**
+	 * The variable slots between the literal runs
+	 */
+	private final Slot[] slots;
+
+	/**
+	 * The {variables} template for the source used when no %variable% was replaced,
+	 * or null if this already is the {variables} template
+	 */
+	private final VariableTemplate brackets;
+
+	private VariableTemplate(String source, List<String> literals, List<Slot> slots, VariableTemplate brackets) {
+		this.source = source;
+		this.literals = literals.toArray(new String[literals.size()]);
+		this.slots = slots.toArray(new Slot[slots.size()]);
+		this.brackets = brackets;
+	}
+
+	/**
+	 * Return true if this template has any variables to replace
+	 *
+	 * @return
+	 */
+	public boolean hasVariables() {
+		return this.slots.length > 0 || this.brackets != null && this.brackets.hasVariables();
+	}
+
+	/**
+	 * Render this template, calling the resolver for each variable name (without the
+	 * brackets and + signs). If the resolver returns null, the variable is left as-is.
+	 *
+	 * @param resolver
+	 * @return
+	 */
+	public String render(@NonNull Function<String, String> resolver) {
+		return this.render(resolver, false);
+	}
+
+	/**
+	 * Render this template, calling the resolver for each variable name (without the
+	 * brackets and + signs). If the resolver returns null, the variable is left as-is.
+	 *
+	 * By default {+variable+} values made only of colors get no spaces around them,
+	 * set spaceColors to true to add them to any non-empty value as PlaceholderAPI does.
+	 *
+	 * @param resolver
+	 * @param spaceColors
+	 * @return
+	 */
+	public String render(@NonNull Function<String, String> resolver, boolean spaceColors) {
+		if (this.brackets == null)
+			return this.renderSlots(resolver, spaceColors);
+
+		if (this.slots.length == 0)
+			return this.brackets.renderSlots(resolver, spaceColors);
+
+		final StringBuilder builder = new StringBuilder(this.source.length() + 16 * this.slots.length);
+
+		// Nothing replaced, reuse the {variables} template we parsed together with this one
+		if (!this.renderSlots(builder, resolver, spaceColors))
+			return this.brackets.renderSlots(resolver, spaceColors);
+
+		// The result is specific to this render, parse it without caching
+		return parse(builder.toString(), '{', '}', null).renderSlots(resolver, spaceColors);
+	}
+
+	/*
+	 * Render only the slots of this template into a new string
+	 */
+	private String renderSlots(Function<String, String> resolver, boolean spaceColors) {
+		if (this.slots.length == 0)
+			return this.source;
+
+		final StringBuilder builder = new StringBuilder(this.source.length() + 16 * this.slots.length);
+		this.renderSlots(builder, resolver, spaceColors);
+
+		return builder.toString();
+	}
+
+	/*
+	 * Render only the slots of this template into the builder, returning if any of them was replaced
+	 */
+	private boolean renderSlots(StringBuilder builder, Function<String, String> resolver, boolean spaceColors) {
+		boolean replaced = false;
+
+		for (int i = 0; i < this.slots.length; i++) {
+			builder.append(this.literals[i]);
+
+			replaced |= this.slots[i].renderTo(builder, resolver, spaceColors);
+		}
+
+		builder.append(this.literals[this.slots.length]);
+
+		return replaced;
+	}
+
+	@Override
+	public String toString() {
+		return "VariableTemplate{" + this.source + "}";
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Static
+	// ------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Return a cached template for the given message, parsing it if it was not parsed before
+	 *
+	 * @param message
+	 * @return
+	 */
+	public static VariableTemplate compile(@NonNull String message) {
+		VariableTemplate template = cache.get(message);
+
+		if (template == null) {
+			template = parse(message);
+
+			if (cache.size() >= CACHE_LIMIT)
+				cache.clear();
+
+			cache.put(message, template);
+		}
+
+		return template;
+	}
+
+	/**
+	 * Parse the given message without caching it, use this for messages that
+	 * will only be rendered once such as those with values already filled in
+	 *
+	 * @param message
+	 * @return
+	 */
+	public static VariableTemplate parse(@NonNull String message) {
+		return parse(message, '%', '%', parse(message, '{', '}', null));
+	}
+
+	/**
+	 * Clear cached templates
+	 */
+	public static void clearCache() {
+		cache.clear();
+	}
+
+	/*
+	 * Split the message into literals and variables enclosed in the given characters,
+	 * matching the same as [open]([^open close]+)[close] would
+	 */
+	private static VariableTemplate parse(String message, char open, char close, VariableTemplate brackets) {
+		final List<String> literals = new ArrayList<>();
+		final List<Slot> slots = new ArrayList<>();
+		final int length = message.length();
+
+		int literalStart = 0;
+		int index = 0;
+
+		while (index < length) {
+			if (message.charAt(index) != open) {
+				index++;
+
+				continue;
+			}
+
+			int end = index + 1;
+
+			while (end < length) {
+				final char character = message.charAt(end);
+
+				if (character == open || character == close)
+					break;
+
+				end++;
+			}
+
+			// Empty or unclosed, but the character we stopped at may open the next variable
+			if (end == length || message.charAt(end) != close || end == index + 1) {
+				index = end;
+
+				continue;
+			}
+
+			literals.add(message.substring(literalStart, index));
+			slots.add(Slot.of(message.substring(index, end + 1)));
+
+			index = end + 1;
+			literalStart = index;
+		}
+
+		literals.add(message.substring(literalStart));
+
+		return new VariableTemplate(message, literals, slots, brackets);
+	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Classes
+	// ------------------------------------------------------------------------------------------------------------
+
+	/*
+	 * A single variable occurrence in the message
+	 */
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	private static final class Slot {
+
+		/**
+		 * The variable as it appears in the message, including brackets
+		 */
+		private final String raw;
+
+		/**
+		 * The variable name without brackets and + signs
+		 */
+		private final String name;
+
+		/**
+		 * Add a space before the value if it is not empty
+		 */
+		private final boolean frontSpace;
+
+		/**
+		 * Add a space after the value if it is not empty
+		 */
+		private final boolean backSpace;
+
+		/*
+		 * Append the value or the raw variable if it has none, returning true if it had a value
+		 */
+		boolean renderTo(StringBuilder builder, Function<String, String> resolver, boolean spaceColors) {
+			final String value = resolver.apply(this.name);
+
+			if (value == null) {
+				builder.append(this.raw);
+
+				return false;
+			}
+
+			if (!value.isEmpty()) {
+				final boolean space = spaceColors || (this.frontSpace || this.backSpace) && !Common.stripColors(value).isEmpty();
+
+				if (this.frontSpace && space)
+					builder.append(' ');
+
+				builder.append(Common.colorize(value));
+
+				if (this.backSpace && space)
+					builder.append(' ');
+			}
+
+			return true;
+		}
+
+		static Slot of(String raw) {
+			String name = raw.substring(1, raw.length() - 1);
+			boolean frontSpace = false;
+			boolean backSpace = false;
+
+			if (name.startsWith("+")) {
+				name = name.substring(1);
+
+				frontSpace = true;
+			}
+
+			if (name.endsWith("+")) {
+				name = name.substring(0, name.length() - 1);
+
+				backSpace = true;
+			}
+
+			return new Slot(raw, name, frontSpace, backSpace);
+		}
+	}
+}
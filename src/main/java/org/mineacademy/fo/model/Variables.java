@@ -1,14 +1,22 @@
 package org.mineacademy.fo.model;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
@@ -27,6 +35,10 @@ import org.mineacademy.fo.plugin.SimplePlugin;
 import org.mineacademy.fo.remain.Remain;
 import org.mineacademy.fo.settings.SimpleLocalization;
 
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
 /**
  * A simple engine that replaces variables in a message.
  */
@@ -57,10 +69,37 @@ public final class Variables {
 	 */
 	public static final Pattern BRACKET_REL_VARIABLE_PATTERN = Pattern.compile("[({)](rel_)([^}]+)[(})]");
 
+	/**
+	 * How long we cache translated messages for each player
+	 */
+	private static final long MESSAGE_CACHE_MILLIS = 500;
+
 	/**
 	 * Player - [Original Message - Translated Message]
 	 */
-	private static final Map<String, Map<String, String>> cache = ExpiringMap.builder().expiration(500, TimeUnit.MILLISECONDS).build();
+	private static final Map<String, Map<String, String>> cache = ExpiringMap.builder().expiration(MESSAGE_CACHE_MILLIS, TimeUnit.MILLISECONDS).build();
+
+	/**
+	 * Variable - Cached value of global variables with a {@link RefreshPolicy}
+	 */
+	private static final Map<String, CachedValue> globalValueCache = new ConcurrentHashMap<>();
+
+	/**
+	 * Receiver - [Variable - Cached value] of receiver variables with a {@link RefreshPolicy}
+	 */
+	private static final Map<String, Map<String, CachedValue>> receiverValueCache = new ConcurrentHashMap<>();
+
+	/**
+	 * When we last removed expired values from the caches above
+	 */
+	private static volatile long lastValueCachePurge = System.currentTimeMillis();
+
+	/**
+	 * Hardcoded variables that are the same for every receiver
+	 */
+	private static final Set<String> globalHardVariables = new HashSet<>(Arrays.asList(
+			"server_name", "server_version", "nms_version", "timestamp", "date", "date_short", "date_month",
+			"chat_line", "chat_line_smooth", "label"));
 
 	// ------------------------------------------------------------------------------------------------------------
 	// Custom variables
@@ -74,6 +113,16 @@ public final class Variables {
 	 */
 	private static final StrictMap<String, Function<CommandSender, String>> customVariables = new StrictMap<>();
 
+	/**
+	 * Custom variables registered with {@link Scope#GLOBAL}
+	 */
+	private static final Set<String> globalCustomVariables = new HashSet<>();
+
+	/**
+	 * Custom variables registered with a {@link RefreshPolicy} other than {@link RefreshPolicy#ALWAYS}
+	 */
+	private static final Map<String, RefreshPolicy> customVariablePolicies = new HashMap<>();
+
 	/**
 	 * Variables added to Foundation by you or other plugins
 	 *
@@ -85,6 +134,21 @@ public final class Variables {
 	 */
 	private static final StrictList<SimpleExpansion> customExpansions = new StrictList<>();
 
+	/**
+	 * Expansions indexed by their prefixes, rebuilt when expansions are registered or unregistered
+	 */
+	private static volatile ExpansionIndex expansionIndex = new ExpansionIndex(Collections.emptyList());
+
+	/**
+	 * How many expansion lookups found expansions for the identifier prefix
+	 */
+	private static final AtomicLong expansionIndexHits = new AtomicLong();
+
+	/**
+	 * How many expansion lookups only asked expansions without prefixes
+	 */
+	private static final AtomicLong expansionIndexMisses = new AtomicLong();
+
 	/**
 	 * Return the variable for the given key that is a function of replacing
 	 * itself for the player. Returns null if no such variable by key is present.
@@ -107,7 +171,48 @@ public final class Variables {
 	 * @param replacer
 	 */
 	public static void addVariable(String variable, Function<CommandSender, String> replacer) {
+		addVariable(variable, replacer, Scope.RECEIVER);
+	}
+
+	/**
+	 * Register a new variable, see {@link #addVariable(String, Function)}.
+	 * <p>
+	 * Variables with {@link Scope#GLOBAL} are only resolved once per {@link BroadcastContext}
+	 * so the function must return the same value for every command sender.
+	 *
+	 * @param variable
+	 * @param replacer
+	 * @param scope
+	 */
+	public static void addVariable(String variable, Function<CommandSender, String> replacer, Scope scope) {
+		addVariable(variable, replacer, scope, RefreshPolicy.ALWAYS);
+	}
+
+	/**
+	 * Register a new variable, see {@link #addVariable(String, Function, Scope)}.
+	 * <p>
+	 * The value will be cached for as long as the refresh policy allows, per receiver
+	 * or once for everyone for variables with {@link Scope#GLOBAL}.
+	 *
+	 * @param variable
+	 * @param replacer
+	 * @param scope
+	 * @param refreshPolicy
+	 */
+	public static void addVariable(String variable, Function<CommandSender, String> replacer, Scope scope, RefreshPolicy refreshPolicy) {
 		customVariables.override(variable, replacer);
+
+		if (scope == Scope.GLOBAL)
+			globalCustomVariables.add(variable);
+		else
+			globalCustomVariables.remove(variable);
+
+		if (refreshPolicy.isCached())
+			customVariablePolicies.put(variable, refreshPolicy);
+		else
+			customVariablePolicies.remove(variable);
+
+		removeCachedValues0(variable);
 	}
 
 	/**
@@ -118,6 +223,10 @@ public final class Variables {
 	 */
 	public static void removeVariable(String variable) {
 		customVariables.remove(variable);
+		globalCustomVariables.remove(variable);
+		customVariablePolicies.remove(variable);
+
+		removeCachedValues0(variable);
 	}
 
 	/**
@@ -147,6 +256,8 @@ public final class Variables {
 	 */
 	public static void addExpansion(SimpleExpansion expansion) {
 		customExpansions.addIfNotExist(expansion);
+
+		expansionIndex = new ExpansionIndex(customExpansions.getSource());
 	}
 
 	/**
@@ -156,6 +267,11 @@ public final class Variables {
 	 */
 	public static void removeExpansion(SimpleExpansion expansion) {
 		customExpansions.remove(expansion);
+
+		expansionIndex = new ExpansionIndex(customExpansions.getSource());
+
+		globalValueCache.clear();
+		receiverValueCache.clear();
 	}
 
 	/**
@@ -168,6 +284,90 @@ public final class Variables {
 		return customExpansions.contains(expansion);
 	}
 
+	/**
+	 * Return how many expansion lookups found expansions registered for the
+	 * identifier prefix, see {@link SimpleExpansion#getPrefixes()}
+	 *
+	 * @return
+	 */
+	public static long getExpansionIndexHits() {
+		return expansionIndexHits.get();
+	}
+
+	/**
+	 * Return how many expansion lookups found no expansions registered for the
+	 * identifier prefix and only asked expansions without prefixes
+	 *
+	 * @return
+	 */
+	public static long getExpansionIndexMisses() {
+		return expansionIndexMisses.get();
+	}
+
+	/*
+	 * Return expansions that may replace the given identifier, in the order they were registered
+	 */
+	static SimpleExpansion[] getExpansionsFor(String identifier) {
+		final ExpansionIndex index = expansionIndex;
+
+		if (index.prefixed.isEmpty())
+			return index.unprefixed;
+
+		final int underscore = identifier.indexOf('_');
+		final SimpleExpansion[] expansions = index.prefixed.get(underscore == -1 ? identifier : identifier.substring(0, underscore));
+
+		if (expansions != null) {
+			expansionIndexHits.incrementAndGet();
+
+			return expansions;
+		}
+
+		expansionIndexMisses.incrementAndGet();
+
+		return index.unprefixed;
+	}
+
+	/**
+	 * Invalidates cached values of variables and expansions with a {@link RefreshPolicy}
+	 * waiting for the given event, see {@link RefreshPolicy#untilEvent(String)}
+	 *
+	 * @param event
+	 */
+	public static void invalidate(String event) {
+		globalValueCache.values().removeIf(value -> event.equals(value.getEvent()));
+
+		for (final Map<String, CachedValue> values : receiverValueCache.values())
+			values.values().removeIf(value -> event.equals(value.getEvent()));
+
+		cache.clear();
+	}
+
+	/**
+	 * Invalidates cached values of variables and expansions with a {@link RefreshPolicy}
+	 * waiting for the given event only for the given receiver, see {@link RefreshPolicy#untilEvent(String)}
+	 *
+	 * @param event
+	 * @param receiver
+	 */
+	public static void invalidate(String event, CommandSender receiver) {
+		final Map<String, CachedValue> values = receiverValueCache.get(receiver.getName());
+
+		if (values != null)
+			values.values().removeIf(value -> event.equals(value.getEvent()));
+
+		cache.remove(receiver.getName());
+	}
+
+	/*
+	 * Remove cached values of the given variable
+	 */
+	private static void removeCachedValues0(String variable) {
+		globalValueCache.remove(variable);
+
+		for (final Map<String, CachedValue> values : receiverValueCache.values())
+			values.remove(variable);
+	}
+
 	// ------------------------------------------------------------------------------------------------------------
 	// Replacing
 	// ------------------------------------------------------------------------------------------------------------
@@ -231,13 +431,42 @@ public final class Variables {
 	 * @return
 	 */
 	public static String replace(String message, CommandSender sender, Map<String, Object> replacements, boolean colorize, boolean replaceScript) {
+		return replace0(message, sender, replacements, colorize, replaceScript, null);
+	}
+
+	/**
+	 * Replaces variables in the message for each of the receivers, resolving variables
+	 * that do not depend on the receiver only once. See {@link BroadcastContext}.
+	 *
+	 * @param message
+	 * @param receivers
+	 * @param replacements
+	 * @return the replaced message for each receiver, in the iteration order of receivers
+	 */
+	public static <T extends CommandSender> Map<T, String> replaceForAll(String message, Iterable<T> receivers, Map<String, Object> replacements) {
+		final BroadcastContext context = new BroadcastContext(replacements, true, true);
+		final Map<T, String> messages = new LinkedHashMap<>();
+
+		for (final T receiver : receivers)
+			messages.put(receiver, context.replace(message, receiver));
+
+		return messages;
+	}
+
+	/*
+	 * Replaces variables in the message, resolving global variables only once in the given context if not null
+	 */
+	private static String replace0(String message, CommandSender sender, Map<String, Object> replacements, boolean colorize, boolean replaceScript, BroadcastContext context) {
 		if (message == null || message.isEmpty() || message.equals("none"))
 			return "";
 
 		final String original = message;
 		final boolean senderIsPlayer = sender instanceof Player;
 
-		if (senderIsPlayer) {
+		// Broadcasted messages are only rendered once per receiver so we do not cache them
+		final boolean useCache = senderIsPlayer && context == null;
+
+		if (useCache) {
 
 			// Already cached ? Return.
 			final Map<String, String> cached = cache.get(sender.getName());
@@ -249,7 +478,7 @@ public final class Variables {
 
 		// Replace custom variables first
 		if (replacements != null && !replacements.isEmpty())
-			message = Replacer.replaceArray(message, replacements);
+			message = context != null ? context.replaceCustom(message) : Replacer.replaceArray(message, replacements);
 
 		// PlaceholderAPI and MVdWPlaceholderAPI
 		if (senderIsPlayer)
@@ -259,8 +488,10 @@ public final class Variables {
 			message = HookManager.replacePlaceholders(((DiscordSender) sender).getOfflinePlayer(), message);
 
 		// Replace hard variables
-		message = replaceHardVariables0(sender, message, Variables.VARIABLE_PATTERN.matcher(message));
-		message = replaceHardVariables0(sender, message, Variables.BRACKET_VARIABLE_PATTERN.matcher(message));
+		final Resolver resolver = new Resolver(senderIsPlayer ? (Player) sender : null, sender, context != null ? context.globalValues : null);
+
+		// Only cache templates of the raw message, not of values filled in above
+		message = (message.equals(original) ? VariableTemplate.compile(message) : VariableTemplate.parse(message)).render(resolver);
 		message = Messenger.replacePrefixes(message);
 
 		// Custom placeholders
@@ -270,7 +501,8 @@ public final class Variables {
 		if (!message.startsWith("[JSON]") && colorize)
 			message = Common.colorize(message);
 
-		if (senderIsPlayer) {
+		// Do not keep values that change more often than we cache messages
+		if (useCache && !resolver.isVolatileValues()) {
 			final Map<String, String> map = cache.get(sender.getName());
 
 			if (map != null)
@@ -314,64 +546,133 @@ public final class Variables {
 		return message;
 	}
 
-	private static String replaceHardVariables0(CommandSender sender, String message, Matcher matcher) {
-		final Player player = sender instanceof Player ? (Player) sender : null;
+	/*
+	 * Replaces the given variable, storing values that do not depend on the
+	 * receiver to the global values of the resolver if not null
+	 */
+	private static String lookupVariable0(Resolver resolver, String variable) {
+		final CommandSender console = resolver.getSender();
+		String value = resolver.getGlobalValues() != null ? resolver.getGlobalValues().get(variable) : null;
 
-		while (matcher.find()) {
-			String variable = matcher.group(1);
-			boolean frontSpace = false;
-			boolean backSpace = false;
+		if (value != null)
+			return value;
+
+		if (console != null) {
 
-			if (variable.startsWith("+")) {
-				variable = variable.substring(1);
+			// Values with a refresh policy that are still valid
+			final CachedValue cached = getCachedValue0(console, variable);
 
-				frontSpace = true;
+			if (cached != null) {
+				if (cached.isVolatile())
+					resolver.setVolatileValues(true);
+
+				return cached.getValue();
 			}
 
-			if (variable.endsWith("+")) {
-				variable = variable.substring(0, variable.length() - 1);
+			// Replace custom expansions
+			for (final SimpleExpansion expansion : getExpansionsFor(variable)) {
+				value = expansion.replacePlaceholders(console, variable);
+
+				if (value != null) {
+					storeValue0(resolver, variable, value, expansion.getScope(variable), expansion.getRefreshPolicy(variable));
 
-				backSpace = true;
+					return value;
+				}
 			}
 
-			String value = lookupVariable0(player, sender, variable);
+			// Replace custom variables
+			final Function<CommandSender, String> customReplacer = customVariables.get(variable);
+
+			if (customReplacer != null) {
+				value = customReplacer.apply(console);
 
-			if (value != null) {
-				final boolean emptyColorless = Common.stripColors(value).isEmpty();
-				value = value.isEmpty() ? "" : (frontSpace && !emptyColorless ? " " : "") + Common.colorize(value) + (backSpace && !emptyColorless ? " " : "");
+				if (value != null)
+					storeValue0(resolver, variable, value,
+							globalCustomVariables.contains(variable) ? Scope.GLOBAL : Scope.RECEIVER,
+							customVariablePolicies.getOrDefault(variable, RefreshPolicy.ALWAYS));
 
-				message = message.replace(matcher.group(), value);
+				return value;
 			}
 		}
 
-		return message;
+		value = lookupHardVariable0(resolver.getPlayer(), console, variable);
+
+		if (value != null && resolver.getGlobalValues() != null && globalHardVariables.contains(variable))
+			resolver.getGlobalValues().put(variable, value);
+
+		return value;
 	}
 
 	/*
-	 * Replaces the given variable with a few hardcoded within the plugin, see below
+	 * Return the cached value of the variable if it has not yet expired
 	 */
-	private static String lookupVariable0(Player player, CommandSender console, String variable) {
-		GeoResponse geoResponse = null;
+	private static CachedValue getCachedValue0(CommandSender receiver, String variable) {
+		if (globalValueCache.isEmpty() && receiverValueCache.isEmpty())
+			return null;
 
-		if (player != null && Arrays.asList("country_code", "country_name", "region_name", "isp").contains(variable))
-			geoResponse = GeoAPI.getCountry(player.getAddress());
+		CachedValue cached = globalValueCache.get(variable);
 
-		if (console != null) {
+		if (cached == null) {
+			final Map<String, CachedValue> values = receiverValueCache.get(receiver.getName());
 
-			// Replace custom expansions
-			for (final SimpleExpansion expansion : customExpansions) {
-				final String value = expansion.replacePlaceholders(console, variable);
+			cached = values != null ? values.get(variable) : null;
+		}
 
-				if (value != null)
-					return value;
-			}
+		return cached != null && cached.getExpirationTime() > System.currentTimeMillis() ? cached : null;
+	}
 
-			// Replace custom variables
-			final Function<CommandSender, String> customReplacer = customVariables.get(variable);
+	/*
+	 * Store the resolved value to the broadcast context and to the cache if its refresh policy allows
+	 */
+	private static void storeValue0(Resolver resolver, String variable, String value, Scope scope, RefreshPolicy policy) {
+		if (scope == Scope.GLOBAL && resolver.getGlobalValues() != null)
+			resolver.getGlobalValues().put(variable, value);
 
-			if (customReplacer != null)
-				return customReplacer.apply(console);
-		}
+		final boolean isVolatile = policy.getDurationMillis() > 0 && policy.getDurationMillis() < MESSAGE_CACHE_MILLIS;
+
+		if (isVolatile)
+			resolver.setVolatileValues(true);
+
+		if (!policy.isCached())
+			return;
+
+		final CachedValue cached = new CachedValue(value, policy.getExpirationTime(), policy.getEvent(), isVolatile);
+
+		if (scope == Scope.GLOBAL)
+			globalValueCache.put(variable, cached);
+		else
+			receiverValueCache.computeIfAbsent(resolver.getSender().getName(), name -> new ConcurrentHashMap<>()).put(variable, cached);
+
+		purgeValueCache0();
+	}
+
+	/*
+	 * Remove expired values and values of players who left once per minute
+	 */
+	private static void purgeValueCache0() {
+		final long now = System.currentTimeMillis();
+
+		if (now - lastValueCachePurge < 60_000)
+			return;
+
+		lastValueCachePurge = now;
+
+		globalValueCache.values().removeIf(value -> value.getExpirationTime() <= now);
+		receiverValueCache.entrySet().removeIf(entry -> {
+			entry.getValue().values().removeIf(value -> value.getExpirationTime() <= now);
+
+			return entry.getValue().isEmpty() || Bukkit.getPlayerExact(entry.getKey()) == null;
+		});
+	}
+
+	/*
+	 * Replaces the given variable with a few hardcoded within the plugin, see below
+	 */
+	private static String lookupHardVariable0(Player player, CommandSender console, String variable) {
+		GeoResponse geoResponse = null;
+
+		if (player != null && Arrays.asList("country_code", "country_name", "region_name", "isp").contains(variable))
+			geoResponse = GeoAPI.getCountryOrPending(player.getAddress());
 
 		switch (variable) {
 			case "server_name":
@@ -487,4 +788,193 @@ public final class Variables {
 			return player.getAddress() != null ? player.getAddress().toString() : "";
 		}
 	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Classes
+	// ------------------------------------------------------------------------------------------------------------
+
+	/**
+	 * Represents whether a variable depends on who receives the message
+	 */
+	public enum Scope {
+
+		/**
+		 * The value depends on the receiver, such as their name, ping or world
+		 */
+		RECEIVER,
+
+		/**
+		 * The value is the same for every receiver, such as the server name or date
+		 */
+		GLOBAL
+	}
+
+	/*
+	 * Expansions grouped by the first _ separated segment of identifiers they replace
+	 */
+	private static final class ExpansionIndex {
+
+		/**
+		 * Prefix - Expansions with this prefix and those without any prefix, in the order they were registered
+		 */
+		private final Map<String, SimpleExpansion[]> prefixed = new HashMap<>();
+
+		/**
+		 * Expansions without any prefix, in the order they were registered
+		 */
+		private final SimpleExpansion[] unprefixed;
+
+		ExpansionIndex(List<SimpleExpansion> expansions) {
+			final Map<String, List<SimpleExpansion>> byPrefix = new HashMap<>();
+			final List<SimpleExpansion> unprefixed = new ArrayList<>();
+
+			for (final SimpleExpansion expansion : expansions)
+				if (expansion.getPrefixes().isEmpty())
+					unprefixed.add(expansion);
+				else
+					for (final String prefix : expansion.getPrefixes())
+						byPrefix.computeIfAbsent(prefix, key -> new ArrayList<>());
+
+			// Keep the registration order so that the first expansion to return a value wins as before
+			for (final Map.Entry<String, List<SimpleExpansion>> entry : byPrefix.entrySet()) {
+				for (final SimpleExpansion expansion : expansions)
+					if (expansion.getPrefixes().isEmpty() || expansion.getPrefixes().contains(entry.getKey()))
+						entry.getValue().add(expansion);
+
+				this.prefixed.put(entry.getKey(), entry.getValue().toArray(new SimpleExpansion[entry.getValue().size()]));
+			}
+
+			this.unprefixed = unprefixed.toArray(new SimpleExpansion[unprefixed.size()]);
+		}
+	}
+
+	/*
+	 * Resolves variables for one message and receiver
+	 */
+	@Getter
+	@RequiredArgsConstructor
+	private static final class Resolver implements Function<String, String> {
+
+		/**
+		 * The receiver if it is a player, or null
+		 */
+		private final Player player;
+
+		/**
+		 * The receiver
+		 */
+		private final CommandSender sender;
+
+		/**
+		 * The global values of the broadcast context, or null
+		 */
+		private final Map<String, String> globalValues;
+
+		/**
+		 * Did we resolve a value that changes more often than we cache messages?
+		 */
+		@Setter
+		private boolean volatileValues = false;
+
+		@Override
+		public String apply(String variable) {
+			return lookupVariable0(this, variable);
+		}
+	}
+
+	/*
+	 * A value of a variable with a refresh policy
+	 */
+	@Getter
+	@RequiredArgsConstructor
+	private static final class CachedValue {
+
+		/**
+		 * The resolved value
+		 */
+		private final String value;
+
+		/**
+		 * When the value expires in milliseconds
+		 */
+		private final long expirationTime;
+
+		/**
+		 * The event invalidating the value, or null
+		 */
+		private final String event;
+
+		/**
+		 * Does the value change more often than we cache messages?
+		 */
+		private final boolean isVolatile;
+	}
+
+	/**
+	 * A shared context for rendering messages for many receivers, such as when broadcasting.
+	 *
+	 * Variables with {@link Scope#GLOBAL} and the replacements given to the context are only
+	 * resolved once, while PlaceholderAPI and all other variables are resolved for each receiver.
+	 * Results are not stored in the per-player cache used by {@link Variables#replace(String, CommandSender)}.
+	 *
+	 * This class is not thread-safe, create a new context for each broadcast.
+	 */
+	public static final class BroadcastContext {
+
+		/**
+		 * The custom replacements applied to each message
+		 */
+		private final Map<String, Object> replacements;
+
+		/**
+		 * Should we colorize the messages?
+		 */
+		private final boolean colorize;
+
+		/**
+		 * Should we replace JavaScript variables?
+		 */
+		private final boolean replaceScript;
+
+		/**
+		 * Variable name - Value of variables that do not depend on the receiver
+		 */
+		private final Map<String, String> globalValues = new HashMap<>();
+
+		/**
+		 * Original message - Message with replacements applied
+		 */
+		private final Map<String, String> customReplaced = new HashMap<>();
+
+		/**
+		 * Create a new context
+		 *
+		 * @param replacements the custom replacements, may be null
+		 * @param colorize
+		 * @param replaceScript
+		 */
+		public BroadcastContext(Map<String, Object> replacements, boolean colorize, boolean replaceScript) {
+			this.replacements = replacements;
+			this.colorize = colorize;
+			this.replaceScript = replaceScript;
+		}
+
+		/**
+		 * Replace variables in the message for the given receiver
+		 *
+		 * @param message
+		 * @param receiver
+		 * @return
+		 */
+		public String replace(String message, CommandSender receiver) {
+			return replace0(message, receiver, this.replacements, this.colorize, this.replaceScript, this);
+		}
+
+		/*
+		 * Apply custom replacements to the message once
+		 */
+		private String replaceCustom(String message) {
+			return this.customReplaced.computeIfAbsent(message, key -> Replacer.replaceArray(key, this.replacements));
+		}
+	}
 }
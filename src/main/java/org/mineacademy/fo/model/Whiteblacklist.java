@@ -5,7 +5,8 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
 
 import org.mineacademy.fo.Common;
 import org.mineacademy.fo.Valid;
@@ -26,14 +27,20 @@ public final class Whiteblacklist {
 	private final Set<String> items;
 
 	/**
-	 * The list of items in precompiled pattern formats
+	 * Matches items equal to the given one, see {@link #isInList(String)}
+	 */
+	private final MultiMatcher exactMatcher;
+
+	/**
+	 * Matches items the given one starts with, see {@link #isInListStartsWith(String)}
 	 */
-	private final Set<Pattern> patterns;
+	private final MultiMatcher startsWithMatcher;
 
 	/**
-	 * Were patterns compiled?
+	 * Matches items as regular expressions, see {@link #isInListRegex(String)}. Compiled
+	 * in the constructor if we compile as patterns, otherwise when first used
 	 */
-	private final boolean compileAsPatterns;
+	private volatile MultiMatcher regexMatcher;
 
 	/**
 	 * Used for matching items against an item
@@ -73,9 +80,6 @@ public final class Whiteblacklist {
 	 * @param compileAsPatterns shall we precompile the list for maximum performance?
 	 */
 	public Whiteblacklist(@NonNull List<String> items, boolean compileAsPatterns) {
-		this.patterns = new HashSet<>();
-		this.compileAsPatterns = compileAsPatterns;
-
 		if (!items.isEmpty()) {
 			final String firstLine = items.get(0);
 			final String secondLine = items.size() > 1 ? items.get(1) : "";
@@ -98,11 +102,6 @@ public final class Whiteblacklist {
 			this.items = new HashSet<>(copyList);
 			this.whitelist = whitelist;
 			this.entireList = entireList;
-			this.patterns.clear();
-
-			if (compileAsPatterns)
-				for (String item : this.items)
-					this.patterns.add(Common.compilePattern(item));
 		}
 
 		else {
@@ -110,6 +109,37 @@ public final class Whiteblacklist {
 			this.whitelist = true;
 			this.entireList = false;
 		}
+
+		final MultiMatcher.Builder exactBuilder = MultiMatcher.builder();
+		final MultiMatcher.Builder startsWithBuilder = MultiMatcher.builder();
+
+		// Items are matched in the order of the set, the same as iterating over it does
+		for (final Object item : this.items)
+			if (item instanceof String) {
+				final String withoutSlash = removeSlash((String) item);
+
+				exactBuilder.entry((String) item).equalTo(foldCase(withoutSlash));
+				startsWithBuilder.entry((String) item).startsWith(withoutSlash.toLowerCase());
+			}
+
+		this.exactMatcher = exactBuilder.build();
+		this.startsWithMatcher = startsWithBuilder.build();
+
+		if (compileAsPatterns)
+			this.regexMatcher = this.compileRegexMatcher();
+	}
+
+	/*
+	 * Compile items into regular expressions using the current regex settings
+	 */
+	private MultiMatcher compileRegexMatcher() {
+		final MultiMatcher.Builder builder = MultiMatcher.builder().timed();
+
+		for (final Object item : this.items)
+			if (item instanceof String)
+				builder.entry((String) item).regex(Common.compilePattern((String) item));
+
+		return builder.build();
 	}
 
 	/**
@@ -144,7 +174,7 @@ public final class Whiteblacklist {
 		if (this.entireList)
 			return this.whitelist;
 
-		final boolean match = Valid.isInList(item, this.items);
+		final boolean match = this.findInList(item) != null;
 
 		return this.whitelist ? match : !match;
 	}
@@ -160,7 +190,7 @@ public final class Whiteblacklist {
 		if (this.entireList)
 			return this.whitelist;
 
-		final boolean match = this.compileAsPatterns ? Valid.isInListRegexFast(item, this.patterns) : Valid.isInListRegex(item, this.items);
+		final boolean match = this.findInListRegex(item) != null;
 
 		return this.whitelist ? match : !match;
 	}
@@ -176,11 +206,52 @@ public final class Whiteblacklist {
 		if (this.entireList)
 			return this.whitelist;
 
-		final boolean match = Valid.isInListStartsWith(item, this.items);
+		final boolean match = this.findInListStartsWith(item) != null;
 
 		return this.whitelist ? match : !match;
 	}
 
+	/**
+	 * Return the first item equal to the given one, case ignored, or null if there is none.
+	 * This ignores {@link #isWhitelist()} and {@link #isEntireList()}
+	 *
+	 * @param item
+	 * @return
+	 */
+	@Nullable
+	public String findInList(@NonNull String item) {
+		return this.exactMatcher.find(foldCase(removeSlash(item)));
+	}
+
+	/**
+	 * Return the first item matching the given one as a regular expression, or null
+	 * if there is none. This ignores {@link #isWhitelist()} and {@link #isEntireList()}
+	 *
+	 * @param item
+	 * @return
+	 */
+	@Nullable
+	public String findInListRegex(@NonNull String item) {
+		MultiMatcher regexMatcher = this.regexMatcher;
+
+		if (regexMatcher == null)
+			this.regexMatcher = regexMatcher = this.compileRegexMatcher();
+
+		return regexMatcher.find(item);
+	}
+
+	/**
+	 * Return the first item the given one starts with, case ignored, or null if there is none.
+	 * This ignores {@link #isWhitelist()} and {@link #isEntireList()}
+	 *
+	 * @param item
+	 * @return
+	 */
+	@Nullable
+	public String findInListStartsWith(@NonNull String item) {
+		return this.startsWithMatcher.find(removeSlash(item).toLowerCase());
+	}
+
 	/**
 	 * @see java.lang.Object#toString()
 	 */
@@ -188,4 +259,23 @@ public final class Whiteblacklist {
 	public String toString() {
 		return "{" + (this.entireList ? "entire list" : this.whitelist ? "whitelist" : "blacklist") + " " + this.items + "}";
 	}
+
+	/*
+	 * Remove the leading slash the same way {@link Valid} list helpers do
+	 */
+	private static String removeSlash(String message) {
+		return message.startsWith("/") ? message.substring(1) : message;
+	}
+
+	/*
+	 * Map each letter so that two strings are equal exactly when {@link String#equalsIgnoreCase(String)} returns true
+	 */
+	private static String foldCase(String message) {
+		final char[] letters = message.toCharArray();
+
+		for (int i = 0; i < letters.length; i++)
+			letters[i] = Character.toLowerCase(Character.toUpperCase(letters[i]));
+
+		return new String(letters);
+	}
 }
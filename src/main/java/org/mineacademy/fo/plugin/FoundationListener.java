@@ -15,6 +15,7 @@ import org.bukkit.event.server.ServiceRegisterEvent;
 import org.bukkit.metadata.FixedMetadataValue;
 import org.bukkit.plugin.Plugin;
 import org.mineacademy.fo.Common;
+import org.mineacademy.fo.GeoAPI;
 import org.mineacademy.fo.MathUtil;
 import org.mineacademy.fo.Messenger;
 import org.mineacademy.fo.MinecraftVersion;
@@ -22,6 +23,7 @@ import org.mineacademy.fo.MinecraftVersion.V;
 import org.mineacademy.fo.PlayerUtil;
 import org.mineacademy.fo.model.ChatPaginator;
 import org.mineacademy.fo.model.HookManager;
+import org.mineacademy.fo.model.RecentMessages;
 import org.mineacademy.fo.model.SimpleComponent;
 import org.mineacademy.fo.model.SimpleScoreboard;
 import org.mineacademy.fo.model.SpigotUpdater;
@@ -38,6 +40,7 @@ final class FoundationListener implements Listener {
 	@EventHandler(priority = EventPriority.HIGHEST)
 	public void onQuit(PlayerQuitEvent event) {
 		SimpleScoreboard.clearBoardsFor(event.getPlayer());
+		RecentMessages.removeFor(event.getPlayer());
 	}
 
 	@EventHandler(priority = EventPriority.HIGHEST)
@@ -176,6 +179,10 @@ final class FoundationListener implements Listener {
 		if (check != null && check.isNewVersionAvailable() && PlayerUtil.hasPerm(player, check.getPermission().replace("{plugin_name}", SimplePlugin.getNamed().toLowerCase().replace(" ", "_"))))
 			Common.tellLater(4 * 20, player, check.getNotifyMessage());
 
+		// Look up geographic variables early so they are ready when messages are rendered
+		if (GeoAPI.isUsed())
+			GeoAPI.prefetch(player.getAddress());
+
 		// Workaround for Essentials and CMI bug where they report "vanished" metadata when
 		// the /vanish command is run, but forgot to do so after reload, despite player still
 		// being vanished. So we just set the metadata on join back manually.
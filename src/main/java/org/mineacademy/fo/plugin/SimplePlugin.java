@@ -823,6 +823,7 @@ public abstract class SimplePlugin extends JavaPlugin implements Listener {
 		FolderWatcher.stopThreads();
 
 		FileConfig.clearLoadedSections();
+		Common.clearPatternCache();
 
 		try {
 			if (HookManager.isDiscordSRVLoaded())
@@ -5,6 +5,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,6 +38,11 @@ public final class ConfigItems<T extends YamlConfig> {
 	 */
 	private final StrictMap<String, T> loadedItemsMap = new StrictMap<>();
 
+	/**
+	 * Lowercase item name - Item name as loaded, for case insensitive lookups
+	 */
+	private final Map<String, String> lowercaseNames = new HashMap<>();
+
 	/**
 	 * The item type this class stores, such as "variable, "format", or "arena class"
 	 */
@@ -148,6 +154,7 @@ public final class ConfigItems<T extends YamlConfig> {
 
 		// Clear old items
 		this.loadedItemsMap.clear();
+		this.lowercaseNames.clear();
 
 		if (this.singleFile) {
 			final File file = FileUtil.extract(this.folder);
@@ -198,7 +205,8 @@ public final class ConfigItems<T extends YamlConfig> {
 	 * @return
 	 */
 	public T loadOrCreateItem(@NonNull final String name, @Nullable Supplier<T> instantiator) {
-		Valid.checkBoolean(!this.isItemLoaded(name), "Item " + (this.type == null ? "" : this.type + " ") + "named " + name + " already exists! Available: " + this.getItemNames());
+		// Only join item names into the message when it fails, not for each item loaded
+		Valid.checkBoolean(!this.isItemLoaded(name), "Item %snamed %s already exists! Available: %s", this.type == null ? "" : this.type + " ", name, this.getItemNames());
 
 		// Create a new instance of our item
 		T item = null;
@@ -246,6 +254,7 @@ public final class ConfigItems<T extends YamlConfig> {
 
 			// Register
 			this.loadedItemsMap.put(name, item);
+			this.lowercaseNames.put(name.toLowerCase(), name);
 
 		} catch (final Throwable t) {
 			Common.throwError(t, "Failed to load" + name + (this.singleFile ? "" : " from " + this.folder));
@@ -270,7 +279,8 @@ public final class ConfigItems<T extends YamlConfig> {
 	 * @param name
 	 */
 	public void removeItemByName(@NonNull final String name) {
-		final T item = this.findItem(name);
+		final String loadedName = this.lowercaseNames.get(name.toLowerCase());
+		final T item = loadedName != null ? this.loadedItemsMap.get(loadedName) : null;
 		Valid.checkNotNull(item, ChatUtil.capitalize(this.type) + " " + name + " not loaded. Available: " + this.getItemNames());
 
 		if (this.singleFile)
@@ -278,7 +288,8 @@ public final class ConfigItems<T extends YamlConfig> {
 		else
 			item.deleteFile();
 
-		this.loadedItemsMap.remove(name);
+		this.loadedItemsMap.remove(loadedName);
+		this.lowercaseNames.remove(name.toLowerCase());
 	}
 
 	/**
@@ -301,10 +312,11 @@ public final class ConfigItems<T extends YamlConfig> {
 		final T item = this.loadedItemsMap.get(name);
 
 		// Fallback to case insensitive
-		if (item == null)
-			for (final Map.Entry<String, T> entry : this.loadedItemsMap.entrySet())
-				if (entry.getKey().equalsIgnoreCase(name))
-					return entry.getValue();
+		if (item == null) {
+			final String loadedName = this.lowercaseNames.get(name.toLowerCase());
+
+			return loadedName != null ? this.loadedItemsMap.get(loadedName) : null;
+		}
 
 		return item;
 	}
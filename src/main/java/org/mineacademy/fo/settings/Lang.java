@@ -1,7 +1,11 @@
 package org.mineacademy.fo.settings;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.mineacademy.fo.Common;
 import org.mineacademy.fo.Messenger;
@@ -9,16 +13,25 @@ import org.mineacademy.fo.SerializeUtil;
 import org.mineacademy.fo.SerializeUtil.Mode;
 import org.mineacademy.fo.Valid;
 import org.mineacademy.fo.collection.SerializedMap;
+import org.mineacademy.fo.exception.FoException;
 import org.mineacademy.fo.exception.FoScriptException;
 import org.mineacademy.fo.model.JavaScriptExecutor;
 import org.mineacademy.fo.model.SimpleComponent;
 
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
 /**
  * Represents the new way of internalization, with the greatest
  * upside of saving development time.
  *
  * The downside is that keys are not checked during load so any
  * malformed or missing key will fail later and may be unnoticed.
+ *
+ * Messages are compiled when the file is loaded so that getting them
+ * does not look up the path in the configuration and parse {0} {1} etc.
+ * variables each time.
  */
 public final class Lang extends YamlConfig {
 
@@ -27,6 +40,11 @@ public final class Lang extends YamlConfig {
 	 */
 	private static Lang instance;
 
+	/**
+	 * Path - Compiled message, replaced as a whole when the file is reloaded
+	 */
+	private volatile Map<String, CompiledMessage> messages = Collections.emptyMap();
+
 	/*
 	 * Create a new instance and load the given file
 	 */
@@ -34,6 +52,40 @@ public final class Lang extends YamlConfig {
 		this.loadConfiguration(filePath);
 	}
 
+	/**
+	 * @see org.mineacademy.fo.settings.FileConfig#onLoad()
+	 */
+	@Override
+	protected void onLoad() {
+		final Map<String, CompiledMessage> messages = new HashMap<>();
+
+		for (final String path : this.section.getKeys(true)) {
+			final Object value = this.section.retrieve(path);
+
+			if (value == null || value instanceof ConfigSection)
+				continue;
+
+			try {
+				messages.put(path, CompiledMessage.compile(this.getString(path)));
+
+			} catch (final FoException ex) {
+				// Not a message, left to fail when it is used as one
+			}
+		}
+
+		this.messages = Collections.unmodifiableMap(messages);
+	}
+
+	/*
+	 * Return the compiled message at the given path, failing if not exists
+	 */
+	private CompiledMessage getMessageStrict(String path) {
+		final CompiledMessage message = this.messages.get(path);
+
+		// Keys copied from the default file after loading are compiled on demand
+		return message != null ? message : CompiledMessage.compile(this.getStringStrict(path));
+	}
+
 	/*
 	 * Return a key from our localization, failing if not exists
 	 */
@@ -256,31 +308,34 @@ public final class Lang extends YamlConfig {
 	public static String of(String path, Object... variables) {
 		checkInit();
 
-		String key = instance.getStringStrict(path);
+		CompiledMessage message = instance.getMessageStrict(path);
 
-		key = Messenger.replacePrefixes(key);
-		key = translate(key, variables);
+		// Prefixes can change at any time so messages using them are compiled again
+		if (message.isUsingPrefixes())
+			message = CompiledMessage.compile(Messenger.replacePrefixes(message.getRaw()));
 
-		return key;
+		return message.format(serializeVariables(variables));
 	}
 
 	/*
-	 * Replace placeholders in the message
+	 * Serialize {0} {1} etc. variables into strings
 	 */
-	private static String translate(String key, Object... variables) {
-		Valid.checkNotNull(key, "Cannot translate a null key with variables " + Common.join(variables));
+	private static String[] serializeVariables(Object... variables) {
+		if (variables == null)
+			return new String[0];
 
-		if (variables != null)
-			for (int i = 0; i < variables.length; i++) {
-				Object variable = variables[i];
+		final String[] serialized = new String[variables.length];
 
-				variable = Common.getOrDefaultStrict(SerializeUtil.serialize(Mode.YAML /* ĺocale is always .yml */, variable), SimpleLocalization.NONE);
-				Valid.checkNotNull(variable, "Failed to replace {" + i + "} as " + variable + " (raw = " + variables[i] + ")");
+		for (int i = 0; i < variables.length; i++) {
+			Object variable = variables[i];
 
-				key = key.replace("{" + i + "}", variable.toString());
-			}
+			variable = Common.getOrDefaultStrict(SerializeUtil.serialize(Mode.YAML /* ĺocale is always .yml */, variable), SimpleLocalization.NONE);
+			Valid.checkNotNull(variable, "Failed to replace {" + i + "} as " + variable + " (raw = " + variables[i] + ")");
 
-		return key;
+			serialized[i] = variable.toString();
+		}
+
+		return serialized;
 	}
 
 	/*
@@ -292,4 +347,110 @@ public final class Lang extends YamlConfig {
 		if (instance == null)
 			init();
 	}
+
+	// ------------------------------------------------------------------------------------------------------------
+	// Classes
+	// ------------------------------------------------------------------------------------------------------------
+
+	/*
+	 * A message split into text and the {0} {1} etc. variables between it
+	 */
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	private static final class CompiledMessage {
+
+		/**
+		 * The message as written in the file
+		 */
+		@Getter
+		private final String raw;
+
+		/**
+		 * If the message contains prefix variables, see {@link Messenger#replacePrefixes(String)}
+		 */
+		@Getter
+		private final boolean usingPrefixes;
+
+		/**
+		 * Text before, between and after the variables, one more than there are variables
+		 */
+		private final String[] texts;
+
+		/**
+		 * The index of each variable
+		 */
+		private final int[] variables;
+
+		/*
+		 * Replace variables with the given values, keeping those we have no values for
+		 */
+		String format(String[] values) {
+			if (this.variables.length == 0)
+				return this.raw;
+
+			final StringBuilder builder = new StringBuilder(this.raw.length() + 16 * this.variables.length);
+
+			for (int i = 0; i < this.variables.length; i++) {
+				final int variable = this.variables[i];
+
+				builder.append(this.texts[i]);
+
+				if (variable < values.length)
+					builder.append(values[variable]);
+				else
+					builder.append('{').append(variable).append('}');
+			}
+
+			return builder.append(this.texts[this.variables.length]).toString();
+		}
+
+		/*
+		 * Split the message at each {number} variable
+		 */
+		static CompiledMessage compile(String raw) {
+			Valid.checkNotNull(raw, "Cannot compile a null message");
+
+			final List<String> texts = new ArrayList<>();
+			final List<Integer> variables = new ArrayList<>();
+			int textStart = 0;
+
+			for (int i = raw.indexOf('{'); i != -1; i = raw.indexOf('{', i + 1)) {
+				final int end = findVariableEnd(raw, i);
+
+				if (end != -1) {
+					texts.add(raw.substring(textStart, i));
+					variables.add(Integer.parseInt(raw.substring(i + 1, end)));
+
+					textStart = end + 1;
+					i = end;
+				}
+			}
+
+			texts.add(raw.substring(textStart));
+
+			final int[] variableArray = new int[variables.size()];
+
+			for (int i = 0; i < variableArray.length; i++)
+				variableArray[i] = variables.get(i);
+
+			return new CompiledMessage(raw, raw.contains("prefix"), texts.toArray(new String[0]), variableArray);
+		}
+
+		/*
+		 * Return the index of the closing bracket if a {number} variable starts at the given index, or -1
+		 */
+		private static int findVariableEnd(String raw, int start) {
+			int index = start + 1;
+
+			while (index < raw.length() && index - start <= 9 && raw.charAt(index) >= '0' && raw.charAt(index) <= '9')
+				index++;
+
+			final int digits = index - start - 1;
+
+			// Only match the way we write them, so {01} is left alone
+			if (digits == 0 || digits > 9 || digits > 1 && raw.charAt(start + 1) == '0')
+				return -1;
+
+			return index < raw.length() && raw.charAt(index) == '}' ? index : -1;
+		}
+	}
 }
@@ -0,0 +1,117 @@
+package org.mineacademy.fo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.mineacademy.fo.GeoAPI.GeoResponse;
+import org.mineacademy.fo.GeoAPI.RangeDatabase;
+
+/**
+ * Tests the offline range database against the bundled sample file, without network.
+ */
+public class GeoAPITest {
+
+	private static RangeDatabase database;
+
+	@BeforeAll
+	public static void load() throws IOException {
+		try (InputStream stream = GeoAPITest.class.getResourceAsStream("/geo-sample.csv")) {
+			assertNotNull(stream, "Missing geo-sample.csv");
+
+			database = RangeDatabase.fromCsv(stream);
+		}
+	}
+
+	@Test
+	public void testCidrRange() {
+		assertCountry("AA", "192.0.2.0");
+		assertCountry("AA", "192.0.2.128");
+		assertCountry("AA", "192.0.2.255");
+
+		final GeoResponse response = database.lookup("192.0.2.1");
+
+		assertEquals("Alphaland", response.getCountryName());
+		assertEquals("North", response.getRegionName());
+		assertEquals("Example Net", response.getIsp());
+	}
+
+	@Test
+	public void testStartEndRanges() {
+		assertCountry("BB", "198.51.100.0");
+		assertCountry("BB", "198.51.100.127");
+		assertCountry("BB", "198.51.100.128");
+		assertCountry("BB", "198.51.100.255");
+	}
+
+	@Test
+	public void testSingleAddress() {
+		assertCountry("CC", "203.0.113.7");
+		assertCountry(null, "203.0.113.6");
+		assertCountry(null, "203.0.113.8");
+	}
+
+	@Test
+	public void testNestedRanges() {
+		assertCountry("DD", "10.20.0.0");
+		assertCountry("DD", "10.20.29.255");
+		assertCountry("EE", "10.20.30.0");
+		assertCountry("EE", "10.20.30.39");
+		assertCountry("FF", "10.20.30.40");
+		assertCountry("EE", "10.20.30.41");
+		assertCountry("EE", "10.20.30.255");
+		assertCountry("DD", "10.20.31.0");
+		assertCountry("DD", "10.20.255.255");
+	}
+
+	@Test
+	public void testRangesAreMergedAndSplit() {
+
+		// Two Betaland halves merge, the /16 is split around the /24 which is split around the address
+		assertEquals(8, database.size());
+		assertEquals(0, database.getPartialOverlaps());
+	}
+
+	@Test
+	public void testUnknownAndInvalid() {
+		assertCountry(null, "8.8.8.8");
+		assertCountry(null, "0.0.0.0");
+		assertCountry(null, "255.255.255.255");
+		assertCountry(null, "not an address");
+		assertCountry(null, "1.2.3");
+		assertCountry(null, "1.2.3.256");
+	}
+
+	@Test
+	public void testNestedInAnyOrder() {
+		final RangeDatabase reversed = RangeDatabase.fromCsv(new ByteArrayInputStream((
+				"10.0.0.5,CC,Inner\n" +
+						"10.0.0.0/30,BB,Middle\n" +
+						"10.0.0.0/8,AA,Outer\n").getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals("AA", reversed.lookup("10.255.0.0").getCountryCode());
+		assertEquals("BB", reversed.lookup("10.0.0.0").getCountryCode());
+		assertEquals("BB", reversed.lookup("10.0.0.3").getCountryCode());
+		assertEquals("AA", reversed.lookup("10.0.0.4").getCountryCode());
+		assertEquals("CC", reversed.lookup("10.0.0.5").getCountryCode());
+		assertEquals("AA", reversed.lookup("10.0.0.6").getCountryCode());
+	}
+
+	private static void assertCountry(String countryCode, String address) {
+		final GeoResponse response = database.lookup(address);
+
+		if (countryCode == null)
+			assertNull(response, address);
+		else {
+			assertNotNull(response, address);
+			assertEquals(countryCode, response.getCountryCode(), address);
+		}
+	}
+}
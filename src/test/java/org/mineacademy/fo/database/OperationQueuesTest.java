@@ -0,0 +1,232 @@
+package org.mineacademy.fo.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Storms the per player queues with joins (loads) and quits (saves) against an embedded H2 database
+ * while the database executor is too small to take them all.
+ */
+public class OperationQueuesTest {
+
+	private static final String URL = "jdbc:h2:mem:queues;MODE=MySQL;DB_CLOSE_DELAY=-1";
+	private static final String UPSERT_SQL = "INSERT INTO Players (UUID, Data) VALUES (?, ?) ON DUPLICATE KEY UPDATE Data = VALUES(Data)";
+
+	private static final int PLAYERS = 50;
+	private static final int ROUNDS = 200;
+
+	private Connection connection;
+	private TestDatabase database;
+
+	/**
+	 * A database executor with a tiny queue so that most operations overflow
+	 */
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * Stands in for the Bukkit async scheduler
+	 */
+	private ExecutorService overflow;
+	private final AtomicInteger overflowed = new AtomicInteger();
+
+	@BeforeEach
+	public void connect() throws SQLException {
+		SimpleDatabase.setConnectUsingHikari(false);
+
+		this.connection = DriverManager.getConnection(URL);
+
+		try (Statement statement = this.connection.createStatement()) {
+			statement.execute("CREATE TABLE Players (UUID VARCHAR(64) PRIMARY KEY, Data INT)");
+		}
+
+		this.database = new TestDatabase();
+		this.database.connect(URL, null, null, "Players");
+
+		this.executor = new ThreadPoolExecutor(4, 4, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), new ThreadPoolExecutor.AbortPolicy());
+		this.overflow = Executors.newCachedThreadPool();
+	}
+
+	@AfterEach
+	public void close() throws SQLException, InterruptedException {
+		this.executor.shutdownNow();
+		this.overflow.shutdownNow();
+
+		this.executor.awaitTermination(5, TimeUnit.SECONDS);
+		this.overflow.awaitTermination(5, TimeUnit.SECONDS);
+
+		this.database.close();
+
+		try (Statement statement = this.connection.createStatement()) {
+			statement.execute("DROP TABLE Players");
+		}
+
+		this.connection.close();
+	}
+
+	@Test
+	public void testJoinQuitStorm() throws Exception {
+		final OperationQueues queues = new OperationQueues(this.executor, runnable -> {
+			this.overflowed.incrementAndGet();
+			this.overflow.execute(runnable);
+		});
+
+		final Set<Thread> stormThreads = ConcurrentHashMap.newKeySet();
+		final Map<UUID, AtomicInteger> running = new ConcurrentHashMap<>();
+		final Map<UUID, AtomicInteger> lastLoaded = new ConcurrentHashMap<>();
+		final AtomicInteger violations = new AtomicInteger();
+
+		final List<UUID> players = new ArrayList<>();
+		final List<CompletableFuture<?>> futures = Collections.synchronizedList(new ArrayList<>());
+
+		for (int i = 0; i < PLAYERS; i++) {
+			final UUID uuid = UUID.randomUUID();
+
+			players.add(uuid);
+			running.put(uuid, new AtomicInteger());
+			lastLoaded.put(uuid, new AtomicInteger(-1));
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Thread> threads = new ArrayList<>();
+
+		for (final UUID uuid : players) {
+			final Thread thread = new Thread(() -> {
+				try {
+					start.await();
+
+				} catch (final InterruptedException ex) {
+					return;
+				}
+
+				for (int round = 0; round < ROUNDS; round++) {
+					final int data = round;
+
+					// Join
+					futures.add(queues.enqueue(uuid, false, () -> {
+						this.enter(uuid, running, stormThreads, violations);
+
+						try {
+							final int loaded = this.load(uuid);
+
+							// Saves queued before this load must be visible
+							if (loaded < lastLoaded.get(uuid).getAndSet(loaded) || loaded < data - 1)
+								violations.incrementAndGet();
+
+							return loaded;
+
+						} finally {
+							running.get(uuid).decrementAndGet();
+						}
+					}));
+
+					// Quit
+					futures.add(queues.enqueue(uuid, true, () -> {
+						this.enter(uuid, running, stormThreads, violations);
+
+						try {
+							assertTrue(this.database.batchUpdate(UPSERT_SQL, Collections.singletonList(new Object[] { uuid.toString(), data })));
+
+							return null;
+
+						} finally {
+							running.get(uuid).decrementAndGet();
+						}
+					}));
+				}
+			}, "Storm " + uuid);
+
+			stormThreads.add(thread);
+			threads.add(thread);
+			thread.start();
+		}
+
+		start.countDown();
+
+		for (final Thread thread : threads)
+			thread.join();
+
+		assertTrue(queues.await(System.currentTimeMillis() + 60_000), "Queues did not drain");
+		assertEquals(0, queues.size());
+
+		for (final CompletableFuture<?> future : futures)
+			future.get(1, TimeUnit.SECONDS);
+
+		assertEquals(0, violations.get(), "Operations ran out of order, in parallel for one player or on the queuing thread");
+		assertTrue(this.overflowed.get() > 0, "The storm never overflowed the database executor");
+
+		for (final UUID uuid : players)
+			assertEquals(ROUNDS - 1, this.load(uuid), "Last save of " + uuid + " was lost");
+	}
+
+	@Test
+	public void testDroppedWhenNowhereToRun() throws Exception {
+		this.executor.shutdown();
+
+		final OperationQueues queues = new OperationQueues(this.executor, runnable -> {
+			throw new RejectedExecutionException("Plugin disabled");
+		});
+
+		final UUID uuid = UUID.randomUUID();
+		final CompletableFuture<Object> first = queues.enqueue(uuid, false, () -> 1);
+		final CompletableFuture<Object> second = queues.enqueue(uuid, true, () -> 2);
+
+		assertTrue(first.isCompletedExceptionally());
+		assertTrue(second.isCompletedExceptionally());
+		assertTrue(queues.await(System.currentTimeMillis() + 1_000));
+		assertEquals(0, queues.size());
+		assertFalse(this.overflowed.get() > 0);
+	}
+
+	/*
+	 * Mark the player's operation as running and count it as a violation if another
+	 * one for the player already runs or we are on a thread that queued operations
+	 */
+	private void enter(UUID uuid, Map<UUID, AtomicInteger> running, Set<Thread> stormThreads, AtomicInteger violations) {
+		if (running.get(uuid).incrementAndGet() != 1 || stormThreads.contains(Thread.currentThread()))
+			violations.incrementAndGet();
+	}
+
+	/*
+	 * Return the saved data of the player or -1 if none
+	 */
+	private int load(UUID uuid) throws SQLException {
+		try (PreparedStatement statement = this.connection.prepareStatement("SELECT Data FROM Players WHERE UUID = ?")) {
+			statement.setString(1, uuid.toString());
+
+			try (ResultSet resultSet = statement.executeQuery()) {
+				return resultSet.next() ? resultSet.getInt(1) : -1;
+			}
+		}
+	}
+
+	private static final class TestDatabase extends SimpleDatabase {
+	}
+}
@@ -0,0 +1,163 @@
+package org.mineacademy.fo.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Benchmarks prepared batch updates against raw SQL batches on an embedded H2 database.
+ */
+public class SimpleDatabaseBatchTest {
+
+	private static final String URL = "jdbc:h2:mem:batch;MODE=MySQL;DB_CLOSE_DELAY=-1";
+	private static final int ROWS = 10_000;
+	private static final int ROUNDS = 3;
+
+	private static final String INSERT_SQL = "INSERT INTO Bench (Id, Name, Amount) VALUES (?, ?, ?)";
+	private static final String UPSERT_SQL = INSERT_SQL + " ON DUPLICATE KEY UPDATE Name = VALUES(Name), Amount = VALUES(Amount)";
+
+	private static TestDatabase database;
+
+	/**
+	 * Kept open so that the in-memory database lives for the whole test
+	 */
+	private static Connection connection;
+
+	@BeforeAll
+	public static void connect() throws SQLException {
+		SimpleDatabase.setConnectUsingHikari(false);
+
+		connection = DriverManager.getConnection(URL);
+
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE Bench (Id INT PRIMARY KEY, Name VARCHAR(64), Amount DOUBLE)");
+		}
+
+		database = new TestDatabase();
+		database.connect(URL, null, null, "Bench");
+	}
+
+	@AfterAll
+	public static void close() throws SQLException {
+		database.close();
+		connection.close();
+	}
+
+	@BeforeEach
+	public void clear() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DELETE FROM Bench");
+		}
+	}
+
+	@Test
+	public void testBatchInsertsAllRows() throws SQLException {
+		assertTrue(database.batchUpdate(INSERT_SQL, createRows(0)));
+		assertEquals(ROWS, countRows());
+	}
+
+	@Test
+	public void testBatchUpsertsExistingRows() throws SQLException {
+		assertTrue(database.batchUpdate(UPSERT_SQL, createRows(0)));
+		assertTrue(database.batchUpdate(UPSERT_SQL, createRows(1)));
+
+		assertEquals(ROWS, countRows());
+
+		try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT Amount FROM Bench WHERE Id = 5")) {
+			assertTrue(resultSet.next());
+			assertEquals(6.5D, resultSet.getDouble(1));
+		}
+	}
+
+	@Test
+	public void testBenchmarkPreparedAgainstRawBatches() throws SQLException {
+		long preparedNanos = Long.MAX_VALUE;
+		long rawNanos = Long.MAX_VALUE;
+
+		// Run each a few times and keep the best to reduce JIT and GC noise
+		for (int round = 0; round < ROUNDS; round++) {
+			this.clear();
+
+			final List<Object[]> rows = createRows(round);
+			long start = System.nanoTime();
+
+			assertTrue(database.batchUpdate(INSERT_SQL, rows));
+			preparedNanos = Math.min(preparedNanos, System.nanoTime() - start);
+
+			assertEquals(ROWS, countRows());
+			this.clear();
+
+			start = System.nanoTime();
+			insertRaw(rows);
+			rawNanos = Math.min(rawNanos, System.nanoTime() - start);
+
+			assertEquals(ROWS, countRows());
+		}
+
+		System.out.printf("%d rows: prepared batch %.1f ms (%.0f rows/s), raw SQL batch %.1f ms (%.0f rows/s)%n",
+				ROWS,
+				preparedNanos / 1_000_000D, ROWS / (preparedNanos / 1_000_000_000D),
+				rawNanos / 1_000_000D, ROWS / (rawNanos / 1_000_000_000D));
+	}
+
+	/*
+	 * Insert the rows the way batchUpdate did before binding values, as separate SQL strings in one transaction
+	 */
+	private static void insertRaw(List<Object[]> rows) throws SQLException {
+		connection.setAutoCommit(false);
+
+		try (Statement statement = connection.createStatement()) {
+			int pending = 0;
+
+			for (final Object[] row : rows) {
+				statement.addBatch("INSERT INTO Bench (Id, Name, Amount) VALUES (" + row[0] + ", '" + row[1] + "', " + row[2] + ")");
+
+				if (++pending >= database.getBatchSize()) {
+					statement.executeBatch();
+
+					pending = 0;
+				}
+			}
+
+			if (pending > 0)
+				statement.executeBatch();
+
+			connection.commit();
+
+		} finally {
+			connection.setAutoCommit(true);
+		}
+	}
+
+	private static List<Object[]> createRows(int amountOffset) {
+		final List<Object[]> rows = new ArrayList<>(ROWS);
+
+		for (int i = 0; i < ROWS; i++)
+			rows.add(new Object[] { i, "Player" + i, i + amountOffset + 0.5D });
+
+		return rows;
+	}
+
+	private static int countRows() throws SQLException {
+		try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM Bench")) {
+			resultSet.next();
+
+			return resultSet.getInt(1);
+		}
+	}
+
+	private static final class TestDatabase extends SimpleDatabase {
+	}
+}
@@ -0,0 +1,97 @@
+package org.mineacademy.fo.settings;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests case-insensitive lookups in {@link ConfigItems} and benchmarks that their cost
+ * does not grow with the number of loaded items.
+ */
+public class ConfigItemsTest {
+
+	private static final int SMALL = 100;
+	private static final int LARGE = 20_000;
+	private static final int LOOKUPS = 200_000;
+
+	@Test
+	public void testFindItemIgnoresCase() {
+		final ConfigItems<Item> items = load(10);
+		final Item item = items.findItem("Item5");
+
+		assertSame(item, items.findItem("item5"));
+		assertSame(item, items.findItem("ITEM5"));
+		assertTrue(items.isItemLoaded("iTeM9"));
+		assertFalse(items.isItemLoaded("item10"));
+		assertNull(items.findItem("missing"));
+		assertEquals(10, items.getItems().size());
+	}
+
+	@Test
+	public void testLookupDoesNotGrowWithItemCount() {
+		final ConfigItems<Item> small = load(SMALL);
+		final ConfigItems<Item> large = load(LARGE);
+
+		final String[] smallNames = lowercaseNames(SMALL);
+		final String[] largeNames = lowercaseNames(LARGE);
+
+		// Warm up
+		measure(small, smallNames);
+		measure(large, largeNames);
+
+		final double smallNanos = measure(small, smallNames);
+		final double largeNanos = measure(large, largeNames);
+
+		System.out.printf("ConfigItems.findItem: %.1f ns with %d items, %.1f ns with %d items%n", smallNanos, SMALL, largeNanos, LARGE);
+
+		// A linear scan would be ~200x slower with 200x more items
+		assertTrue(largeNanos < smallNanos * 10 + 100, "Lookup grew from " + smallNanos + " ns to " + largeNanos + " ns");
+	}
+
+	/*
+	 * Return the best average lookup time in nanoseconds of a few rounds
+	 */
+	private static double measure(ConfigItems<Item> items, String[] names) {
+		double best = Double.MAX_VALUE;
+		int found = 0;
+
+		for (int round = 0; round < 5; round++) {
+			final long start = System.nanoTime();
+
+			for (int i = 0; i < LOOKUPS; i++)
+				if (items.findItem(names[i % names.length]) != null)
+					found++;
+
+			best = Math.min(best, (System.nanoTime() - start) / (double) LOOKUPS);
+		}
+
+		assertEquals(5 * LOOKUPS, found);
+
+		return best;
+	}
+
+	private static ConfigItems<Item> load(int count) {
+		final ConfigItems<Item> items = ConfigItems.fromFile("Items", "items.yml", Item.class);
+
+		for (int i = 0; i < count; i++)
+			items.loadOrCreateItem("Item" + i, Item::new);
+
+		return items;
+	}
+
+	private static String[] lowercaseNames(int count) {
+		final String[] names = new String[count];
+
+		for (int i = 0; i < count; i++)
+			names[i] = "item" + i;
+
+		return names;
+	}
+
+	private static final class Item extends YamlConfig {
+	}
+}